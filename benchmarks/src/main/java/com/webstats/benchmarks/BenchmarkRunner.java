@@ -0,0 +1,125 @@
+package com.webstats.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks and writes JMH's JSON results to results/&lt;commit&gt;.json, so runs of two
+ * commits can be compared:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar [JMH options, e.g. a benchmark regex]
+ *   java -jar benchmarks/target/benchmarks.jar compare results/abc123.json results/def456.json [threshold %]
+ *
+ * compare prints the change of every benchmark present in both files and exits with status 1
+ * when any got slower by more than the threshold (default 10%).
+ */
+public class BenchmarkRunner {
+
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("compare")) {
+            if (args.length < 3) {
+                System.err.println("Usage: compare <baseline.json> <candidate.json> [threshold %]");
+                System.exit(2);
+            }
+            double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD_PERCENT;
+            System.exit(compare(new File(args[1]), new File(args[2]), threshold) ? 0 : 1);
+        }
+
+        File resultFile = new File("results", commitId() + ".json");
+        resultFile.getParentFile().mkdirs();
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getPath());
+        new Runner(options.build()).run();
+        System.out.println("Results written to " + resultFile.getPath());
+    }
+
+    private static boolean compare(File baselineFile, File candidateFile, double thresholdPercent) throws IOException {
+        Map<String, Score> baseline = readScores(baselineFile);
+        Map<String, Score> candidate = readScores(candidateFile);
+        boolean ok = true;
+
+        for (Map.Entry<String, Score> entry : baseline.entrySet()) {
+            Score before = entry.getValue();
+            Score after = candidate.get(entry.getKey());
+            if (after == null) {
+                continue;
+            }
+            // Positive = slower, whichever way the mode counts
+            double change = (after.value - before.value) / before.value * 100;
+            double slowdown = before.higherIsBetter() ? -change : change;
+            boolean regressed = slowdown > thresholdPercent;
+            ok &= !regressed;
+            System.out.printf("%-90s %12.3f -> %12.3f %-8s %+7.1f%%%s%n", entry.getKey(), before.value, after.value,
+                    after.unit, change, regressed ? "  REGRESSION" : "");
+        }
+        return ok;
+    }
+
+    private static Map<String, Score> readScores(File file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.get("benchmark").asText());
+            JsonNode params = run.get("params");
+            if (params != null) {
+                params.fields().forEachRemaining(param -> key.append(' ').append(param.getKey()).append('=')
+                        .append(param.getValue().asText()));
+            }
+            JsonNode metric = run.get("primaryMetric");
+            scores.put(key.toString(), new Score(run.get("mode").asText(), metric.get("score").asDouble(),
+                    metric.get("scoreUnit").asText()));
+        }
+        return scores;
+    }
+
+    private static String commitId() {
+        String commit = System.getProperty("commit", System.getenv("GIT_COMMIT"));
+        if (commit != null && !commit.isBlank()) {
+            return commit;
+        }
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").redirectErrorStream(true).start();
+            String output = new String(git.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (git.waitFor() == 0 && !output.isEmpty()) {
+                return output;
+            }
+        } catch (IOException e) {
+            // Not a git checkout
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "local-" + System.currentTimeMillis();
+    }
+
+    private static final class Score {
+        final String mode;
+        final double value;
+        final String unit;
+
+        Score(String mode, double value, String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        // thrpt counts operations per time unit; avgt, sample and ss measure time per operation
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.webstats.benchmarks;
+
+import com.webstats.dto.SpeedTestResponseDto;
+import com.webstats.metrics.SpeedTestMetrics;
+import com.webstats.model.SpeedTestResult;
+import com.webstats.model.SpeedTestSession;
+import com.webstats.service.StatisticalAnalysisService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sample inputs shaped like real test results, and field injection for services that are
+ * normally wired by Spring. Inputs use a fixed seed so runs are comparable between commits.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static List<Double> speedSamples(int count) {
+        Random random = new Random(42);
+        List<Double> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Mostly steady around 100 Mbps with an occasional dip or spike
+            double value = 100 + random.nextGaussian() * 8;
+            if (i % 50 == 7) {
+                value *= random.nextBoolean() ? 0.3 : 1.8;
+            }
+            samples.add(value);
+        }
+        return samples;
+    }
+
+    /**
+     * A test's raw samples: latency, then download, then upload, a quarter second apart, in runs
+     * of 50 samples.
+     */
+    static List<SpeedTestResult.RawMeasurement> rawMeasurements(int count) {
+        SpeedTestResult.RawMeasurement.MeasurementType[] phases = {
+                SpeedTestResult.RawMeasurement.MeasurementType.LATENCY,
+                SpeedTestResult.RawMeasurement.MeasurementType.DOWNLOAD_SPEED,
+                SpeedTestResult.RawMeasurement.MeasurementType.UPLOAD_SPEED};
+        List<Double> values = speedSamples(count);
+        LocalDateTime start = LocalDateTime.of(2024, 3, 1, 12, 0);
+        List<SpeedTestResult.RawMeasurement> measurements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
+            measurement.setMeasurementType(phases[i * phases.length / count]);
+            measurement.setRunNumber(i / 50 % 5 + 1);
+            measurement.setTimestamp(start.plusNanos(i * 250_000_000L));
+            measurement.setValue(values.get(i));
+            measurements.add(measurement);
+        }
+        return measurements;
+    }
+
+    static SpeedTestResult.SpeedMetrics speedMetrics(double speedMbps, double durationSeconds) {
+        SpeedTestResult.SpeedMetrics metrics = new SpeedTestResult.SpeedMetrics();
+        metrics.setSpeedMbps(speedMbps);
+        metrics.setAverageSpeedMbps(speedMbps);
+        metrics.setPeakSpeedMbps(speedMbps * 1.15);
+        metrics.setDurationSeconds(durationSeconds);
+        metrics.setBytesTransferred((long) (speedMbps * durationSeconds * 1024 * 1024 / 8));
+        metrics.setStabilityScore(92.5);
+        metrics.setWarmUpDurationSeconds(1.2);
+        metrics.setWarmUpSpeedMbps(speedMbps * 0.6);
+        return metrics;
+    }
+
+    static SpeedTestResult.LatencyMetrics latencyMetrics() {
+        SpeedTestResult.LatencyMetrics metrics = new SpeedTestResult.LatencyMetrics();
+        metrics.setPingMs(18.4);
+        metrics.setJitterMs(2.1);
+        metrics.setPacketLossPercent(0.0);
+        metrics.setDnsLookupMs(4.0);
+        metrics.setTcpConnectMs(12.0);
+        metrics.setSslHandshakeMs(25.0);
+        metrics.setFirstByteMs(40.0);
+        return metrics;
+    }
+
+    static SpeedTestResult.StatisticalSummary statisticalSummary() {
+        StatisticalAnalysisService statistics = new StatisticalAnalysisService();
+        return statistics.calculateCompleteSummary(speedSamples(30), speedSamples(30), speedSamples(30));
+    }
+
+    static SpeedTestResponseDto responseDto() {
+        SpeedTestResponseDto dto = new SpeedTestResponseDto();
+        dto.setSessionId("65f1c0ffee0123456789abcd");
+        dto.setResultId("65f1c0ffee0123456789abce");
+        dto.setTestTimestamp(LocalDateTime.of(2024, 3, 1, 12, 0));
+        dto.setStatus(SpeedTestSession.SessionStatus.COMPLETED);
+        dto.setCurrentPhase(SpeedTestSession.TestPhase.COMPLETED);
+        dto.setProgressPercentage(100);
+        dto.setDownloadMetrics(speedMetricsDto(94.2));
+        dto.setUploadMetrics(speedMetricsDto(38.7));
+
+        SpeedTestResponseDto.LatencyMetricsDto latency = new SpeedTestResponseDto.LatencyMetricsDto();
+        latency.setPingMs(18.4);
+        latency.setJitterMs(2.1);
+        latency.setPacketLossPercent(0.0);
+        dto.setLatencyMetrics(latency);
+
+        SpeedTestResponseDto.StatisticalSummaryDto summary = new SpeedTestResponseDto.StatisticalSummaryDto();
+        summary.setDownloadStats(statisticsDto(94.2));
+        summary.setUploadStats(statisticsDto(38.7));
+        summary.setLatencyStats(statisticsDto(18.4));
+        dto.setStatisticalSummary(summary);
+        return dto;
+    }
+
+    static SpeedTestMetrics speedTestMetrics() {
+        return new SpeedTestMetrics(new SimpleMeterRegistry());
+    }
+
+    static void inject(Object target, String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        if (field == null) {
+            throw new IllegalArgumentException(target.getClass().getSimpleName() + " has no field " + fieldName);
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static SpeedTestResponseDto.SpeedMetricsDto speedMetricsDto(double speedMbps) {
+        SpeedTestResponseDto.SpeedMetricsDto dto = new SpeedTestResponseDto.SpeedMetricsDto();
+        dto.setSpeedMbps(speedMbps);
+        dto.setAverageSpeedMbps(speedMbps);
+        dto.setPeakSpeedMbps(speedMbps * 1.15);
+        dto.setBytesTransferred((long) (speedMbps * 10 * 1024 * 1024 / 8));
+        dto.setDurationSeconds(10.0);
+        dto.setStabilityScore(92.5);
+        return dto;
+    }
+
+    private static SpeedTestResponseDto.StatisticsDto statisticsDto(double mean) {
+        SpeedTestResponseDto.StatisticsDto dto = new SpeedTestResponseDto.StatisticsDto();
+        dto.setMean(mean);
+        dto.setMedian(mean * 1.01);
+        dto.setMin(mean * 0.7);
+        dto.setMax(mean * 1.2);
+        dto.setPercentile95(mean * 1.15);
+        dto.setPercentile99(mean * 1.18);
+        dto.setStandardDeviation(mean * 0.08);
+        return dto;
+    }
+}
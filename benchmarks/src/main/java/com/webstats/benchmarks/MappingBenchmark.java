@@ -0,0 +1,62 @@
+package com.webstats.benchmarks;
+
+import com.webstats.dto.SpeedTestResponseDto;
+import com.webstats.model.SpeedTestResult;
+import com.webstats.service.SpeedTestService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO mapping done for every status poll and history entry. The mapping methods are
+ * private, so they are called through constant method handles, which the JIT inlines like a
+ * direct call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    private static final MethodHandle MAP_SPEED_METRICS;
+    private static final MethodHandle MAP_STATISTICAL_SUMMARY;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(SpeedTestService.class, MethodHandles.lookup());
+            MAP_SPEED_METRICS = lookup.findVirtual(SpeedTestService.class, "mapSpeedMetrics",
+                    MethodType.methodType(SpeedTestResponseDto.SpeedMetricsDto.class, SpeedTestResult.SpeedMetrics.class));
+            MAP_STATISTICAL_SUMMARY = lookup.findVirtual(SpeedTestService.class, "mapStatisticalSummary",
+                    MethodType.methodType(SpeedTestResponseDto.StatisticalSummaryDto.class, SpeedTestResult.StatisticalSummary.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final SpeedTestService speedTestService = new SpeedTestService();
+    private final SpeedTestResult.SpeedMetrics speedMetrics = Fixtures.speedMetrics(94.2, 10);
+    private final SpeedTestResult.StatisticalSummary statisticalSummary = Fixtures.statisticalSummary();
+
+    @Benchmark
+    public SpeedTestResponseDto.SpeedMetricsDto mapSpeedMetrics() throws Throwable {
+        return (SpeedTestResponseDto.SpeedMetricsDto) MAP_SPEED_METRICS.invokeExact(speedTestService, speedMetrics);
+    }
+
+    @Benchmark
+    public SpeedTestResponseDto.StatisticalSummaryDto mapStatisticalSummary() throws Throwable {
+        return (SpeedTestResponseDto.StatisticalSummaryDto) MAP_STATISTICAL_SUMMARY.invokeExact(speedTestService, statisticalSummary);
+    }
+}
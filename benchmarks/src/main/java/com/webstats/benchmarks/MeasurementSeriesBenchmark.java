@@ -0,0 +1,106 @@
+package com.webstats.benchmarks;
+
+import com.webstats.model.SpeedTestResult;
+import com.webstats.service.MeasurementSeriesCodec;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw samples packed by MeasurementSeriesCodec against the same samples embedded as a BSON array
+ * of RawMeasurement documents, the way the Spring Data mapping stores raw_measurements. The BSON
+ * side includes the mapping, as a read or write of the result would. Encoded sizes are printed
+ * at the start of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeasurementSeriesBenchmark {
+
+    @Param({"100", "1000"})
+    private int samples;
+
+    private final DocumentCodec documentCodec = new DocumentCodec();
+
+    private MappingMongoConverter converter;
+
+    private List<SpeedTestResult.RawMeasurement> measurements;
+    private byte[] encoded;
+    private byte[] bson;
+
+    @Setup
+    public void setUp() {
+        converter = converter();
+        measurements = Fixtures.rawMeasurements(samples);
+        encoded = MeasurementSeriesCodec.encode(measurements);
+        ByteBuffer buffer = toBson(measurements).getByteBuffer().asNIO();
+        bson = new byte[buffer.remaining()];
+        buffer.get(bson);
+        System.out.printf("%n%d samples: codec %d bytes, BSON array %d bytes (%.1fx)%n", samples, encoded.length,
+                bson.length, (double) bson.length / encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return MeasurementSeriesCodec.encode(measurements);
+    }
+
+    @Benchmark
+    public List<SpeedTestResult.RawMeasurement> decodeCodec() {
+        return MeasurementSeriesCodec.decode(encoded);
+    }
+
+    @Benchmark
+    public RawBsonDocument encodeBson() {
+        return toBson(measurements);
+    }
+
+    @Benchmark
+    public List<SpeedTestResult.RawMeasurement> decodeBson() {
+        Document document = new RawBsonDocument(bson).decode(documentCodec);
+        return converter.read(SpeedTestResult.class, document).getRawMeasurements();
+    }
+
+    // Wired as Spring Boot does, so java.time values are stored as dates rather than mapped as entities
+    private static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    // Only raw_measurements and the result's default timestamp, so the size is the array's
+    private RawBsonDocument toBson(List<SpeedTestResult.RawMeasurement> measurements) {
+        SpeedTestResult result = new SpeedTestResult();
+        result.setRawMeasurements(measurements);
+        Document document = new Document();
+        converter.write(result, document);
+        return new RawBsonDocument(document, documentCodec);
+    }
+}
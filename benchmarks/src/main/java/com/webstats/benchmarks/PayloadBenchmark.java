@@ -0,0 +1,64 @@
+package com.webstats.benchmarks;
+
+import com.webstats.controller.SpeedTestController;
+import com.webstats.service.BandwidthBudgetService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test payload: the download endpoint's response body written to a sink (chunk copies plus the
+ * per-chunk bandwidth accounting). The upload engine reuses one fixed block, so it has no
+ * per-run payload generation left to measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({"1", "10"})
+    private int sizeMB;
+
+    private SpeedTestController controller;
+
+    @Setup
+    public void setUp() {
+        // Budget large enough that accounting never queues anything
+        controller = new SpeedTestController(0.0);
+        Fixtures.inject(controller, "bandwidthBudgetService",
+                new BandwidthBudgetService(new SimpleMeterRegistry(), 1_000_000, 100, 5, 200, 30));
+        Fixtures.inject(controller, "speedTestMetrics", Fixtures.speedTestMetrics());
+    }
+
+    @Benchmark
+    public void downloadTestFile(Blackhole blackhole) throws Exception {
+        controller.downloadTestFile(sizeMB).getBody().writeTo(new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                blackhole.consume(bytes);
+                blackhole.consume(length);
+            }
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.webstats.benchmarks;
+
+import com.webstats.model.SpeedTestResult;
+import com.webstats.service.StatisticalAnalysisService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics computed for every finished test. Sample counts cover a handful of runs up to the
+ * interval samples of a long test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticalAnalysisBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int samples;
+
+    private final StatisticalAnalysisService statistics = new StatisticalAnalysisService();
+    private List<Double> values;
+    private double[] valueArray;
+    private StatisticalAnalysisService.RunningStats runningStats;
+
+    @Setup
+    public void setUp() {
+        values = Fixtures.speedSamples(samples);
+        valueArray = values.stream().mapToDouble(Double::doubleValue).toArray();
+        runningStats = new StatisticalAnalysisService.RunningStats();
+        values.forEach(runningStats::add);
+    }
+
+    @Benchmark
+    public SpeedTestResult.Statistics calculateStatisticsList() {
+        return statistics.calculateStatistics(values);
+    }
+
+    @Benchmark
+    public SpeedTestResult.Statistics calculateStatisticsArray() {
+        return statistics.calculateStatistics(valueArray);
+    }
+
+    @Benchmark
+    public List<Double> removeOutliers() {
+        return statistics.removeOutliers(values);
+    }
+
+    @Benchmark
+    public double stabilityScoreList() {
+        return statistics.calculateStabilityScore(values);
+    }
+
+    @Benchmark
+    public double stabilityScoreRunningStats() {
+        return statistics.calculateStabilityScore(runningStats);
+    }
+}
@@ -0,0 +1,52 @@
+package com.webstats.benchmarks;
+
+import com.webstats.model.SpeedTestResult;
+import com.webstats.service.ResultValidationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of client-submitted results, for plausible results and for results that are
+ * rejected (which also records the rejection metric).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private final ResultValidationService validationService = new ResultValidationService();
+    private final SpeedTestResult.SpeedMetrics download = Fixtures.speedMetrics(94.2, 10);
+    private final SpeedTestResult.SpeedMetrics upload = Fixtures.speedMetrics(38.7, 10);
+    private final SpeedTestResult.LatencyMetrics latency = Fixtures.latencyMetrics();
+    private final SpeedTestResult.SpeedMetrics inconsistentDownload = Fixtures.speedMetrics(94.2, 10);
+
+    @Setup
+    public void setUp() {
+        Fixtures.inject(validationService, "speedTestMetrics", Fixtures.speedTestMetrics());
+        // Claims twice the bytes its speed and duration allow
+        inconsistentDownload.setBytesTransferred(inconsistentDownload.getBytesTransferred() * 2);
+    }
+
+    @Benchmark
+    public ResultValidationService.ValidationResult validResults() {
+        return validationService.validateSpeedTestResults(download, upload, latency);
+    }
+
+    @Benchmark
+    public ResultValidationService.ValidationResult rejectedResults() {
+        return validationService.validateSpeedTestResults(inconsistentDownload, upload, latency);
+    }
+}
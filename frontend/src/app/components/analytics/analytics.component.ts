@@ -260,8 +260,12 @@ export class AnalyticsComponent implements OnInit {
     
     const startDateTime = new Date(this.startDate).toISOString();
     const endDateTime = new Date(this.endDate).toISOString();
+
+    // Served from the backend rollups: hourly buckets for short ranges, daily otherwise
+    const rangeDays = (new Date(this.endDate).getTime() - new Date(this.startDate).getTime()) / 86400000;
+    const granularity = rangeDays <= 7 ? 'HOUR' : 'DAY';
     
-    this.speedTestService.getTimeSeriesData(startDateTime, endDateTime).subscribe({
+    this.speedTestService.getTimeSeriesData(startDateTime, endDateTime, granularity).subscribe({
       next: (data) => {
         this.timeSeriesData = data;
         this.updateCharts();
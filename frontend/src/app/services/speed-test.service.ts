@@ -15,14 +15,25 @@ export interface SpeedTestResponse {
   sessionId: string;
   resultId?: string;
   testTimestamp: string;
-  status: 'INITIALIZING' | 'RUNNING' | 'COMPLETED' | 'FAILED' | 'CANCELLED';
+  status: 'INITIALIZING' | 'QUEUED' | 'RUNNING' | 'COMPLETED' | 'FAILED' | 'CANCELLED';
   currentPhase: 'INITIALIZATION' | 'LATENCY_TEST' | 'DOWNLOAD_TEST' | 'UPLOAD_TEST' | 'ANALYSIS' | 'COMPLETED';
   progressPercentage: number;
   errorMessage?: string;
+  queuePosition?: number;
+  estimatedWaitSeconds?: number;
   downloadMetrics?: SpeedMetrics;
   uploadMetrics?: SpeedMetrics;
   latencyMetrics?: LatencyMetrics;
   statisticalSummary?: StatisticalSummary;
+  phaseErrors?: PhaseError[];
+}
+
+export interface PhaseError {
+  phase: 'LATENCY_TEST' | 'DOWNLOAD_TEST' | 'UPLOAD_TEST';
+  code: 'DNS_FAILED' | 'CONNECT_FAILED' | 'TIMEOUT' | 'HTTP_ERROR' | 'TRANSFER_FAILED' | 'NO_DATA' | 'INTERRUPTED'
+    | 'OVERLOADED' | 'INTERNAL_ERROR';
+  message: string;
+  partial: boolean;
 }
 
 export interface SpeedMetrics {
@@ -32,6 +43,7 @@ export interface SpeedMetrics {
   peakSpeedMbps: number;
   averageSpeedMbps: number;
   stabilityScore: number;
+  partial?: boolean;
 }
 
 export interface LatencyMetrics {
@@ -82,6 +94,110 @@ export interface DataPoint {
   label?: string;
 }
 
+/**
+ * Port of the backend's StatisticalAnalysisService.RunningStats: Welford's online mean and
+ * sample variance, scored as in calculateStabilityScore
+ */
+class RunningStats {
+  private count = 0;
+  private mean = 0;
+  private m2 = 0;
+
+  add(value: number): void {
+    this.count++;
+    const delta = value - this.mean;
+    this.mean += delta / this.count;
+    this.m2 += delta * (value - this.mean);
+  }
+
+  /**
+   * 100 minus the coefficient of variation (sample standard deviation / mean, in %), clamped to 0-100;
+   * fewer than two samples, or a zero mean, score 100
+   */
+  stabilityScore(): number {
+    if (this.count < 2 || this.mean === 0) {
+      return 100;
+    }
+    const coefficientOfVariation = Math.sqrt(this.m2 / (this.count - 1)) / this.mean;
+    return Math.max(0, Math.min(100, 100 - (coefficientOfVariation * 100)));
+  }
+}
+
+/**
+ * Port of the backend's RampUpDetector, so a client-measured stability score means the same as a
+ * server-measured one: intervals before the throughput plateaus (least-squares slope over the last
+ * 4 intervals below 5% of their mean per interval), or before the maximum warm-up, are left out
+ */
+class SteadyStateTracker {
+  private static readonly WINDOW_SIZE = 4;
+  private static readonly SLOPE_THRESHOLD = 0.05;
+
+  private readonly window: { speedMbps: number; intervalMs: number }[] = [];
+  private totalMs = 0;
+  private rampComplete = false;
+  private readonly allStats = new RunningStats();
+  private readonly steadyStateStats = new RunningStats();
+
+  constructor(private readonly maxWarmUpMs: number) {}
+
+  addSample(speedMbps: number, intervalMs: number): void {
+    if (intervalMs <= 0) {
+      return;
+    }
+    this.totalMs += intervalMs;
+    this.allStats.add(speedMbps);
+
+    if (this.rampComplete) {
+      this.steadyStateStats.add(speedMbps);
+      return;
+    }
+
+    this.window.push({ speedMbps, intervalMs });
+    if (this.window.length > SteadyStateTracker.WINDOW_SIZE) {
+      this.window.shift();
+    }
+    const windowMs = this.window.reduce((sum, sample) => sum + sample.intervalMs, 0);
+
+    if (this.window.length === SteadyStateTracker.WINDOW_SIZE && this.isPlateau()) {
+      this.completeRamp();
+    } else if (this.totalMs - windowMs >= this.maxWarmUpMs) {
+      // Never treat more than the allowed warm-up as ramp, even if the link never settles
+      this.completeRamp();
+    }
+  }
+
+  /**
+   * Stability of the steady-state intervals, or of the whole test if no plateau was found
+   */
+  stabilityScore(): number {
+    return (this.rampComplete ? this.steadyStateStats : this.allStats).stabilityScore();
+  }
+
+  private isPlateau(): boolean {
+    const n = this.window.length;
+    let sumX = 0;
+    let sumY = 0;
+    let sumXY = 0;
+    let sumXX = 0;
+    this.window.forEach((sample, x) => {
+      sumX += x;
+      sumY += sample.speedMbps;
+      sumXY += x * sample.speedMbps;
+      sumXX += x * x;
+    });
+    const slope = (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+    const mean = sumY / n;
+    // A falling window has not settled either; kept equal to RampUpDetector on the server
+    return mean > 0 && Math.abs(slope) / mean < SteadyStateTracker.SLOPE_THRESHOLD;
+  }
+
+  private completeRamp(): void {
+    this.rampComplete = true;
+    // The plateau window is the first steady-state data
+    this.window.forEach(sample => this.steadyStateStats.add(sample.speedMbps));
+  }
+}
+
 @Injectable({
   providedIn: 'root'
 })
@@ -173,8 +289,9 @@ export class SpeedTestService {
     const startTime = performance.now();
     let totalBytes = 0;
     let peakSpeed = 0;
-    const speeds: number[] = [];
-    const smoothedSpeeds: number[] = []; // For better stability calculation
+    const smoothedSpeeds: number[] = []; // For the average and peak speed
+    // Stability over the raw 250ms interval speeds after ramp-up, same definition as the backend
+    const steadyState = new SteadyStateTracker(durationSeconds * 1000 / 2);
 
     try {
       const response = await fetch(url, {
@@ -229,7 +346,7 @@ export class SpeedTestService {
 
           // Calculate smoothed speed (moving average)
           const smoothedSpeed = speedWindow.reduce((a, b) => a + b, 0) / speedWindow.length;
-          speeds.push(instantSpeed);
+          steadyState.addSample(instantSpeed, timeSinceLastMeasurement);
           smoothedSpeeds.push(smoothedSpeed);
           peakSpeed = Math.max(peakSpeed, smoothedSpeed);
 
@@ -241,11 +358,7 @@ export class SpeedTestService {
           const currentAverageSpeed = smoothedSpeeds.length > 0
             ? smoothedSpeeds.reduce((a, b) => a + b, 0) / smoothedSpeeds.length
             : 0;
-          const currentVariance = smoothedSpeeds.length > 0
-            ? smoothedSpeeds.reduce((sum, speed) => sum + Math.pow(speed - currentAverageSpeed, 2), 0) / smoothedSpeeds.length
-            : 0;
-          const currentCoefficientOfVariation = currentAverageSpeed > 0 ? Math.sqrt(currentVariance) / currentAverageSpeed : 0;
-          const currentStabilityScore = Math.max(0, Math.min(100, 100 - (currentCoefficientOfVariation * 100)));
+          const currentStabilityScore = steadyState.stabilityScore();
 
           // Send progress update
           onProgress?.({
@@ -280,14 +393,7 @@ export class SpeedTestService {
       ? smoothedSpeeds.reduce((a, b) => a + b, 0) / smoothedSpeeds.length
       : totalBytes > 0 ? (totalBytes * 8) / (1024 * 1024) / actualDurationSeconds : 0;
 
-    // Calculate stability using smoothed speeds (lower variance = higher stability)
-    const variance = smoothedSpeeds.length > 0
-      ? smoothedSpeeds.reduce((sum, speed) => sum + Math.pow(speed - averageSpeedMbps, 2), 0) / smoothedSpeeds.length
-      : 0;
-
-    // Improved stability score calculation
-    const coefficientOfVariation = averageSpeedMbps > 0 ? Math.sqrt(variance) / averageSpeedMbps : 0;
-    const stabilityScore = Math.max(0, Math.min(100, 100 - (coefficientOfVariation * 100)));
+    const stabilityScore = steadyState.stabilityScore();
 
     console.log(`Download test completed: ${averageSpeedMbps.toFixed(2)} Mbps (peak: ${peakSpeed.toFixed(2)} Mbps), ${(totalBytes / 1024 / 1024).toFixed(2)} MB in ${actualDurationSeconds.toFixed(2)}s, stability: ${stabilityScore.toFixed(0)}%`);
 
@@ -315,6 +421,8 @@ export class SpeedTestService {
       const startTime = performance.now();
       let peakSpeed = 0;
       const speeds: number[] = [];
+      // Stability over the raw 250ms interval speeds after ramp-up, same definition as the backend
+      const steadyState = new SteadyStateTracker(durationSeconds * 1000 / 2);
       let lastProgressTime = startTime;
       let lastLoadedBytes = 0;
 
@@ -357,6 +465,7 @@ export class SpeedTestService {
           // Calculate smoothed speed
           const smoothedSpeed = speedWindow.reduce((a, b) => a + b, 0) / speedWindow.length;
           speeds.push(smoothedSpeed);
+          steadyState.addSample(instantSpeed, elapsedTime * 1000);
           peakSpeed = Math.max(peakSpeed, smoothedSpeed);
 
           lastProgressTime = currentTime;
@@ -367,11 +476,7 @@ export class SpeedTestService {
           const currentAverageSpeed = speeds.length > 0
             ? speeds.reduce((a, b) => a + b, 0) / speeds.length
             : 0;
-          const currentVariance = speeds.length > 0
-            ? speeds.reduce((sum, speed) => sum + Math.pow(speed - currentAverageSpeed, 2), 0) / speeds.length
-            : 0;
-          const currentCoefficientOfVariation = currentAverageSpeed > 0 ? Math.sqrt(currentVariance) / currentAverageSpeed : 0;
-          const currentStabilityScore = Math.max(0, Math.min(100, 100 - (currentCoefficientOfVariation * 100)));
+          const currentStabilityScore = steadyState.stabilityScore();
 
           // Send progress update
           onProgress?.({
@@ -403,14 +508,7 @@ export class SpeedTestService {
           ? speeds.reduce((a, b) => a + b, 0) / speeds.length
           : (totalBytes * 8) / (1024 * 1024) / actualDurationSeconds;
 
-        // Calculate stability using smoothed speeds
-        const variance = speeds.length > 0
-          ? speeds.reduce((sum, speed) => sum + Math.pow(speed - averageSpeedMbps, 2), 0) / speeds.length
-          : 0;
-
-        // Improved stability score calculation
-        const coefficientOfVariation = averageSpeedMbps > 0 ? Math.sqrt(variance) / averageSpeedMbps : 0;
-        const stabilityScore = Math.max(0, Math.min(100, 100 - (coefficientOfVariation * 100)));
+        const stabilityScore = steadyState.stabilityScore();
 
         console.log(`Upload test completed: ${averageSpeedMbps.toFixed(2)} Mbps (peak: ${peakSpeed.toFixed(2)} Mbps), stability: ${stabilityScore.toFixed(0)}%`);
 
@@ -643,10 +741,13 @@ export class SpeedTestService {
     return this.http.get<HistoryItem[]>(`${this.baseUrl}/history`, { params });
   }
 
-  getTimeSeriesData(startDate: string, endDate: string): Observable<TimeSeriesData> {
-    const params = new HttpParams()
+  getTimeSeriesData(startDate: string, endDate: string, granularity?: 'HOUR' | 'DAY'): Observable<TimeSeriesData> {
+    let params = new HttpParams()
       .set('startDate', startDate)
       .set('endDate', endDate);
+    if (granularity) {
+      params = params.set('granularity', granularity);
+    }
     return this.http.get<TimeSeriesData>(`${this.baseUrl}/timeseries`, { params });
   }
 
@@ -0,0 +1,149 @@
+package com.webstats.loadtest;
+
+import com.webstats.model.SpeedTestResult;
+import com.webstats.service.DownloadTestService;
+import com.webstats.service.LatencyMeasurementService;
+import com.webstats.service.PhaseMeasurement;
+import com.webstats.service.UploadTestService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Checks the server-side speed test engines against ground truth: the application is booted
+ * in-process with its engines pointed at an EmulatedLink, and the download and upload engines
+ * are run at each configured rate. A rate passes when the measured speed is within the tolerance
+ * of the link rate; the process exits with status 1 if any check failed.
+ *
+ *   mvn -f loadtest/pom.xml compile exec:java -Dexec.mainClass=com.webstats.loadtest.AccuracyCheck \
+ *       -Dexec.args="--rates=10,100,1000,10000 --tolerance-percent=5 --rtt-millis=20"
+ *
+ * The engines report Mbps as 2^20 bits per second, the link is configured in 10^6; both are
+ * compared in bits per second. The latency engine is checked by its first-byte time, which
+ * crosses the link both ways and so should equal the RTT plus the server's response time. Its
+ * ping is a TCP connect, which the kernel completes before the proxy sees the connection, so it
+ * is only reported. With loss configured, rates are reported but not checked: the emulated
+ * retransmission stalls make the link rate an upper bound rather than the expected result.
+ *
+ * Every step moves the full rate through the proxy and the application in one JVM, three
+ * copies in all; at 10 Gbps that needs a correspondingly fast host, and a failure there should
+ * be read against the proxy's own throughput (see EmulatedLink).
+ */
+public class AccuracyCheck {
+
+    static final double ENGINE_BITS_PER_MEGABIT = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        List<Double> rates = List.of(10.0, 100.0, 1000.0, 10000.0);
+        double tolerancePercent = 5;
+        double latencyToleranceMillis = 5;
+        double rttMillis = 20;
+        double jitterMillis = 0;
+        double lossPercent = 0;
+        long seed = 1;
+        int durationSeconds = 5;
+        int port = 8080;
+        String mongoImage = "mongo:7.0";
+
+        for (Map.Entry<String, String> entry : LoadTestOptions.namedArgs(args).entrySet()) {
+            String value = entry.getValue();
+            switch (entry.getKey()) {
+                case "rates" -> rates = parseRates(value);
+                case "tolerance-percent" -> tolerancePercent = Double.parseDouble(value);
+                case "latency-tolerance-millis" -> latencyToleranceMillis = Double.parseDouble(value);
+                case "rtt-millis" -> rttMillis = Double.parseDouble(value);
+                case "jitter-millis" -> jitterMillis = Double.parseDouble(value);
+                case "loss-percent" -> lossPercent = Double.parseDouble(value);
+                case "seed" -> seed = Long.parseLong(value);
+                case "duration-seconds" -> durationSeconds = Integer.parseInt(value);
+                case "port" -> port = Integer.parseInt(value);
+                case "mongo-image" -> mongoImage = value;
+                default -> {
+                    System.err.println("Unknown option --" + entry.getKey() + "; expected rates, tolerance-percent, "
+                            + "latency-tolerance-millis, rtt-millis, jitter-millis, loss-percent, seed, "
+                            + "duration-seconds, port, mongo-image");
+                    System.exit(2);
+                }
+            }
+        }
+
+        EmulatedLink link = new EmulatedLink("localhost", port,
+                new EmulatedLink.Conditions(rates.get(0), rttMillis, jitterMillis, lossPercent), seed);
+        int linkPort = link.start();
+        LocalServer server = LocalServer.start(port, mongoImage,
+                "webstats.speedtest.engine.base-url=http://localhost:" + linkPort);
+
+        SpeedTestResult.TestConfiguration config = new SpeedTestResult.TestConfiguration();
+        config.setNumberOfRuns(1);
+        config.setTestDurationSeconds(durationSeconds);
+
+        DownloadTestService downloadTestService = server.getBean(DownloadTestService.class);
+        UploadTestService uploadTestService = server.getBean(UploadTestService.class);
+        LatencyMeasurementService latencyMeasurementService = server.getBean(LatencyMeasurementService.class);
+
+        boolean checkRates = lossPercent == 0;
+        boolean passed = true;
+        System.out.printf("%n%-10s %12s %12s %9s %12s %9s%n", "link Mbps", "download", "error", "", "upload", "error");
+        for (double rate : rates) {
+            link.setConditions(new EmulatedLink.Conditions(rate, rttMillis, jitterMillis, lossPercent));
+            double download = toMegabits(downloadTestService.performDownloadTest(config));
+            double upload = toMegabits(uploadTestService.performUploadTest(config));
+            double downloadError = errorPercent(download, rate);
+            double uploadError = errorPercent(upload, rate);
+            boolean downloadOk = !checkRates || downloadError <= tolerancePercent;
+            boolean uploadOk = !checkRates || uploadError <= tolerancePercent;
+            passed &= downloadOk && uploadOk;
+            System.out.printf("%-10.0f %12.2f %11.2f%% %9s %12.2f %8.2f%% %s%n", rate, download, downloadError,
+                    downloadOk ? "" : "FAIL", upload, uploadError, uploadOk ? "" : "FAIL");
+        }
+
+        link.setConditions(new EmulatedLink.Conditions(rates.get(0), rttMillis, jitterMillis, lossPercent));
+        SpeedTestResult.LatencyMetrics latency;
+        try {
+            latency = latencyMeasurementService.measureLatency("localhost", linkPort).get();
+        } catch (ExecutionException e) {
+            System.out.println("Latency measurement failed: " + e.getCause().getMessage());
+            latency = new SpeedTestResult.LatencyMetrics();
+        }
+        double firstByte = latency.getFirstByteMs() != null ? latency.getFirstByteMs() : -1;
+        boolean latencyOk = firstByte >= 0
+                && Math.abs(firstByte - rttMillis) <= Math.max(latencyToleranceMillis, rttMillis * tolerancePercent / 100);
+        passed &= latencyOk;
+        System.out.printf("%nRTT %.1f ms: first byte %.2f ms %s, ping (TCP connect, not emulated) %.2f ms%n",
+                rttMillis, firstByte, latencyOk ? "" : "FAIL", latency.getPingMs() != null ? latency.getPingMs() : -1);
+        if (!checkRates) {
+            System.out.println("Loss configured: rates reported, not checked");
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        link.close();
+        server.close();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static List<Double> parseRates(String value) {
+        List<Double> rates = new ArrayList<>();
+        for (String rate : value.split(",")) {
+            rates.add(Double.parseDouble(rate.trim()));
+        }
+        return rates;
+    }
+
+    // A failed measurement counts as zero and so fails the check; partial metrics are not compared
+    static double toMegabits(CompletableFuture<PhaseMeasurement> measurement)
+            throws InterruptedException {
+        try {
+            return measurement.get().getMetrics().getSpeedMbps() * ENGINE_BITS_PER_MEGABIT / 1_000_000;
+        } catch (ExecutionException e) {
+            System.out.println("Measurement failed: " + e.getCause().getMessage());
+            return 0;
+        }
+    }
+
+    static double errorPercent(double measuredMbps, double linkMbps) {
+        return Math.abs(measuredMbps - linkMbps) / linkMbps * 100;
+    }
+}
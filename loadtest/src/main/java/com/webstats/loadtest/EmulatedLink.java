@@ -0,0 +1,304 @@
+package com.webstats.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Local TCP proxy that forwards to the instance under test under known network conditions,
+ * standing in for a subscriber line: a rate in each direction, round-trip time, jitter and
+ * loss. Every accepted connection gets its own pacing, so concurrent users each see the full
+ * rate, as separate subscribers would. Conditions can be changed while running; open
+ * connections pick them up with the next chunk.
+ *
+ * Each direction of a connection is two stages. The reader paces chunks to the rate (the
+ * serialization delay) and stamps each with its delivery time: when it was serialized plus half
+ * the RTT, plus a jitter drawn uniformly from +-jitter. The writer delivers chunks at those
+ * times, in order, as TCP would; jitter therefore never reorders data, it only bunches it.
+ *
+ * A userspace proxy cannot drop bytes of a TCP stream, so loss is emulated by its effect on one:
+ * each segment (1460 bytes) is lost with the given probability, and a chunk containing a lost
+ * segment is held back one extra RTT, as a fast retransmit would. Loss has no effect without RTT,
+ * and the sender's congestion control backing off is not modelled: loss shows as latency spikes.
+ *
+ * Jitter and loss are drawn from a Random seeded from the link's seed and the connection and
+ * direction, so a run with the same seed and connection order sees the same conditions.
+ *
+ * Pacing keeps a virtual clock of when the line is next free: each chunk advances it by its
+ * serialization time and the reader sleeps until then. Oversleeping is made up by the following
+ * chunks, up to a small burst allowance, so the long-run rate stays exact.
+ */
+public class EmulatedLink implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(EmulatedLink.class);
+
+    private static final int MIN_CHUNK_BYTES = 16 * 1024;
+    private static final int MAX_CHUNK_BYTES = 256 * 1024;
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final int SEGMENT_BYTES = 1460;
+    // Data accepted from the sender but not yet delivered, per direction of a connection
+    private static final int MAX_IN_FLIGHT_BYTES = 64 * 1024 * 1024;
+
+    private final String targetHost;
+    private final int targetPort;
+    private final long seed;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Conditions conditions;
+    private ServerSocket serverSocket;
+
+    public EmulatedLink(String targetHost, int targetPort, double megabitsPerSecond) {
+        this(targetHost, targetPort, Conditions.rate(megabitsPerSecond), 1L);
+    }
+
+    public EmulatedLink(String targetHost, int targetPort, Conditions conditions, long seed) {
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.conditions = conditions;
+        this.seed = seed;
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port and returns it.
+     */
+    public int start() throws IOException {
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        workers.submit(this::acceptLoop);
+        log.info("Emulated link {} on port {} -> {}:{}", conditions, serverSocket.getLocalPort(), targetHost, targetPort);
+        return serverSocket.getLocalPort();
+    }
+
+    public Conditions getConditions() { return conditions; }
+
+    public void setConditions(Conditions conditions) {
+        this.conditions = conditions;
+        log.info("Emulated link conditions changed to {}", conditions);
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                Socket upstream = new Socket(targetHost, targetPort);
+                client.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                int connection = connectionCount.getAndIncrement();
+                AtomicInteger openDirections = new AtomicInteger(2);
+                startDirection(client, upstream, openDirections, new Random(seed * 31 + connection * 2L));
+                startDirection(upstream, client, openDirections, new Random(seed * 31 + connection * 2L + 1));
+            } catch (SocketException e) {
+                // Closed
+            } catch (IOException e) {
+                log.warn("Emulated link failed to accept or connect: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void startDirection(Socket from, Socket to, AtomicInteger openDirections, Random random) {
+        Direction direction = new Direction(from, to, openDirections, random, chunkBytes(conditions.getMegabitsPerSecond()));
+        workers.submit(direction::read);
+        workers.submit(direction::deliver);
+    }
+
+    // About a millisecond of data, so pacing stays smooth at low rates and cheap at high ones
+    private static int chunkBytes(double megabitsPerSecond) {
+        long bytesPerMilli = (long) (megabitsPerSecond * 1_000_000 / 8 / 1000);
+        return (int) Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, bytesPerMilli));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    private static void parkUntil(long nanoTime) {
+        long wait;
+        while ((wait = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * One direction of one proxied connection.
+     */
+    private class Direction {
+        private final Socket from;
+        private final Socket to;
+        // Both sockets are closed once neither direction has anything left to deliver
+        private final AtomicInteger openDirections;
+        private final Random random;
+        private final int chunkBytes;
+        private final BlockingQueue<Chunk> inFlight = new LinkedBlockingQueue<>();
+        private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+        private final Semaphore inFlightBuffers;
+        private long nextFreeNanos = System.nanoTime();
+        private long lastDeliveryNanos;
+
+        Direction(Socket from, Socket to, AtomicInteger openDirections, Random random, int chunkBytes) {
+            this.from = from;
+            this.to = to;
+            this.openDirections = openDirections;
+            this.random = random;
+            this.chunkBytes = chunkBytes;
+            this.inFlightBuffers = new Semaphore(Math.max(2, MAX_IN_FLIGHT_BYTES / chunkBytes));
+        }
+
+        void read() {
+            // Not closed here: closing a socket stream closes the socket, and the other direction may still be delivering
+            try {
+                InputStream in = from.getInputStream();
+                while (true) {
+                    inFlightBuffers.acquire();
+                    byte[] buffer = freeBuffers.poll();
+                    if (buffer == null) {
+                        buffer = new byte[chunkBytes];
+                    }
+                    int read = in.read(buffer);
+                    if (read == -1) {
+                        break;
+                    }
+                    Conditions current = conditions;
+                    long serializedAt = pace(read, current);
+                    inFlight.add(new Chunk(buffer, read, deliveryTime(serializedAt, read, current)));
+                }
+            } catch (IOException | InterruptedException e) {
+                // Either side went away, or the link is closing
+            }
+            inFlight.add(Chunk.END);
+        }
+
+        void deliver() {
+            try {
+                OutputStream out = to.getOutputStream();
+                while (true) {
+                    Chunk chunk = inFlight.take();
+                    if (chunk == Chunk.END) {
+                        to.shutdownOutput();
+                        if (openDirections.decrementAndGet() == 0) {
+                            closeQuietly(to);
+                            closeQuietly(from);
+                        }
+                        return;
+                    }
+                    parkUntil(chunk.deliverAtNanos);
+                    out.write(chunk.buffer, 0, chunk.length);
+                    out.flush();
+                    freeBuffers.add(chunk.buffer);
+                    inFlightBuffers.release();
+                }
+            } catch (IOException | InterruptedException e) {
+                closeQuietly(to);
+                closeQuietly(from);
+            }
+        }
+
+        // Serialization delay: returns when the chunk has been put on the line
+        private long pace(int bytes, Conditions current) {
+            double nanosPerByte = 8e9 / (current.getMegabitsPerSecond() * 1_000_000);
+            long now = System.nanoTime();
+            long start = Math.max(nextFreeNanos, now - BURST_NANOS);
+            nextFreeNanos = start + Math.round(bytes * nanosPerByte);
+            parkUntil(nextFreeNanos);
+            return nextFreeNanos;
+        }
+
+        private long deliveryTime(long serializedAt, int bytes, Conditions current) {
+            double delayMillis = current.getRttMillis() / 2;
+            if (current.getJitterMillis() > 0) {
+                delayMillis += (random.nextDouble() * 2 - 1) * current.getJitterMillis();
+            }
+            if (current.getLossPercent() > 0) {
+                int segments = (bytes + SEGMENT_BYTES - 1) / SEGMENT_BYTES;
+                double chunkLoss = 1 - Math.pow(1 - current.getLossPercent() / 100, segments);
+                if (random.nextDouble() < chunkLoss) {
+                    delayMillis += current.getRttMillis();
+                }
+            }
+            long deliverAt = serializedAt + Math.round(Math.max(0, delayMillis) * 1_000_000);
+            // In order, as TCP delivers
+            lastDeliveryNanos = Math.max(lastDeliveryNanos, deliverAt);
+            return lastDeliveryNanos;
+        }
+    }
+
+    private static class Chunk {
+        static final Chunk END = new Chunk(null, 0, 0);
+
+        final byte[] buffer;
+        final int length;
+        final long deliverAtNanos;
+
+        Chunk(byte[] buffer, int length, long deliverAtNanos) {
+            this.buffer = buffer;
+            this.length = length;
+            this.deliverAtNanos = deliverAtNanos;
+        }
+    }
+
+    /**
+     * Network conditions of the link; the rate applies to each direction separately.
+     */
+    public static class Conditions {
+        private final double megabitsPerSecond;
+        private final double rttMillis;
+        private final double jitterMillis;
+        private final double lossPercent;
+
+        public Conditions(double megabitsPerSecond, double rttMillis, double jitterMillis, double lossPercent) {
+            if (megabitsPerSecond <= 0) {
+                throw new IllegalArgumentException("Link rate must be positive");
+            }
+            this.megabitsPerSecond = megabitsPerSecond;
+            this.rttMillis = rttMillis;
+            this.jitterMillis = jitterMillis;
+            this.lossPercent = lossPercent;
+        }
+
+        public static Conditions rate(double megabitsPerSecond) {
+            return new Conditions(megabitsPerSecond, 0, 0, 0);
+        }
+
+        public double getMegabitsPerSecond() { return megabitsPerSecond; }
+        public double getRttMillis() { return rttMillis; }
+        public double getJitterMillis() { return jitterMillis; }
+        public double getLossPercent() { return lossPercent; }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f Mbps, RTT %.1f ms, jitter %.1f ms, loss %.2f%%",
+                    megabitsPerSecond, rttMillis, jitterMillis, lossPercent);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.webstats.loadtest;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the speed test API with a configurable number of virtual users and reports throughput,
+ * latency percentiles, the target's heap/GC/thread usage and the measurement error of transfers
+ * over an emulated link of known rate (see LoadTestOptions for the options):
+ *
+ *   mvn -f loadtest/pom.xml compile exec:java -Dloadtest.args="--concurrency=50 --duration-seconds=120"
+ *
+ * Without --target the application is booted in this JVM against a throwaway Mongo container
+ * (Docker required). For heap and GC numbers that exclude the driver, run against a separate
+ * instance with --target=http://host:port.
+ */
+public class LoadTestMain {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.usage());
+            System.exit(2);
+            return;
+        }
+
+        LocalServer localServer = null;
+        String baseUrl = options.getTarget();
+        if (baseUrl == null) {
+            localServer = LocalServer.start(options.getPort(), options.getMongoImage());
+            baseUrl = localServer.getBaseUrl();
+        }
+
+        EmulatedLink link = null;
+        String transferBaseUrl = baseUrl;
+        if (options.getLinkMbps() > 0) {
+            URI target = URI.create(baseUrl);
+            int targetPort = target.getPort() != -1 ? target.getPort() : 80;
+            EmulatedLink.Conditions conditions = new EmulatedLink.Conditions(options.getLinkMbps(),
+                    options.getRttMillis(), options.getJitterMillis(), options.getLossPercent());
+            link = new EmulatedLink(target.getHost(), targetPort, conditions, options.getSeed());
+            transferBaseUrl = "http://localhost:" + link.start();
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        byte[] uploadPayload = new byte[options.getUploadMb() * 1024 * 1024];
+        ThreadLocalRandom.current().nextBytes(uploadPayload);
+
+        long now = System.nanoTime();
+        long rampUpNanos = TimeUnit.SECONDS.toNanos(options.getRampUpSeconds());
+        long stopAt = now + rampUpNanos + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        LoadTestReport report = new LoadTestReport(options.getLinkMbps(), now + rampUpNanos);
+        ServerStats serverStats = new ServerStats(baseUrl, client);
+
+        System.out.printf("Running %d users against %s for %d s after %d s ramp-up%n", options.getConcurrency(),
+                baseUrl, options.getDurationSeconds(), options.getRampUpSeconds());
+        List<Future<?>> users = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.getConcurrency(); i++) {
+                long startAt = now + rampUpNanos * i / options.getConcurrency();
+                users.add(executor.submit(new VirtualUser(i, options, client, baseUrl, transferBaseUrl, uploadPayload,
+                        report, startAt, stopAt)));
+            }
+            TimeUnit.NANOSECONDS.sleep(rampUpNanos);
+            serverStats.start();
+            TimeUnit.NANOSECONDS.sleep(stopAt - System.nanoTime());
+            report.stopRecording();
+            serverStats.stop();
+            // Operations in flight at the end are not recorded; don't wait for long transfers or tests
+            users.forEach(user -> user.cancel(true));
+        }
+
+        report.print(System.out, serverStats);
+        File reportFile = new File(options.getReport());
+        report.write(reportFile, options, serverStats);
+        System.out.println("Report written to " + reportFile.getPath());
+
+        if (link != null) {
+            link.close();
+        }
+        if (localServer != null) {
+            localServer.close();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,159 @@
+package com.webstats.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options, all given as --name=value. Unknown names are rejected so typos don't
+ * silently run with defaults.
+ */
+public class LoadTestOptions {
+
+    public static final List<String> ALL_OPERATIONS = List.of("start", "download", "upload", "results", "ping");
+
+    // Base URL of a running instance; null boots the application in-process against a Mongo container
+    private String target;
+    private int port = 8080;
+    private int concurrency = 20;
+    private int durationSeconds = 60;
+    private int rampUpSeconds = 10;
+    private List<String> operations = ALL_OPERATIONS;
+    private int downloadMb = 10;
+    private int uploadMb = 5;
+    // Rate of the emulated link the download/upload transfers go through; 0 sends them directly
+    private double linkMbps = 100;
+    private double rttMillis = 0;
+    private double jitterMillis = 0;
+    private double lossPercent = 0;
+    private long seed = 1;
+    private int statusPollMillis = 500;
+    private int testTimeoutSeconds = 120;
+    private int pingsPerSession = 10;
+    private String mongoImage = "mongo:7.0";
+    private String report = "loadtest-report.json";
+
+    /**
+     * Splits --name=value arguments; shared with AccuracyCheck.
+     */
+    static Map<String, String> namedArgs(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return values;
+    }
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (Map.Entry<String, String> entry : namedArgs(args).entrySet()) {
+            String value = entry.getValue();
+            switch (entry.getKey()) {
+                case "target" -> options.target = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                case "port" -> options.port = Integer.parseInt(value);
+                case "concurrency" -> options.concurrency = Integer.parseInt(value);
+                case "duration-seconds" -> options.durationSeconds = Integer.parseInt(value);
+                case "ramp-up-seconds" -> options.rampUpSeconds = Integer.parseInt(value);
+                case "operations" -> options.operations = parseOperations(value);
+                case "download-mb" -> options.downloadMb = Integer.parseInt(value);
+                case "upload-mb" -> options.uploadMb = Integer.parseInt(value);
+                case "link-mbps" -> options.linkMbps = Double.parseDouble(value);
+                case "rtt-millis" -> options.rttMillis = Double.parseDouble(value);
+                case "jitter-millis" -> options.jitterMillis = Double.parseDouble(value);
+                case "loss-percent" -> options.lossPercent = Double.parseDouble(value);
+                case "seed" -> options.seed = Long.parseLong(value);
+                case "status-poll-millis" -> options.statusPollMillis = Integer.parseInt(value);
+                case "test-timeout-seconds" -> options.testTimeoutSeconds = Integer.parseInt(value);
+                case "pings-per-session" -> options.pingsPerSession = Integer.parseInt(value);
+                case "mongo-image" -> options.mongoImage = value;
+                case "report" -> options.report = value;
+                default -> throw new IllegalArgumentException("Unknown option --" + entry.getKey());
+            }
+        }
+        if (options.concurrency < 1 || options.durationSeconds < 1) {
+            throw new IllegalArgumentException("--concurrency and --duration-seconds must be at least 1");
+        }
+        if (options.downloadMb < 1 || options.downloadMb > 100) {
+            throw new IllegalArgumentException("--download-mb must be between 1 and 100 (the download endpoint's limit)");
+        }
+        return options;
+    }
+
+    private static List<String> parseOperations(String value) {
+        List<String> operations = new ArrayList<>();
+        for (String operation : value.split(",")) {
+            String name = operation.trim();
+            if (!ALL_OPERATIONS.contains(name)) {
+                throw new IllegalArgumentException("Unknown operation " + name + ", expected one of " + ALL_OPERATIONS);
+            }
+            operations.add(name);
+        }
+        return operations;
+    }
+
+    public static String usage() {
+        return String.join(System.lineSeparator(), Arrays.asList(
+                "Options (all --name=value):",
+                "  target                base URL of a running instance; omitted = boot in-process with a Mongo container",
+                "  port                  port of the in-process instance (default 8080)",
+                "  concurrency           virtual users (default 20)",
+                "  duration-seconds      measured run time after ramp-up (default 60)",
+                "  ramp-up-seconds       time over which users are started (default 10)",
+                "  operations            comma list of " + ALL_OPERATIONS + " (default all)",
+                "  download-mb           size of each /download transfer, 1-100 (default 10)",
+                "  upload-mb             size of each /upload transfer (default 5)",
+                "  link-mbps             emulated per-user link rate for transfers, 0 = direct (default 100)",
+                "  rtt-millis            round-trip time added by the emulated link (default 0)",
+                "  jitter-millis         uniform +- variation of the one-way delay (default 0)",
+                "  loss-percent          per-segment loss, emulated as retransmission stalls (default 0)",
+                "  seed                  seed for jitter and loss (default 1)",
+                "  status-poll-millis    /status polling interval (default 500)",
+                "  test-timeout-seconds  give up on a started test after this long (default 120)",
+                "  pings-per-session     WebSocket pings per /ws/ping session (default 10)",
+                "  mongo-image           Mongo container image (default mongo:7.0)",
+                "  report                JSON report file (default loadtest-report.json)"));
+    }
+
+    public String getTarget() { return target; }
+    public int getPort() { return port; }
+    public int getConcurrency() { return concurrency; }
+    public int getDurationSeconds() { return durationSeconds; }
+    public int getRampUpSeconds() { return rampUpSeconds; }
+    public List<String> getOperations() { return operations; }
+    public int getDownloadMb() { return downloadMb; }
+    public int getUploadMb() { return uploadMb; }
+    public double getLinkMbps() { return linkMbps; }
+    public double getRttMillis() { return rttMillis; }
+    public double getJitterMillis() { return jitterMillis; }
+    public double getLossPercent() { return lossPercent; }
+    public long getSeed() { return seed; }
+    public int getStatusPollMillis() { return statusPollMillis; }
+    public int getTestTimeoutSeconds() { return testTimeoutSeconds; }
+    public int getPingsPerSession() { return pingsPerSession; }
+    public String getMongoImage() { return mongoImage; }
+    public String getReport() { return report; }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("target", target != null ? target : "in-process");
+        map.put("concurrency", concurrency);
+        map.put("durationSeconds", durationSeconds);
+        map.put("rampUpSeconds", rampUpSeconds);
+        map.put("operations", operations);
+        map.put("downloadMb", downloadMb);
+        map.put("uploadMb", uploadMb);
+        map.put("linkMbps", linkMbps);
+        map.put("rttMillis", rttMillis);
+        map.put("jitterMillis", jitterMillis);
+        map.put("lossPercent", lossPercent);
+        map.put("seed", seed);
+        map.put("statusPollMillis", statusPollMillis);
+        return map;
+    }
+}
@@ -0,0 +1,118 @@
+package com.webstats.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Everything the virtual users record, and its console and JSON rendering. Results are only
+ * recorded once the ramp-up is over, so throughput is per second of steady-state load.
+ */
+public class LoadTestReport {
+
+    public static final String START = "start";
+    public static final String STATUS = "status";
+    public static final String TEST = "test (start to completed)";
+    public static final String DOWNLOAD = "download";
+    public static final String UPLOAD = "upload";
+    public static final String RESULTS = "results";
+    public static final String PING_CONNECT = "ping (connect)";
+    public static final String PING = "ping (round trip)";
+
+    private final Map<String, OperationStats> operations = new LinkedHashMap<>();
+    private final TransferStats downloads;
+    private final TransferStats uploads;
+    private final long recordFromNanos;
+    private volatile long recordUntilNanos;
+
+    public LoadTestReport(double linkMbps, long recordFromNanos) {
+        for (String name : new String[]{START, STATUS, TEST, DOWNLOAD, UPLOAD, RESULTS, PING_CONNECT, PING}) {
+            operations.put(name, new OperationStats(name));
+        }
+        this.downloads = new TransferStats(linkMbps);
+        this.uploads = new TransferStats(linkMbps);
+        this.recordFromNanos = recordFromNanos;
+    }
+
+    public boolean isRecording() {
+        long now = System.nanoTime();
+        return now >= recordFromNanos && (recordUntilNanos == 0 || now < recordUntilNanos);
+    }
+
+    public void stopRecording() {
+        recordUntilNanos = System.nanoTime();
+    }
+
+    public OperationStats operation(String name) {
+        return operations.get(name);
+    }
+
+    public TransferStats downloads() { return downloads; }
+    public TransferStats uploads() { return uploads; }
+
+    private double elapsedSeconds() {
+        long until = recordUntilNanos != 0 ? recordUntilNanos : System.nanoTime();
+        return Math.max(until - recordFromNanos, 1) / 1e9;
+    }
+
+    public void print(PrintStream out, ServerStats serverStats) {
+        double elapsed = elapsedSeconds();
+        out.printf("%nSteady state: %.1f s%n%n", elapsed);
+        out.printf("%-28s %10s %9s %9s %10s %10s %10s %10s%n",
+                "operation", "ok", "rejected", "failed", "ops/s", "p50 ms", "p99 ms", "max ms");
+        for (OperationStats stats : operations.values()) {
+            if (stats.getSucceeded() + stats.getRejected() + stats.getFailed() == 0) {
+                continue;
+            }
+            out.printf("%-28s %10d %9d %9d %10.2f %10.1f %10.1f %10.1f%n", stats.getName(), stats.getSucceeded(),
+                    stats.getRejected(), stats.getFailed(), stats.getSucceeded() / elapsed,
+                    stats.percentileMillis(50), stats.percentileMillis(99), stats.maxMillis());
+        }
+
+        out.println();
+        printTransfers(out, "download", downloads, elapsed);
+        printTransfers(out, "upload", uploads, elapsed);
+
+        out.println();
+        serverStats.toMap().forEach((name, value) -> out.printf("%-28s %s%n", name,
+                value instanceof Double d ? String.format("%.2f", d) : value));
+    }
+
+    private static void printTransfers(PrintStream out, String direction, TransferStats stats, double elapsed) {
+        Map<String, Object> values = stats.toMap(elapsed);
+        if (((Number) values.get("transfers")).longValue() == 0) {
+            return;
+        }
+        out.printf("%-10s aggregate %.1f Mbps, per transfer p50 %.1f / p1 %.1f Mbps", direction,
+                values.get("aggregateMbps"), stats.rateMbps(50), stats.rateMbps(1));
+        if (values.containsKey("linkMbps")) {
+            out.printf(", measurement error vs %.0f Mbps link: mean %.2f%% p50 %.2f%% p99 %.2f%%",
+                    values.get("linkMbps"), stats.meanErrorPercent(), stats.errorPercent(50), stats.errorPercent(99));
+        }
+        out.println();
+    }
+
+    public void write(File file, LoadTestOptions options, ServerStats serverStats) throws IOException {
+        double elapsed = elapsedSeconds();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options.toMap());
+        report.put("steadyStateSeconds", elapsed);
+
+        Map<String, Object> operationReports = new LinkedHashMap<>();
+        operations.forEach((name, stats) -> operationReports.put(name, stats.toMap(elapsed)));
+        report.put("operations", operationReports);
+
+        Map<String, Object> transfers = new LinkedHashMap<>();
+        transfers.put("download", downloads.toMap(elapsed));
+        transfers.put("upload", uploads.toMap(elapsed));
+        report.put("transfers", transfers);
+        report.put("server", serverStats.toMap());
+
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, report);
+    }
+}
@@ -0,0 +1,65 @@
+package com.webstats.loadtest;
+
+import com.webstats.WebStatsApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The application booted in this JVM against a throwaway Mongo container (Docker required).
+ */
+public class LocalServer implements Closeable {
+
+    private final MongoDBContainer mongo;
+    private final ConfigurableApplicationContext application;
+    private final int port;
+
+    private LocalServer(MongoDBContainer mongo, ConfigurableApplicationContext application, int port) {
+        this.mongo = mongo;
+        this.application = application;
+        this.port = port;
+    }
+
+    /**
+     * @param properties additional application properties as name=value
+     */
+    public static LocalServer start(int port, String mongoImage, String... properties) {
+        MongoDBContainer mongo = new MongoDBContainer(DockerImageName.parse(mongoImage));
+        mongo.start();
+
+        List<String> args = new ArrayList<>();
+        args.add("--server.port=" + port);
+        args.add("--spring.data.mongodb.uri=" + mongo.getReplicaSetUrl("webstats"));
+        args.add("--spring.profiles.active=prod");
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        try {
+            ConfigurableApplicationContext application = new SpringApplicationBuilder(WebStatsApplication.class)
+                    .run(args.toArray(new String[0]));
+            return new LocalServer(mongo, application, port);
+        } catch (RuntimeException e) {
+            mongo.stop();
+            throw e;
+        }
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return application.getBean(type);
+    }
+
+    @Override
+    public void close() {
+        application.close();
+        mongo.stop();
+    }
+}
@@ -0,0 +1,65 @@
+package com.webstats.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcome counts and latency histogram of one operation across all virtual users. Latencies are
+ * recorded in microseconds. Rejections (429/503 from admission control or the bandwidth budget)
+ * are counted apart from failures: they are the server protecting itself, not degrading.
+ */
+public class OperationStats {
+
+    private final String name;
+    private final Histogram latencyMicros = new ConcurrentHistogram(3);
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    public void succeeded(long elapsedNanos) {
+        succeeded.incrementAndGet();
+        latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    public void rejected() {
+        rejected.incrementAndGet();
+    }
+
+    public void failed() {
+        failed.incrementAndGet();
+    }
+
+    public String getName() { return name; }
+    public long getSucceeded() { return succeeded.get(); }
+    public long getRejected() { return rejected.get(); }
+    public long getFailed() { return failed.get(); }
+
+    public double percentileMillis(double percentile) {
+        return latencyMicros.getTotalCount() == 0 ? 0 : latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public double maxMillis() {
+        return latencyMicros.getTotalCount() == 0 ? 0 : latencyMicros.getMaxValue() / 1000.0;
+    }
+
+    public Map<String, Object> toMap(double elapsedSeconds) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("succeeded", getSucceeded());
+        map.put("rejected", getRejected());
+        map.put("failed", getFailed());
+        map.put("throughputPerSecond", getSucceeded() / elapsedSeconds);
+        map.put("p50Ms", percentileMillis(50));
+        map.put("p99Ms", percentileMillis(99));
+        map.put("maxMs", maxMillis());
+        return map;
+    }
+}
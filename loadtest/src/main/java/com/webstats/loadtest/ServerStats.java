@@ -0,0 +1,111 @@
+package com.webstats.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the target's JVM through /actuator/metrics once a second: heap used, live threads and
+ * GC pauses. Works the same for in-process and remote targets; for an in-process target the
+ * numbers include the load driver running in the same JVM.
+ */
+public class ServerStats {
+
+    private static final Logger log = LoggerFactory.getLogger(ServerStats.class);
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private double maxHeapBytes;
+    private double heapBytesSum;
+    private int samples;
+    private double maxLiveThreads;
+    private double startGcCount = Double.NaN;
+    private double startGcSeconds;
+    private double gcCount;
+    private double gcSeconds;
+    private double maxGcPauseSeconds;
+    private double maxCpuUsage;
+
+    public ServerStats(String baseUrl, HttpClient client) {
+        this.baseUrl = baseUrl;
+        this.client = client;
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        sample();
+    }
+
+    private synchronized void sample() {
+        try {
+            double heap = measurement("jvm.memory.used", "area:heap", "VALUE");
+            maxHeapBytes = Math.max(maxHeapBytes, heap);
+            heapBytesSum += heap;
+            samples++;
+            maxLiveThreads = Math.max(maxLiveThreads, measurement("jvm.threads.live", null, "VALUE"));
+            maxCpuUsage = Math.max(maxCpuUsage, measurement("process.cpu.usage", null, "VALUE"));
+
+            double count = measurement("jvm.gc.pause", null, "COUNT");
+            double seconds = measurement("jvm.gc.pause", null, "TOTAL_TIME");
+            if (Double.isNaN(startGcCount)) {
+                startGcCount = count;
+                startGcSeconds = seconds;
+            }
+            gcCount = count - startGcCount;
+            gcSeconds = seconds - startGcSeconds;
+            maxGcPauseSeconds = Math.max(maxGcPauseSeconds, measurement("jvm.gc.pause", null, "MAX"));
+        } catch (Exception e) {
+            log.warn("Failed to sample server metrics: {}", e.getMessage());
+        }
+    }
+
+    private double measurement(String metric, String tag, String statistic) throws Exception {
+        String url = baseUrl + "/actuator/metrics/" + metric
+                + (tag != null ? "?tag=" + URLEncoder.encode(tag, StandardCharsets.UTF_8) : "");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(5)).GET().build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) {
+            // Meter not registered yet, e.g. no GC has happened
+            return 0;
+        }
+        for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+            if (statistic.equals(measurement.path("statistic").asText())) {
+                return measurement.path("value").asDouble();
+            }
+        }
+        return 0;
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("heapUsedMaxMb", maxHeapBytes / (1024 * 1024));
+        map.put("heapUsedMeanMb", samples > 0 ? heapBytesSum / samples / (1024 * 1024) : 0);
+        map.put("liveThreadsMax", (long) maxLiveThreads);
+        map.put("gcPauses", (long) gcCount);
+        map.put("gcPauseTotalMs", gcSeconds * 1000);
+        map.put("gcPauseMaxMs", maxGcPauseSeconds * 1000);
+        map.put("processCpuMax", maxCpuUsage);
+        return map;
+    }
+}
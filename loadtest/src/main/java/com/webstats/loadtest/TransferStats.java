@@ -0,0 +1,70 @@
+package com.webstats.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-measured rates of one transfer direction and their error against the emulated link.
+ *
+ * Every virtual user gets its own link of the configured rate, so an accurate measurement equals
+ * that rate; measurement error is |measured - link| / link. It stays near zero while the node
+ * keeps up and grows once the node, not the link, is the bottleneck. Without an emulated link
+ * only the rates are reported.
+ */
+public class TransferStats {
+
+    // Rates in kbit/s and errors in hundredths of a percent, to keep precision in integer histograms
+    private final Histogram rateKbps = new ConcurrentHistogram(3);
+    private final Histogram errorBasisPoints = new ConcurrentHistogram(3);
+    private final AtomicLong bytes = new AtomicLong();
+    private final double linkMbps;
+
+    public TransferStats(double linkMbps) {
+        this.linkMbps = linkMbps;
+    }
+
+    public void record(long transferredBytes, long elapsedNanos) {
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        bytes.addAndGet(transferredBytes);
+        double mbps = transferredBytes * 8.0 / elapsedNanos * 1000.0;
+        rateKbps.recordValue(Math.round(mbps * 1000));
+        if (linkMbps > 0) {
+            errorBasisPoints.recordValue(Math.round(Math.abs(mbps - linkMbps) / linkMbps * 10_000));
+        }
+    }
+
+    public long getBytes() { return bytes.get(); }
+
+    public double rateMbps(double percentile) {
+        return rateKbps.getTotalCount() == 0 ? 0 : rateKbps.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    public double errorPercent(double percentile) {
+        return errorBasisPoints.getTotalCount() == 0 ? 0 : errorBasisPoints.getValueAtPercentile(percentile) / 100.0;
+    }
+
+    public double meanErrorPercent() {
+        return errorBasisPoints.getTotalCount() == 0 ? 0 : errorBasisPoints.getMean() / 100.0;
+    }
+
+    public Map<String, Object> toMap(double elapsedSeconds) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("transfers", rateKbps.getTotalCount());
+        map.put("aggregateMbps", bytes.get() * 8.0 / elapsedSeconds / 1_000_000);
+        map.put("rateP50Mbps", rateMbps(50));
+        map.put("rateP1Mbps", rateMbps(1));
+        if (linkMbps > 0) {
+            map.put("linkMbps", linkMbps);
+            map.put("errorMeanPercent", meanErrorPercent());
+            map.put("errorP50Percent", errorPercent(50));
+            map.put("errorP99Percent", errorPercent(99));
+        }
+        return map;
+    }
+}
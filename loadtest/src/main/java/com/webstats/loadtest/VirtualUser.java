@@ -0,0 +1,304 @@
+package com.webstats.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated browser, repeating the configured operations in order until the run ends:
+ *
+ * - start: POST /start, then poll /status until the test completes, fails or times out
+ * - download: GET /download/{mb} through the emulated link
+ * - upload: POST /upload through the emulated link
+ * - results: POST /results with a plausible client-side result, as the frontend does
+ * - ping: a /ws/ping session of several PING:/PONG: round trips
+ *
+ * 429 and 503 answers count as rejections, anything else unexpected as a failure.
+ */
+public class VirtualUser implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualUser.class);
+
+    private static final String API = "/api/speedtest";
+
+    private final int id;
+    private final LoadTestOptions options;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final String transferBaseUrl;
+    private final byte[] uploadPayload;
+    private final LoadTestReport report;
+    private final long startAtNanos;
+    private final long stopAtNanos;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public VirtualUser(int id, LoadTestOptions options, HttpClient client, String baseUrl, String transferBaseUrl,
+                       byte[] uploadPayload, LoadTestReport report, long startAtNanos, long stopAtNanos) {
+        this.id = id;
+        this.options = options;
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.transferBaseUrl = transferBaseUrl;
+        this.uploadPayload = uploadPayload;
+        this.report = report;
+        this.startAtNanos = startAtNanos;
+        this.stopAtNanos = stopAtNanos;
+    }
+
+    @Override
+    public void run() {
+        sleepUntil(startAtNanos);
+        while (System.nanoTime() < stopAtNanos) {
+            for (String operation : options.getOperations()) {
+                if (System.nanoTime() >= stopAtNanos) {
+                    return;
+                }
+                try {
+                    switch (operation) {
+                        case "start" -> startAndPoll();
+                        case "download" -> download();
+                        case "upload" -> upload();
+                        case "results" -> submitResults();
+                        case "ping" -> ping();
+                        default -> throw new IllegalStateException(operation);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.debug("User {} {} failed: {}", id, operation, e.toString());
+                }
+            }
+        }
+    }
+
+    private void startAndPoll() throws Exception {
+        Map<String, Object> body = Map.of("testType", "FULL", "testDurationSeconds", 5, "numberOfRuns", 1);
+        long startedAt = System.nanoTime();
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + API + "/start?userId=" + userId()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body))));
+        if (!record(LoadTestReport.START, response.statusCode(), startedAt)) {
+            return;
+        }
+
+        String sessionId = objectMapper.readTree(response.body()).path("sessionId").asText();
+        long giveUpAt = startedAt + TimeUnit.SECONDS.toNanos(options.getTestTimeoutSeconds());
+        while (System.nanoTime() < giveUpAt) {
+            Thread.sleep(options.getStatusPollMillis());
+            long polledAt = System.nanoTime();
+            HttpResponse<String> status = send(HttpRequest.newBuilder(URI.create(baseUrl + API + "/status/" + sessionId)).GET());
+            if (!record(LoadTestReport.STATUS, status.statusCode(), polledAt)) {
+                continue;
+            }
+            String state = objectMapper.readTree(status.body()).path("status").asText();
+            if ("COMPLETED".equals(state)) {
+                record(LoadTestReport.TEST, 200, startedAt);
+                return;
+            }
+            if ("FAILED".equals(state)) {
+                recordFailure(LoadTestReport.TEST);
+                return;
+            }
+        }
+        recordFailure(LoadTestReport.TEST);
+    }
+
+    private void download() throws Exception {
+        long startedAt = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(
+                HttpRequest.newBuilder(URI.create(transferBaseUrl + API + "/download/" + options.getDownloadMb()))
+                        .timeout(transferTimeout(options.getDownloadMb()))
+                        .GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        // Rate from the first to the last byte, like the browser's measurement
+        long firstByteAt = System.nanoTime();
+        long bytes = 0;
+        try (InputStream body = response.body()) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                bytes += read;
+            }
+        }
+        if (record(LoadTestReport.DOWNLOAD, response.statusCode(), startedAt) && report.isRecording()) {
+            report.downloads().record(bytes, System.nanoTime() - firstByteAt);
+        }
+    }
+
+    private void upload() throws Exception {
+        long startedAt = System.nanoTime();
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(transferBaseUrl + API + "/upload"))
+                        .timeout(transferTimeout(options.getUploadMb()))
+                        .header("Content-Type", "application/octet-stream")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(uploadPayload)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        long elapsed = System.nanoTime() - startedAt;
+        if (record(LoadTestReport.UPLOAD, response.statusCode(), startedAt) && report.isRecording()) {
+            report.uploads().record(uploadPayload.length, elapsed);
+        }
+    }
+
+    private void submitResults() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("sessionId", UUID.randomUUID().toString());
+        results.put("downloadMetrics", speedMetrics(random.nextDouble(20, 500), random));
+        results.put("uploadMetrics", speedMetrics(random.nextDouble(5, 100), random));
+        double ping = random.nextDouble(5, 60);
+        results.put("latencyMetrics", Map.of(
+                "pingMs", ping,
+                "jitterMs", ping * random.nextDouble(0.05, 0.5),
+                "packetLossPercent", 0.0));
+
+        long startedAt = System.nanoTime();
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + API + "/results?userId=" + userId()))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(results))));
+        if (response.statusCode() == 200) {
+            JsonNode body = objectMapper.readTree(response.body());
+            if (!body.path("success").asBoolean()) {
+                recordFailure(LoadTestReport.RESULTS);
+                return;
+            }
+        }
+        record(LoadTestReport.RESULTS, response.statusCode(), startedAt);
+    }
+
+    // Consistent with ResultValidationService: bytes match speed * duration, peak >= average
+    private static Map<String, Object> speedMetrics(double mbps, ThreadLocalRandom random) {
+        double duration = random.nextDouble(8, 12);
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("speedMbps", mbps);
+        metrics.put("averageSpeedMbps", mbps);
+        metrics.put("peakSpeedMbps", mbps * random.nextDouble(1.0, 1.3));
+        metrics.put("durationSeconds", duration);
+        metrics.put("bytesTransferred", Math.round(mbps * duration * 1024 * 1024 / 8));
+        metrics.put("stabilityScore", random.nextDouble(70, 100));
+        return metrics;
+    }
+
+    private void ping() throws Exception {
+        BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+        String wsUrl = baseUrl.replaceFirst("^http", "ws") + "/ws/ping";
+        long connectingAt = System.nanoTime();
+        WebSocket webSocket;
+        try {
+            webSocket = client.newWebSocketBuilder()
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .buildAsync(URI.create(wsUrl), new ReplyCollector(replies))
+                    .get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            recordFailure(LoadTestReport.PING_CONNECT);
+            throw e;
+        }
+        record(LoadTestReport.PING_CONNECT, 200, connectingAt);
+
+        try {
+            for (int i = 0; i < options.getPingsPerSession(); i++) {
+                long sentAt = System.nanoTime();
+                webSocket.sendText("PING:" + sentAt, true).get(5, TimeUnit.SECONDS);
+                String reply = replies.poll(5, TimeUnit.SECONDS);
+                if (reply == null || !reply.equals("PONG:" + sentAt)) {
+                    recordFailure(LoadTestReport.PING);
+                } else {
+                    record(LoadTestReport.PING, 200, sentAt);
+                }
+            }
+        } finally {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Records the outcome of a request that was sent at startedAt; returns whether it succeeded.
+     */
+    private boolean record(String operation, int statusCode, long startedAt) {
+        long elapsed = System.nanoTime() - startedAt;
+        boolean succeeded = statusCode >= 200 && statusCode < 300;
+        if (report.isRecording()) {
+            OperationStats stats = report.operation(operation);
+            if (succeeded) {
+                stats.succeeded(elapsed);
+            } else if (statusCode == 429 || statusCode == 503) {
+                stats.rejected();
+            } else {
+                stats.failed();
+            }
+        }
+        return succeeded;
+    }
+
+    private void recordFailure(String operation) {
+        if (report.isRecording()) {
+            report.operation(operation).failed();
+        }
+    }
+
+    private String userId() {
+        return "loadtest-" + id;
+    }
+
+    // Twice the transfer time on the emulated link, at least 30 seconds
+    private Duration transferTimeout(int megabytes) {
+        if (options.getLinkMbps() <= 0) {
+            return Duration.ofSeconds(30);
+        }
+        double seconds = megabytes * 8.0 * 1024 * 1024 / (options.getLinkMbps() * 1_000_000);
+        return Duration.ofSeconds(Math.max(30, (long) Math.ceil(seconds * 2)));
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long wait = nanoTime - System.nanoTime();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class ReplyCollector implements WebSocket.Listener {
+        private final BlockingQueue<String> replies;
+        private final StringBuilder partial = new StringBuilder();
+
+        ReplyCollector(BlockingQueue<String> replies) {
+            this.replies = replies;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                replies.add(partial.toString());
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+}
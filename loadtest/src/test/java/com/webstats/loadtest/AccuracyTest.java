@@ -0,0 +1,140 @@
+package com.webstats.loadtest;
+
+import com.webstats.WebStatsApplication;
+import com.webstats.model.SpeedTestResult;
+import com.webstats.repository.OrganizationRepository;
+import com.webstats.repository.SpeedTestResultRepository;
+import com.webstats.repository.SpeedTestSessionRepository;
+import com.webstats.repository.UserRepository;
+import com.webstats.service.DownloadTestService;
+import com.webstats.service.LatencyMeasurementService;
+import com.webstats.service.UploadTestService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * AccuracyCheck as a build step: the download, upload and latency engines measured through an
+ * EmulatedLink must land within the tolerance of the link's rate and RTT. No MongoDB is needed:
+ * the repositories are mocked, and the startup tasks that use MongoTemplate directly fail fast
+ * against a closed port and are skipped. Tagged "accuracy" and excluded by default; run it with
+ *
+ *   mvn -f loadtest/pom.xml test -Paccuracy
+ */
+@Tag("accuracy")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@SpringBootTest(classes = WebStatsApplication.class, webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+class AccuracyTest {
+
+    private static final double TOLERANCE_PERCENT = 5;
+    private static final double LATENCY_TOLERANCE_MILLIS = 5;
+    private static final double RTT_MILLIS = 20;
+    private static final int DURATION_SECONDS = 5;
+    private static final int LATENCY_PROBES = 5;
+
+    private static EmulatedLink link;
+    private static int linkPort;
+    private static int serverPort;
+
+    @MockBean
+    private SpeedTestResultRepository speedTestResultRepository;
+    @MockBean
+    private SpeedTestSessionRepository speedTestSessionRepository;
+    @MockBean
+    private OrganizationRepository organizationRepository;
+    @MockBean
+    private UserRepository userRepository;
+
+    @Autowired
+    private DownloadTestService downloadTestService;
+    @Autowired
+    private UploadTestService uploadTestService;
+    @Autowired
+    private LatencyMeasurementService latencyMeasurementService;
+
+    // The link has to exist before the context, which points the engines at it
+    @DynamicPropertySource
+    static void linkProperties(DynamicPropertyRegistry registry) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            serverPort = socket.getLocalPort();
+        }
+        link = new EmulatedLink("localhost", serverPort,
+                new EmulatedLink.Conditions(10, RTT_MILLIS, 0, 0), 1L);
+        linkPort = link.start();
+        registry.add("server.port", () -> serverPort);
+        registry.add("webstats.speedtest.engine.base-url", () -> "http://localhost:" + linkPort);
+        registry.add("spring.data.mongodb.uri", () -> "mongodb://localhost:1/webstats?serverSelectionTimeoutMS=200");
+        registry.add("webstats.retention.enabled", () -> false);
+    }
+
+    @AfterAll
+    static void closeLink() throws IOException {
+        if (link != null) {
+            link.close();
+        }
+    }
+
+    @Order(1)
+    @ParameterizedTest(name = "{0} Mbps")
+    @ValueSource(doubles = {10, 100, 1000})
+    void measuresTheLinkRate(double linkMbps) throws Exception {
+        link.setConditions(new EmulatedLink.Conditions(linkMbps, RTT_MILLIS, 0, 0));
+
+        double download = AccuracyCheck.toMegabits(downloadTestService.performDownloadTest(configuration()));
+        double upload = AccuracyCheck.toMegabits(uploadTestService.performUploadTest(configuration()));
+
+        assertThat(AccuracyCheck.errorPercent(download, linkMbps))
+                .as("download error (%.2f Mbps measured)", download)
+                .isLessThanOrEqualTo(TOLERANCE_PERCENT);
+        assertThat(AccuracyCheck.errorPercent(upload, linkMbps))
+                .as("upload error (%.2f Mbps measured)", upload)
+                .isLessThanOrEqualTo(TOLERANCE_PERCENT);
+    }
+
+    // After the transfers, as in AccuracyCheck: a cold server answers its first requests slowly
+    @Order(2)
+    @Test
+    void measuresTheRoundTripTime() throws Exception {
+        link.setConditions(new EmulatedLink.Conditions(10, RTT_MILLIS, 0, 0));
+
+        // The first byte also waits for the server's response, measured here without the link
+        double direct = fastestFirstByteMs(serverPort);
+        double viaLink = fastestFirstByteMs(linkPort);
+
+        assertThat(Math.abs(viaLink - direct - RTT_MILLIS))
+                .as("first byte error (%.2f ms through the link, %.2f ms direct)", viaLink, direct)
+                .isLessThanOrEqualTo(Math.max(LATENCY_TOLERANCE_MILLIS, RTT_MILLIS * TOLERANCE_PERCENT / 100));
+    }
+
+    private double fastestFirstByteMs(int port) throws Exception {
+        double fastest = Double.MAX_VALUE;
+        for (int i = 0; i < LATENCY_PROBES; i++) {
+            Double firstByte = latencyMeasurementService.measureLatency("localhost", port).get().getFirstByteMs();
+            assertThat(firstByte).as("first byte time on port %d", port).isNotNull();
+            fastest = Math.min(fastest, firstByte);
+        }
+        return fastest;
+    }
+
+    private static SpeedTestResult.TestConfiguration configuration() {
+        SpeedTestResult.TestConfiguration config = new SpeedTestResult.TestConfiguration();
+        config.setNumberOfRuns(1);
+        config.setTestDurationSeconds(DURATION_SECONDS);
+        return config;
+    }
+}
@@ -0,0 +1,105 @@
+package com.webstats.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * TtlCache for lookups that may find nothing, with single-flight loading: concurrent misses
+ * for the same key share one load instead of each going to the database. Absent results are
+ * cached too, so repeated lookups of an unknown id stay cheap until it is invalidated.
+ *
+ * Publishes webstats.cache.requests (result=hit|miss|coalesced), webstats.cache.loads and
+ * webstats.cache.size, tagged with the cache name.
+ */
+public class LoadingTtlCache<K, V> {
+
+    private final TtlCache<K, Optional<V>> cache;
+    private final ConcurrentHashMap<K, CompletableFuture<Optional<V>>> loading = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Timer loads;
+
+    public LoadingTtlCache(String name, int maxEntries, Duration ttl, MeterRegistry meterRegistry) {
+        this.cache = new TtlCache<>(maxEntries, ttl);
+        this.hits = requestCounter(meterRegistry, name, "hit");
+        this.misses = requestCounter(meterRegistry, name, "miss");
+        this.coalesced = requestCounter(meterRegistry, name, "coalesced");
+        this.loads = Timer.builder("webstats.cache.loads")
+                .description("Time spent loading cache misses")
+                .tag("cache", name)
+                .register(meterRegistry);
+        meterRegistry.gauge("webstats.cache.size", Tags.of("cache", name), cache, TtlCache::size);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String name, String result) {
+        return Counter.builder("webstats.cache.requests")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    public Optional<V> get(K key, Function<K, Optional<V>> loader) {
+        Optional<V> cached = cache.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<Optional<V>> load = new CompletableFuture<>();
+        CompletableFuture<Optional<V>> inFlight = loading.putIfAbsent(key, load);
+        if (inFlight != null) {
+            coalesced.increment();
+            return await(inFlight);
+        }
+
+        misses.increment();
+        try {
+            Optional<V> value = loads.record(() -> loader.apply(key));
+            // Only cache the value if no invalidation happened while it was loading
+            loading.computeIfPresent(key, (k, current) -> {
+                if (current == load) {
+                    cache.put(key, value);
+                }
+                return current;
+            });
+            load.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    public void invalidate(K key) {
+        cache.invalidate(key);
+        loading.remove(key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        loading.clear();
+    }
+
+    private static <V> Optional<V> await(CompletableFuture<Optional<V>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.webstats.cache;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Small bounded in-process cache with a fixed time-to-live per entry.
+ * Expired entries are dropped on read; when the cache is full, expired entries are purged
+ * first and then the entries closest to expiry are evicted, down to 90% of the capacity so
+ * the sort is not repeated on every insert.
+ */
+public class TtlCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    public TtlCache(int maxEntries, Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public V get(K key, Function<K, V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private synchronized void evict() {
+        long now = System.nanoTime();
+        entries.entrySet().removeIf(e -> e.getValue().isExpired(now));
+
+        int overflow = entries.size() - (maxEntries - maxEntries / 10);
+        if (overflow > 0) {
+            entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().expiresAtNanos))
+                    .limit(overflow)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(entries::remove);
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAtNanos;
+
+        Entry(V value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.webstats.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
@@ -9,15 +11,17 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 @Configuration
 public class DebugConfig implements ApplicationListener<ApplicationReadyEvent> {
 
+    private static final Logger log = LoggerFactory.getLogger(DebugConfig.class);
+
     @Autowired
     private RequestMappingHandlerMapping requestMappingHandlerMapping;
 
     @Override
     public void onApplicationEvent(ApplicationReadyEvent event) {
-        System.out.println("\n=== REGISTERED REQUEST MAPPINGS ===");
-        requestMappingHandlerMapping.getHandlerMethods().forEach((mapping, method) -> {
-            System.out.println(mapping + " -> " + method);
-        });
-        System.out.println("=== END REQUEST MAPPINGS ===\n");
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        requestMappingHandlerMapping.getHandlerMethods().forEach((mapping, method) ->
+                log.debug("Request mapping {} -> {}", mapping, method));
     }
 }
\ No newline at end of file
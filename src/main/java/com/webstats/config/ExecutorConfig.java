@@ -0,0 +1,147 @@
+package com.webstats.config;
+
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named executors for the speed test work, replacing the common ForkJoin pool and the
+ * per-service cached thread pools:
+ *
+ * - orchestration: one task per running test, sequencing its phases
+ * - transfer: download/upload runs against the test endpoints
+ * - probe: latency probes
+ * - persistence: request-side MongoDB work when a test is started
+ *
+ * All of this work blocks (sockets, MongoDB, waiting on other phases), so workers are virtual
+ * threads. Each executor still has a fixed concurrency limit and a bounded queue, and rejects
+ * work beyond that instead of growing without limit. Executors are Spring-managed: on shutdown
+ * they stop accepting work and wait for running tasks up to a timeout.
+ *
+ * Metrics: Micrometer's executor.* meters (active, queued, pool size, completed) plus
+ * webstats.executor.task.wait / .duration timers and webstats.executor.rejected, all tagged
+ * with the executor name.
+ *
+ * Tasks run with the submitting thread's MDC and current observation, so request and session
+ * ids and trace spans follow the work.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    public static final String ORCHESTRATION = "orchestrationExecutor";
+    public static final String TRANSFER = "transferExecutor";
+    public static final String PROBE = "probeExecutor";
+    public static final String PERSISTENCE = "persistenceExecutor";
+
+    private static final ContextSnapshotFactory CONTEXT_SNAPSHOTS = ContextSnapshotFactory.builder().build();
+
+    @Value("${webstats.executors.await-termination-seconds:30}")
+    private int awaitTerminationSeconds;
+
+    @Bean(ORCHESTRATION)
+    public ThreadPoolTaskExecutor orchestrationExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${webstats.executors.orchestration.max-threads:200}") int maxThreads,
+            @Value("${webstats.executors.orchestration.queue-capacity:100}") int queueCapacity) {
+        return boundedVirtualExecutor("orchestration", maxThreads, queueCapacity, meterRegistry);
+    }
+
+    @Bean(TRANSFER)
+    public ThreadPoolTaskExecutor transferExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${webstats.executors.transfer.max-threads:200}") int maxThreads,
+            @Value("${webstats.executors.transfer.queue-capacity:200}") int queueCapacity) {
+        return boundedVirtualExecutor("transfer", maxThreads, queueCapacity, meterRegistry);
+    }
+
+    @Bean(PROBE)
+    public ThreadPoolTaskExecutor probeExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${webstats.executors.probe.max-threads:100}") int maxThreads,
+            @Value("${webstats.executors.probe.queue-capacity:200}") int queueCapacity) {
+        return boundedVirtualExecutor("probe", maxThreads, queueCapacity, meterRegistry);
+    }
+
+    @Bean(PERSISTENCE)
+    public ThreadPoolTaskExecutor persistenceExecutor(
+            MeterRegistry meterRegistry,
+            @Value("${webstats.executors.persistence.max-threads:64}") int maxThreads,
+            @Value("${webstats.executors.persistence.queue-capacity:500}") int queueCapacity) {
+        return boundedVirtualExecutor("persistence", maxThreads, queueCapacity, meterRegistry);
+    }
+
+    private ThreadPoolTaskExecutor boundedVirtualExecutor(String name, int maxThreads, int queueCapacity,
+                                                          MeterRegistry meterRegistry) {
+        Tags tags = Tags.of("name", name);
+        Timer waitTimer = Timer.builder("webstats.executor.task.wait")
+                .description("Time tasks spent queued before starting")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Timer durationTimer = Timer.builder("webstats.executor.task.duration")
+                .description("Task execution time")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Counter rejectedCounter = Counter.builder("webstats.executor.rejected")
+                .description("Tasks rejected because the executor and its queue were full")
+                .tags(tags)
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadFactory(Thread.ofVirtual().name(name + "-", 0).factory());
+        executor.setCorePoolSize(maxThreads);
+        executor.setMaxPoolSize(maxThreads);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(awaitTerminationSeconds);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("Executor " + name + " is saturated");
+        });
+        executor.setTaskDecorator(task -> {
+            long submittedAt = System.nanoTime();
+            Map<String, String> mdc = MDC.getCopyOfContextMap();
+            // Current observation, so spans started by the task are children of the submitter's
+            Runnable contextual = CONTEXT_SNAPSHOTS.captureAll().wrap(task);
+            return () -> {
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                Map<String, String> previous = MDC.getCopyOfContextMap();
+                setMdc(mdc);
+                try {
+                    contextual.run();
+                } finally {
+                    setMdc(previous);
+                    durationTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            };
+        });
+        executor.initialize();
+
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), name, Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    private static void setMdc(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.webstats.config;
+
+import com.webstats.model.SpeedTestMeasurement;
+import com.webstats.model.SpeedTestRollup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.data.repository.support.Repositories;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the time-series collections and the MongoDB indexes the repositories rely on, and
+ * checks at startup that every repository query has an index whose leading keys match its
+ * equality / sort fields.
+ *
+ * Field names are the stored (snake_case) names. Runs after all singletons are created but
+ * before the web server starts, so a failing check stops the application before it takes traffic.
+ */
+@Configuration
+public class MongoIndexConfig implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private static final String RESULTS = "speed_test_results";
+    private static final String SESSIONS = "speed_test_sessions";
+    private static final String USERS = "users";
+    private static final String ORGANIZATIONS = "organizations";
+
+    private static final List<CollectionIndex> INDEXES = List.of(
+            // Results: per-user history (keyset on test_timestamp, _id), time series and date ranges
+            new CollectionIndex(RESULTS, new Index()
+                    .on("user_id", Sort.Direction.ASC)
+                    .on("test_timestamp", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("user_timestamp_id")),
+            new CollectionIndex(RESULTS, new Index()
+                    .on("organization_id", Sort.Direction.ASC)
+                    .on("test_timestamp", Sort.Direction.DESC)
+                    .named("organization_timestamp")),
+            // At most one result per session; results without a session id are not constrained
+            new CollectionIndex(RESULTS, new Index()
+                    .on("session_id", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("session_id").type(JsonSchemaObject.Type.STRING)))
+                    .named("session_id_unique")),
+            new CollectionIndex(RESULTS, new Index()
+                    .on("test_timestamp", Sort.Direction.DESC)
+                    .named("test_timestamp")),
+            // Retention sweep; only results still carrying packed samples have the field
+            new CollectionIndex(RESULTS, new Index()
+                    .on("raw_expires_at", Sort.Direction.ASC)
+                    .sparse()
+                    .named("raw_expires_at")),
+
+            // Sessions: active-session lookups per user / organization, latest session, stale sweep
+            new CollectionIndex(SESSIONS, new Index()
+                    .on("user_id", Sort.Direction.ASC)
+                    .on("status", Sort.Direction.ASC)
+                    .named("user_status")),
+            new CollectionIndex(SESSIONS, new Index()
+                    .on("user_id", Sort.Direction.ASC)
+                    .on("session_start", Sort.Direction.DESC)
+                    .named("user_session_start")),
+            new CollectionIndex(SESSIONS, new Index()
+                    .on("organization_id", Sort.Direction.ASC)
+                    .on("status", Sort.Direction.ASC)
+                    .named("organization_status")),
+            new CollectionIndex(SESSIONS, new Index()
+                    .on("status", Sort.Direction.ASC)
+                    .on("session_start", Sort.Direction.ASC)
+                    .named("status_session_start")),
+            // Daily admission counts (sessions started today, grouped by organization)
+            new CollectionIndex(SESSIONS, new Index()
+                    .on("session_start", Sort.Direction.ASC)
+                    .named("session_start")),
+            // Per-organization retention deletes
+            new CollectionIndex(SESSIONS, new Index()
+                    .on("organization_id", Sort.Direction.ASC)
+                    .on("session_start", Sort.Direction.ASC)
+                    .named("organization_session_start")),
+
+            new CollectionIndex(USERS, new Index().on("username", Sort.Direction.ASC).named("username")),
+            new CollectionIndex(USERS, new Index().on("email", Sort.Direction.ASC).named("email")),
+            new CollectionIndex(USERS, new Index().on("is_active", Sort.Direction.ASC).named("is_active")),
+            new CollectionIndex(USERS, new Index()
+                    .on("organization_id", Sort.Direction.ASC)
+                    .on("is_active", Sort.Direction.ASC)
+                    .named("organization_active")),
+
+            new CollectionIndex(ORGANIZATIONS, new Index().on("name", Sort.Direction.ASC).named("name")),
+            new CollectionIndex(ORGANIZATIONS, new Index().on("contact_email", Sort.Direction.ASC).named("contact_email")),
+            new CollectionIndex(ORGANIZATIONS, new Index().on("users", Sort.Direction.ASC).named("users")),
+            new CollectionIndex(ORGANIZATIONS, new Index().on("subscription_plan", Sort.Direction.ASC).named("subscription_plan")),
+            new CollectionIndex(ORGANIZATIONS, new Index()
+                    .on("is_active", Sort.Direction.ASC)
+                    .on("subscription_plan", Sort.Direction.ASC)
+                    .named("active_subscription_plan")),
+
+            // Raw samples are always read per result, in time order
+            new CollectionIndex(SpeedTestMeasurement.COLLECTION, new Index()
+                    .on("meta.result_id", Sort.Direction.ASC)
+                    .on("timestamp", Sort.Direction.ASC)
+                    .named("result_timestamp")),
+
+            // Rollups are read by RollupService through MongoTemplate, so they are not part of the query check
+            new CollectionIndex(SpeedTestRollup.COLLECTION, new Index()
+                    .on("scope", Sort.Direction.ASC)
+                    .on("scope_id", Sort.Direction.ASC)
+                    .on("granularity", Sort.Direction.ASC)
+                    .on("bucket_start", Sort.Direction.ASC)
+                    .named("scope_granularity_bucket"))
+    );
+
+    // Repository method -> keys a supporting index must start with (equality fields, then sort / range)
+    private static final Map<String, List<String>> QUERY_SHAPES = Map.ofEntries(
+            Map.entry("SpeedTestResultRepository.findByUserId", List.of("user_id")),
+            Map.entry("SpeedTestResultRepository.findByOrganizationId", List.of("organization_id")),
+            Map.entry("SpeedTestResultRepository.findByUserIdOrderByTestTimestampDesc", List.of("user_id", "test_timestamp")),
+            Map.entry("SpeedTestResultRepository.findByOrganizationIdOrderByTestTimestampDesc", List.of("organization_id", "test_timestamp")),
+            Map.entry("SpeedTestResultRepository.findByTestTimestampBetween", List.of("test_timestamp")),
+            Map.entry("SpeedTestResultRepository.findByUserIdAndTestTimestampBetween", List.of("user_id", "test_timestamp")),
+            Map.entry("SpeedTestResultRepository.findByOrganizationIdAndTestTimestampBetween", List.of("organization_id", "test_timestamp")),
+            Map.entry("SpeedTestResultRepository.findBySessionId", List.of("session_id")),
+            Map.entry("SpeedTestResultRepository.findFirstBySessionId", List.of("session_id")),
+            Map.entry("SpeedTestResultRepository.getAverageMetricsByUserAndDateRange", List.of("user_id", "test_timestamp")),
+            Map.entry("SpeedTestResultRepository.getDailyStatsByOrganizationAndDateRange", List.of("organization_id", "test_timestamp")),
+            Map.entry("SpeedTestResultRepository.findTop10ByUserIdOrderByTestTimestampDesc", List.of("user_id", "test_timestamp")),
+            Map.entry("SpeedTestResultRepository.findHistoryPage", List.of("user_id", "test_timestamp", "_id")),
+            Map.entry("SpeedTestResultRepository.findTimeSeriesPoints", List.of("user_id", "test_timestamp")),
+
+            Map.entry("SpeedTestSessionRepository.findByUserId", List.of("user_id")),
+            Map.entry("SpeedTestSessionRepository.findByOrganizationId", List.of("organization_id")),
+            Map.entry("SpeedTestSessionRepository.findByStatus", List.of("status")),
+            Map.entry("SpeedTestSessionRepository.findByUserIdAndStatus", List.of("user_id", "status")),
+            Map.entry("SpeedTestSessionRepository.findActiveSessionsByUserId", List.of("user_id", "status")),
+            Map.entry("SpeedTestSessionRepository.findActiveSessionsByOrganizationId", List.of("organization_id", "status")),
+            Map.entry("SpeedTestSessionRepository.findStaleActiveSessions", List.of("status", "session_start")),
+            Map.entry("SpeedTestSessionRepository.findLatestByUserId", List.of("user_id", "session_start")),
+            Map.entry("SpeedTestSessionRepository.findCompletedSessionsBetween", List.of("status")),
+
+            Map.entry("UserRepository.findByUsername", List.of("username")),
+            Map.entry("UserRepository.findByEmail", List.of("email")),
+            Map.entry("UserRepository.findByOrganizationId", List.of("organization_id")),
+            Map.entry("UserRepository.findByIsActiveTrue", List.of("is_active")),
+            Map.entry("UserRepository.findByOrganizationIdAndIsActiveTrue", List.of("organization_id", "is_active")),
+            Map.entry("UserRepository.findActiveUsersByOrganizationAndRole", List.of("organization_id", "is_active")),
+
+            Map.entry("OrganizationRepository.findByName", List.of("name")),
+            Map.entry("OrganizationRepository.findByContactEmail", List.of("contact_email")),
+            Map.entry("OrganizationRepository.findByIsActiveTrue", List.of("is_active")),
+            Map.entry("OrganizationRepository.findBySubscriptionPlan", List.of("subscription_plan")),
+            Map.entry("OrganizationRepository.findByUserId", List.of("users")),
+            Map.entry("OrganizationRepository.findActiveBySubscriptionPlans", List.of("is_active", "subscription_plan"))
+    );
+
+    // Ad-hoc lookups nothing calls today; an index each would only add write cost to every insert
+    private static final Set<String> UNINDEXED_QUERIES = Set.of(
+            "SpeedTestResultRepository.findByCountry",
+            "SpeedTestResultRepository.findByCity",
+            "SpeedTestResultRepository.findByServerLocation",
+            "SpeedTestSessionRepository.findBySessionStartBetween",
+            "UserRepository.findByRole",
+            "UserRepository.findByLastLoginAfter"
+    );
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Value("${webstats.mongo.indexes.fail-on-missing:false}")
+    private boolean failOnMissing;
+
+    // Time-series collections must exist before the first insert, or MongoDB creates a plain collection
+    private static final List<Class<?>> TIME_SERIES_TYPES = List.of(SpeedTestMeasurement.class);
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        ensureTimeSeriesCollections();
+        ensureIndexes();
+        verifyQueryIndexes();
+    }
+
+    private void ensureTimeSeriesCollections() {
+        for (Class<?> type : TIME_SERIES_TYPES) {
+            try {
+                if (!mongoTemplate.collectionExists(type)) {
+                    mongoTemplate.createCollection(type);
+                }
+            } catch (Exception e) {
+                log.warn("Could not create time-series collection for {}: {}", type.getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+    private void ensureIndexes() {
+        for (CollectionIndex collectionIndex : INDEXES) {
+            try {
+                mongoTemplate.indexOps(collectionIndex.collection).ensureIndex(collectionIndex.index);
+            } catch (Exception e) {
+                // Usually an equivalent index under another name; the coverage check below still applies
+                log.warn("Could not create index {} on {}: {}", collectionIndex.index.getIndexOptions().get("name"),
+                        collectionIndex.collection, e.getMessage());
+            }
+        }
+    }
+
+    private void verifyQueryIndexes() {
+        Map<String, List<List<String>>> indexKeysByCollection = new HashMap<>();
+        List<String> problems = new ArrayList<>();
+
+        Repositories repositories = new Repositories(applicationContext);
+        for (Class<?> domainType : repositories) {
+            Class<?> repositoryInterface = repositories.getRequiredRepositoryInformation(domainType).getRepositoryInterface();
+            String collection = mongoTemplate.getCollectionName(domainType);
+
+            for (Method method : repositoryInterface.getMethods()) {
+                if (!method.getDeclaringClass().getPackageName().startsWith("com.webstats")) {
+                    continue; // CRUD methods inherited from Spring Data go through _id
+                }
+
+                String query = repositoryInterface.getSimpleName() + "." + method.getName();
+                if (UNINDEXED_QUERIES.contains(query)) {
+                    continue;
+                }
+
+                List<String> requiredKeys = QUERY_SHAPES.get(query);
+                if (requiredKeys == null) {
+                    problems.add(query + " has no declared index shape");
+                    continue;
+                }
+
+                List<List<String>> indexKeys = indexKeysByCollection.computeIfAbsent(collection, this::loadIndexKeys);
+                if (indexKeys.stream().noneMatch(keys -> startsWith(keys, requiredKeys))) {
+                    problems.add(query + " has no index on " + collection + " starting with " + requiredKeys);
+                }
+            }
+        }
+
+        if (problems.isEmpty()) {
+            log.info("MongoDB index check passed for all repository queries");
+            return;
+        }
+
+        String message = "Repository queries without a supporting index:\n  " + String.join("\n  ", problems);
+        if (failOnMissing) {
+            throw new IllegalStateException(message);
+        }
+        log.warn(message);
+    }
+
+    private List<List<String>> loadIndexKeys(String collection) {
+        List<List<String>> result = new ArrayList<>();
+        for (IndexInfo indexInfo : mongoTemplate.indexOps(collection).getIndexInfo()) {
+            result.add(indexInfo.getIndexFields().stream().map(IndexField::getKey).toList());
+        }
+        return result;
+    }
+
+    private static boolean startsWith(List<String> keys, List<String> prefix) {
+        return keys.size() >= prefix.size() && keys.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private static class CollectionIndex {
+        private final String collection;
+        private final Index index;
+
+        CollectionIndex(String collection, Index index) {
+            this.collection = collection;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.webstats.config;
+
+import com.webstats.metrics.MongoCommandMetricsListener;
+import com.webstats.metrics.RepositoryMetricsInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+/**
+ * Wires the MongoDB instrumentation: every repository proxy gets an interceptor that times and
+ * traces each call and tags the commands it issues, and the driver reports each command to a
+ * CommandListener. Everything is published through Micrometer and visible at /actuator/metrics.
+ */
+@Configuration
+public class MongoMetricsConfig {
+
+    // Static so it is registered before the repository factory beans are created
+    @Bean
+    public static BeanPostProcessor repositoryMetricsPostProcessor(ObjectProvider<ObservationRegistry> observationRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory ->
+                            factory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                                    proxyFactory.addAdvice(new RepositoryMetricsInterceptor(
+                                            observationRegistry.getObject(), repositoryInformation.getRepositoryInterface()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public MongoCommandMetricsListener mongoCommandMetricsListener(
+            MeterRegistry meterRegistry,
+            ObjectProvider<MongoTemplate> mongoTemplate,
+            @Value("${webstats.mongo.metrics.explain-sample-rate:0.01}") double explainSampleRate) {
+        return new MongoCommandMetricsListener(meterRegistry, mongoTemplate, explainSampleRate);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoCommandMetricsCustomizer(MongoCommandMetricsListener listener) {
+        return builder -> builder.addCommandListener(listener);
+    }
+}
@@ -0,0 +1,23 @@
+package com.webstats.config;
+
+import com.webstats.tracing.InMemorySpanRecorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Span export. Spring Boot builds the OpenTelemetry tracer from the micrometer-tracing bridge
+ * and adds an OTLP exporter once management.otlp.tracing.endpoint is set (docker compose
+ * --profile tracing starts a local Jaeger that accepts it). The in-memory recorder is opt-in.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "webstats.tracing.in-memory.enabled", havingValue = "true")
+    public InMemorySpanRecorder inMemorySpanRecorder(
+            @Value("${webstats.tracing.in-memory.max-spans:10000}") int maxSpans) {
+        return new InMemorySpanRecorder(maxSpans);
+    }
+}
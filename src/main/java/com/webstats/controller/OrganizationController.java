@@ -3,6 +3,7 @@ package com.webstats.controller;
 import com.webstats.model.Organization;
 import com.webstats.repository.OrganizationRepository;
 import jakarta.validation.Valid;
+import com.webstats.service.AccountCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -18,10 +19,14 @@ public class OrganizationController {
     @Autowired
     private OrganizationRepository organizationRepository;
     
+    @Autowired
+    private AccountCacheService accountCacheService;
+    
     @PostMapping
     public ResponseEntity<Organization> createOrganization(@Valid @RequestBody Organization organization) {
         try {
             Organization savedOrg = organizationRepository.save(organization);
+            accountCacheService.invalidateOrganization(savedOrg.getId());
             return ResponseEntity.ok(savedOrg);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -53,6 +58,7 @@ public class OrganizationController {
         
         organization.setId(id);
         Organization updatedOrg = organizationRepository.save(organization);
+        accountCacheService.invalidateOrganization(id);
         return ResponseEntity.ok(updatedOrg);
     }
     
@@ -66,6 +72,7 @@ public class OrganizationController {
         Organization organization = org.get();
         organization.setIsActive(false);
         organizationRepository.save(organization);
+        accountCacheService.invalidateOrganization(id);
         
         return ResponseEntity.ok().build();
     }
@@ -3,74 +3,145 @@ package com.webstats.controller;
 import com.webstats.dto.SpeedTestRequestDto;
 import com.webstats.dto.SpeedTestResponseDto;
 import com.webstats.dto.SpeedTestHistoryDto;
+import com.webstats.logging.LogSampler;
+import com.webstats.metrics.SpeedTestMetrics;
+import com.webstats.model.SpeedTestResult;
+import com.webstats.model.SpeedTestRollup;
+import com.webstats.service.BandwidthBudgetService;
+import com.webstats.service.ResultIngestionService;
+import com.webstats.service.ResultWriteBehindService;
 import com.webstats.service.SpeedTestService;
+import com.webstats.service.TestAdmissionService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/speedtest")
 @CrossOrigin(origins = "*")
 public class SpeedTestController {
     
+    private static final Logger log = LoggerFactory.getLogger(SpeedTestController.class);
+    private static final LogSampler PREFLIGHT_LOG_SAMPLER = LogSampler.rateLimited(1);
+    private static final LogSampler RESULTS_LOG_SAMPLER = LogSampler.rateLimited(20);
+    private static final LogSampler FAILURE_LOG_SAMPLER = LogSampler.rateLimited(10);
+    
+    private final LogSampler startLogSampler;
+
+    public SpeedTestController(@Value("${webstats.logging.start-sample-rate:0.01}") double startLogSampleRate) {
+        this.startLogSampler = new LogSampler(startLogSampleRate, 20);
+    }
+    
     @Autowired
     private SpeedTestService speedTestService;
+    
+    @Autowired
+    private ResultWriteBehindService resultWriteBehindService;
+    
+    @Autowired
+    private ResultIngestionService resultIngestionService;
 
     @Autowired
     private com.webstats.service.ResultValidationService validationService;
 
     @Autowired
-    private com.webstats.repository.SpeedTestResultRepository resultRepository;
-    
+    private BandwidthBudgetService bandwidthBudgetService;
+
+    @Autowired
+    private SpeedTestMetrics speedTestMetrics;
+
+    // Same byte pattern (i % 256) for every chunk of a download test file
+    private static final byte[] DOWNLOAD_CHUNK = new byte[64 * 1024];
+
+    static {
+        for (int i = 0; i < DOWNLOAD_CHUNK.length; i++) {
+            DOWNLOAD_CHUNK[i] = (byte) (i % 256);
+        }
+    }
+
     @PostMapping("/start")
-    public ResponseEntity<?> startSpeedTest(
+    public CompletableFuture<ResponseEntity<?>> startSpeedTest(
             @RequestBody(required = false) SpeedTestRequestDto request,
             @RequestParam(required = false) String userId,
             HttpServletRequest httpRequest) {
 
         // Use anonymous if no userId provided
-        if (userId == null || userId.isEmpty()) {
-            userId = "anonymous";
+        String effectiveUserId = userId == null || userId.isEmpty() ? "anonymous" : userId;
+
+        if (request == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("Request body is required"));
         }
 
-        System.out.println("\n=== POST /api/speedtest/start ===");
-        System.out.println("Method: " + httpRequest.getMethod());
-        System.out.println("Content-Type: " + httpRequest.getContentType());
-        System.out.println("UserId: " + userId + (userId.equals("anonymous") ? " (anonymous user)" : ""));
-        System.out.println("Request body: " + (request != null ? request.toString() : "null"));
-        System.out.println("Headers:");
-        httpRequest.getHeaderNames().asIterator().forEachRemaining(header ->
-            System.out.println("  " + header + ": " + httpRequest.getHeader(header))
-        );
+        // Everything needed from the servlet request is read here; the rest runs off the Tomcat thread
+        SpeedTestResult.ClientInfo clientInfo = new SpeedTestResult.ClientInfo();
+        clientInfo.setIpAddress(getClientIpAddress(httpRequest));
+        clientInfo.setUserAgent(httpRequest.getHeader("User-Agent"));
+
+        if (log.isDebugEnabled() && startLogSampler.sample()) {
+            log.debug("speedtest.start userId={} testType={} runs={} durationSeconds={} contentType={} userAgent=\"{}\" suppressed={}",
+                    effectiveUserId, request.getTestType(), request.getNumberOfRuns(),
+                    request.getTestDurationSeconds(), httpRequest.getContentType(), clientInfo.getUserAgent(),
+                    startLogSampler.drainSuppressed());
+        }
 
+        CompletableFuture<SpeedTestResponseDto> started;
         try {
-            if (request == null) {
-                return ResponseEntity.badRequest().body("Request body is required");
-            }
+            started = speedTestService.initiateSpeedTest(request, effectiveUserId, clientInfo);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(busy());
+        }
 
-            // Actually call the service to initiate speed test
-            SpeedTestResponseDto response = speedTestService.initiateSpeedTest(request, userId, httpRequest).get();
-            return ResponseEntity.ok(response);
+        return started.handle((response, error) -> {
+            if (error == null) {
+                return ResponseEntity.ok(response);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof TestAdmissionService.AdmissionRejectedException rejected) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(rejected.getRetryAfterSeconds()))
+                        .body(Map.of("error", rejected.getMessage(), "reason", rejected.getReason()));
+            }
+            if (cause instanceof BandwidthBudgetService.BandwidthExhaustedException exhausted) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(exhausted.getRetryAfterSeconds()))
+                        .body(Map.of("error", exhausted.getMessage()));
+            }
+            if (FAILURE_LOG_SAMPLER.sample()) {
+                log.warn("speedtest.start.failed userId={} error=\"{}\" suppressed={}",
+                        effectiveUserId, cause.getMessage(), FAILURE_LOG_SAMPLER.drainSuppressed(), cause);
+            }
+            return ResponseEntity.badRequest().body("Error: " + cause.getMessage());
+        });
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error in startSpeedTest: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.badRequest().body("Error: " + e.getMessage());
-        }
+    private ResponseEntity<?> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", "Server is busy, please retry"));
     }
     
     @RequestMapping(value = "/start", method = RequestMethod.OPTIONS)
     public ResponseEntity<?> handleOptions() {
-        System.out.println("Received OPTIONS /api/speedtest/start");
+        if (log.isDebugEnabled() && PREFLIGHT_LOG_SAMPLER.sample()) {
+            log.debug("speedtest.start.preflight suppressed={}", PREFLIGHT_LOG_SAMPLER.drainSuppressed());
+        }
         return ResponseEntity.ok().build();
     }
     
@@ -87,13 +158,15 @@ public class SpeedTestController {
     @GetMapping("/history")
     public ResponseEntity<List<SpeedTestHistoryDto>> getUserHistory(
             @RequestParam(required = false) String userId,
-            @RequestParam(defaultValue = "10") int limit) {
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeTimestamp,
+            @RequestParam(required = false) String beforeId) {
         
         try {
             if (userId == null || userId.isEmpty()) {
                 userId = "anonymous";
             }
-            List<SpeedTestHistoryDto> history = speedTestService.getUserHistory(userId, limit);
+            List<SpeedTestHistoryDto> history = speedTestService.getUserHistory(userId, limit, beforeTimestamp, beforeId);
             return ResponseEntity.ok(history);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -104,19 +177,32 @@ public class SpeedTestController {
     public ResponseEntity<SpeedTestHistoryDto.TimeSeriesData> getTimeSeriesData(
             @RequestParam(required = false) String userId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) SpeedTestRollup.Granularity granularity) {
         
         try {
             if (userId == null || userId.isEmpty()) {
                 userId = "anonymous";
             }
-            SpeedTestHistoryDto.TimeSeriesData data = speedTestService.getTimeSeriesData(userId, startDate, endDate);
+            SpeedTestHistoryDto.TimeSeriesData data = speedTestService.getTimeSeriesData(userId, startDate, endDate, granularity);
             return ResponseEntity.ok(data);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
+    @GetMapping("/results/{resultId}/measurements")
+    public ResponseEntity<List<SpeedTestResult.RawMeasurement>> getRawMeasurements(
+            @PathVariable String resultId,
+            @RequestParam(required = false) SpeedTestResult.RawMeasurement.MeasurementType type) {
+        
+        try {
+            return ResponseEntity.ok(speedTestService.getRawMeasurements(resultId, type));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @GetMapping("/health")
     public ResponseEntity<String> healthCheck() {
         return ResponseEntity.ok("Speed Test Service is running");
@@ -133,20 +219,16 @@ public class SpeedTestController {
             long startTime = System.currentTimeMillis();
             long totalBytesReceived = 0;
 
-            // Read the input stream in chunks to simulate streaming
-            byte[] buffer = new byte[8192];
+            // Read the input stream in chunks so every chunk is counted against the bandwidth budget
+            byte[] buffer = new byte[64 * 1024];
             int bytesRead;
 
             // Read from request input stream
             try (var inputStream = request.getInputStream()) {
                 while ((bytesRead = inputStream.read(buffer)) != -1) {
                     totalBytesReceived += bytesRead;
-
-                    // Add small delay to simulate network processing
-                    // This helps prevent instant completion on localhost
-                    if (totalBytesReceived % (1024 * 1024) == 0) { // Every 1MB
-                        Thread.sleep(1);
-                    }
+                    bandwidthBudgetService.recordBytes(bytesRead);
+                    speedTestMetrics.bytesReceived(bytesRead);
                 }
             }
 
@@ -177,14 +259,22 @@ public class SpeedTestController {
             @RequestParam(required = false) String userId,
             HttpServletRequest httpRequest) {
 
-        System.out.println("\n=== POST /api/speedtest/results ===");
-        System.out.println("Received client-side test results for validation and storage");
-
         try {
             if (userId == null || userId.isEmpty()) {
                 userId = "anonymous";
             }
 
+            // Browser retries of a session that was just stored are answered from memory
+            String existingResultId = resultIngestionService.findRecentResultId(clientResults.getSessionId());
+            if (existingResultId != null) {
+                return ResponseEntity.ok(Map.of(
+                        "success", true,
+                        "resultId", existingResultId,
+                        "duplicate", true,
+                        "message", "Results for this session were already saved"
+                ));
+            }
+
             // Convert DTOs to model objects for validation
             com.webstats.model.SpeedTestResult.SpeedMetrics downloadMetrics = null;
             if (clientResults.getDownloadMetrics() != null) {
@@ -195,6 +285,8 @@ public class SpeedTestController {
                 downloadMetrics.setPeakSpeedMbps(clientResults.getDownloadMetrics().getPeakSpeedMbps());
                 downloadMetrics.setAverageSpeedMbps(clientResults.getDownloadMetrics().getAverageSpeedMbps());
                 downloadMetrics.setStabilityScore(clientResults.getDownloadMetrics().getStabilityScore());
+                downloadMetrics.setWarmUpDurationSeconds(clientResults.getDownloadMetrics().getWarmUpDurationSeconds());
+                downloadMetrics.setWarmUpSpeedMbps(clientResults.getDownloadMetrics().getWarmUpSpeedMbps());
             }
 
             com.webstats.model.SpeedTestResult.SpeedMetrics uploadMetrics = null;
@@ -206,6 +298,8 @@ public class SpeedTestController {
                 uploadMetrics.setPeakSpeedMbps(clientResults.getUploadMetrics().getPeakSpeedMbps());
                 uploadMetrics.setAverageSpeedMbps(clientResults.getUploadMetrics().getAverageSpeedMbps());
                 uploadMetrics.setStabilityScore(clientResults.getUploadMetrics().getStabilityScore());
+                uploadMetrics.setWarmUpDurationSeconds(clientResults.getUploadMetrics().getWarmUpDurationSeconds());
+                uploadMetrics.setWarmUpSpeedMbps(clientResults.getUploadMetrics().getWarmUpSpeedMbps());
             }
 
             com.webstats.model.SpeedTestResult.LatencyMetrics latencyMetrics = null;
@@ -225,13 +319,23 @@ public class SpeedTestController {
                     validationService.validateSpeedTestResults(downloadMetrics, uploadMetrics, latencyMetrics);
 
             if (!validation.isValid()) {
-                System.out.println("WARNING: Client results failed validation: " + validation.getWarnings());
+                if (RESULTS_LOG_SAMPLER.sample()) {
+                    log.info("speedtest.results.rejected sessionId={} warnings=\"{}\" suppressed={}",
+                            clientResults.getSessionId(), validation.getWarnings(), RESULTS_LOG_SAMPLER.drainSuppressed());
+                }
                 return ResponseEntity.badRequest().body(Map.of(
                         "error", "Results failed validation",
                         "warnings", validation.getWarnings()
                 ));
             }
 
+            if (downloadMetrics != null) {
+                speedTestMetrics.recordThroughput("download", "client", downloadMetrics.getSpeedMbps());
+            }
+            if (uploadMetrics != null) {
+                speedTestMetrics.recordThroughput("upload", "client", uploadMetrics.getSpeedMbps());
+            }
+
             // Create and save result
             com.webstats.model.SpeedTestResult result = new com.webstats.model.SpeedTestResult();
             result.setUserId(userId);
@@ -254,10 +358,50 @@ public class SpeedTestController {
             serverInfo.setProvider("WebStats.io");
             result.setServerInfo(serverInfo);
 
-            // Save to MongoDB
-            result = resultRepository.save(result);
+            if (resultWriteBehindService.isEnabled()) {
+                // The batch upsert skips a session that already has a stored result, so that has to be
+                // answered now: the id handed out below must be the one that ends up stored
+                String storedResultId = resultIngestionService.findStoredResultId(result.getSessionId());
+                if (storedResultId != null) {
+                    return ResponseEntity.ok(Map.of(
+                            "success", true,
+                            "resultId", storedResultId,
+                            "duplicate", true,
+                            "message", "Results for this session were already saved"
+                    ));
+                }
 
-            System.out.println("Results saved successfully with ID: " + result.getId());
+                // Id is assigned now; the result is written with the next batch
+                String queuedResultId = resultWriteBehindService.submit(result);
+                if (queuedResultId == null) {
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, "1")
+                            .body(Map.of("error", "Result ingestion is busy, please retry"));
+                }
+                return ResponseEntity.accepted().body(Map.of(
+                        "success", true,
+                        "resultId", queuedResultId,
+                        "message", "Results validated and queued for storage",
+                        "warnings", validation.getWarnings()
+                ));
+            }
+
+            // Save to MongoDB, at most once per session
+            ResultIngestionService.IngestResult saved = resultIngestionService.save(result);
+            if (saved.isDuplicate()) {
+                return ResponseEntity.ok(Map.of(
+                        "success", true,
+                        "resultId", saved.getResultId(),
+                        "duplicate", true,
+                        "message", "Results for this session were already saved"
+                ));
+            }
+            speedTestService.recordRollups(result);
+
+            if (log.isDebugEnabled() && RESULTS_LOG_SAMPLER.sample()) {
+                log.debug("speedtest.results.saved sessionId={} resultId={} suppressed={}",
+                        result.getSessionId(), result.getId(), RESULTS_LOG_SAMPLER.drainSuppressed());
+            }
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -267,8 +411,10 @@ public class SpeedTestController {
             ));
 
         } catch (Exception e) {
-            System.err.println("Error saving client results: " + e.getMessage());
-            e.printStackTrace();
+            if (FAILURE_LOG_SAMPLER.sample()) {
+                log.error("speedtest.results.failed sessionId={} error=\"{}\" suppressed={}",
+                        clientResults.getSessionId(), e.getMessage(), FAILURE_LOG_SAMPLER.drainSuppressed(), e);
+            }
             return ResponseEntity.badRequest().body(Map.of(
                     "error", "Failed to save results: " + e.getMessage()
             ));
@@ -306,21 +452,23 @@ public class SpeedTestController {
     }
     
     @GetMapping("/download/{sizeMB}")
-    public ResponseEntity<byte[]> downloadTestFile(@PathVariable int sizeMB) {
+    public ResponseEntity<StreamingResponseBody> downloadTestFile(@PathVariable int sizeMB) {
         try {
             // Limit size to prevent abuse
             if (sizeMB < 1 || sizeMB > 100) {
                 return ResponseEntity.badRequest().build();
             }
             
-            // Generate test data
+            // Stream the test data in chunks so every chunk is counted against the bandwidth budget
             int sizeBytes = sizeMB * 1024 * 1024;
-            byte[] testData = new byte[sizeBytes];
-            
-            // Fill with pseudo-random data (for better compression testing)
-            for (int i = 0; i < sizeBytes; i++) {
-                testData[i] = (byte) (i % 256);
-            }
+            StreamingResponseBody testData = outputStream -> {
+                for (int written = 0; written < sizeBytes; written += DOWNLOAD_CHUNK.length) {
+                    int length = Math.min(DOWNLOAD_CHUNK.length, sizeBytes - written);
+                    outputStream.write(DOWNLOAD_CHUNK, 0, length);
+                    bandwidthBudgetService.recordBytes(length);
+                    speedTestMetrics.bytesServed(length);
+                }
+            };
             
             return ResponseEntity.ok()
                 .header("Content-Type", "application/octet-stream")
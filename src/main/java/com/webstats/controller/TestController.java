@@ -1,5 +1,7 @@
 package com.webstats.controller;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -10,6 +12,8 @@ import java.util.Map;
 @RequestMapping("/api/test")
 @CrossOrigin(origins = "*")
 public class TestController {
+
+    private static final Logger log = LoggerFactory.getLogger(TestController.class);
     
     @GetMapping("/hello")
     public ResponseEntity<String> hello() {
@@ -30,9 +34,7 @@ public class TestController {
             @RequestBody(required = false) Object payload,
             @RequestParam String userId) {
         
-        System.out.println("=== POST /api/test/speedtest-test ===");
-        System.out.println("UserId: " + userId);
-        System.out.println("Payload: " + payload);
+        log.debug("test.speedtest userId={} payload={}", userId, payload);
         
         Map<String, Object> response = new HashMap<>();
         response.put("message", "Speed test simulation working");
@@ -3,6 +3,7 @@ package com.webstats.controller;
 import com.webstats.model.User;
 import com.webstats.repository.UserRepository;
 import jakarta.validation.Valid;
+import com.webstats.service.AccountCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -19,10 +20,14 @@ public class UserController {
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private AccountCacheService accountCacheService;
+    
     @PostMapping
     public ResponseEntity<User> createUser(@Valid @RequestBody User user) {
         try {
             User savedUser = userRepository.save(user);
+            accountCacheService.invalidateUser(savedUser.getId());
             return ResponseEntity.ok(savedUser);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -71,6 +76,7 @@ public class UserController {
         
         user.setId(id);
         User updatedUser = userRepository.save(user);
+        accountCacheService.invalidateUser(id);
         return ResponseEntity.ok(updatedUser);
     }
     
@@ -84,6 +90,7 @@ public class UserController {
         User user = userOpt.get();
         user.setLastLogin(LocalDateTime.now());
         User updatedUser = userRepository.save(user);
+        accountCacheService.invalidateUser(id);
         return ResponseEntity.ok(updatedUser);
     }
     
@@ -97,6 +104,7 @@ public class UserController {
         User user = userOpt.get();
         user.setIsActive(false);
         userRepository.save(user);
+        accountCacheService.invalidateUser(id);
         
         return ResponseEntity.ok().build();
     }
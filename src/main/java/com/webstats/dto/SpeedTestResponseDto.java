@@ -4,6 +4,7 @@ import com.webstats.model.SpeedTestResult;
 import com.webstats.model.SpeedTestSession;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 public class SpeedTestResponseDto {
     
@@ -15,10 +16,16 @@ public class SpeedTestResponseDto {
     private Integer progressPercentage;
     private String errorMessage;
     
+    // Set while the test waits for bandwidth (status QUEUED)
+    private Integer queuePosition;
+    private Long estimatedWaitSeconds;
+    
     private SpeedMetricsDto downloadMetrics;
     private SpeedMetricsDto uploadMetrics;
     private LatencyMetricsDto latencyMetrics;
     private StatisticalSummaryDto statisticalSummary;
+    // Phases that failed; the test still completes with whatever the other phases measured
+    private List<PhaseErrorDto> phaseErrors;
     
     public SpeedTestResponseDto() {}
     
@@ -29,6 +36,9 @@ public class SpeedTestResponseDto {
         private Double peakSpeedMbps;
         private Double averageSpeedMbps;
         private Double stabilityScore;
+        private Double warmUpDurationSeconds;
+        private Double warmUpSpeedMbps;
+        private Boolean partial;
         
         public SpeedMetricsDto() {}
         
@@ -49,6 +59,36 @@ public class SpeedTestResponseDto {
         
         public Double getStabilityScore() { return stabilityScore; }
         public void setStabilityScore(Double stabilityScore) { this.stabilityScore = stabilityScore; }
+        
+        public Double getWarmUpDurationSeconds() { return warmUpDurationSeconds; }
+        public void setWarmUpDurationSeconds(Double warmUpDurationSeconds) { this.warmUpDurationSeconds = warmUpDurationSeconds; }
+        
+        public Double getWarmUpSpeedMbps() { return warmUpSpeedMbps; }
+        public void setWarmUpSpeedMbps(Double warmUpSpeedMbps) { this.warmUpSpeedMbps = warmUpSpeedMbps; }
+        
+        public Boolean getPartial() { return partial; }
+        public void setPartial(Boolean partial) { this.partial = partial; }
+    }
+    
+    public static class PhaseErrorDto {
+        private SpeedTestSession.TestPhase phase;
+        private SpeedTestResult.PhaseError.Code code;
+        private String message;
+        private Boolean partial;
+        
+        public PhaseErrorDto() {}
+        
+        public SpeedTestSession.TestPhase getPhase() { return phase; }
+        public void setPhase(SpeedTestSession.TestPhase phase) { this.phase = phase; }
+        
+        public SpeedTestResult.PhaseError.Code getCode() { return code; }
+        public void setCode(SpeedTestResult.PhaseError.Code code) { this.code = code; }
+        
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+        
+        public Boolean getPartial() { return partial; }
+        public void setPartial(Boolean partial) { this.partial = partial; }
     }
     
     public static class LatencyMetricsDto {
@@ -156,6 +196,12 @@ public class SpeedTestResponseDto {
     public String getErrorMessage() { return errorMessage; }
     public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
     
+    public Integer getQueuePosition() { return queuePosition; }
+    public void setQueuePosition(Integer queuePosition) { this.queuePosition = queuePosition; }
+    
+    public Long getEstimatedWaitSeconds() { return estimatedWaitSeconds; }
+    public void setEstimatedWaitSeconds(Long estimatedWaitSeconds) { this.estimatedWaitSeconds = estimatedWaitSeconds; }
+    
     public SpeedMetricsDto getDownloadMetrics() { return downloadMetrics; }
     public void setDownloadMetrics(SpeedMetricsDto downloadMetrics) { this.downloadMetrics = downloadMetrics; }
     
@@ -167,4 +213,7 @@ public class SpeedTestResponseDto {
     
     public StatisticalSummaryDto getStatisticalSummary() { return statisticalSummary; }
     public void setStatisticalSummary(StatisticalSummaryDto statisticalSummary) { this.statisticalSummary = statisticalSummary; }
+    
+    public List<PhaseErrorDto> getPhaseErrors() { return phaseErrors; }
+    public void setPhaseErrors(List<PhaseErrorDto> phaseErrors) { this.phaseErrors = phaseErrors; }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.webstats.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Puts a request id into the MDC for every HTTP request so all log lines written while serving
+ * it can be correlated. The id is taken from X-Request-Id when a proxy already assigned one,
+ * otherwise generated, and is echoed back in the response.
+ *
+ * Work handed to the named executors keeps the caller's MDC (see ExecutorConfig); the speed test
+ * orchestration additionally adds the sessionId.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CorrelationIdFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+    public static final String REQUEST_ID = "requestId";
+    public static final String SESSION_ID = "sessionId";
+
+    private static final int MAX_REQUEST_ID_LENGTH = 64;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || requestId.isBlank() || requestId.length() > MAX_REQUEST_ID_LENGTH) {
+            requestId = UUID.randomUUID().toString();
+        }
+        MDC.put(REQUEST_ID, requestId);
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(REQUEST_ID);
+        }
+    }
+
+    // Async dispatches (CompletableFuture results of /start) run on another thread with the same request
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+package com.webstats.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a per-request or per-message log event is written: a fraction of events is
+ * sampled, and at most maxPerSecond of those are written. Events that were dropped are counted,
+ * so the next written event can report how many it stands for.
+ *
+ * Lock-free; intended to be held in a static field next to the Logger it guards and checked
+ * after the level check, e.g. {@code if (log.isDebugEnabled() && SAMPLER.sample())}.
+ */
+public final class LogSampler {
+
+    private final double sampleRate;
+    private final int maxPerSecond;
+
+    // Second of the current rate window << 32 | events written in it
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public LogSampler(double sampleRate, int maxPerSecond) {
+        this.sampleRate = sampleRate;
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    /**
+     * Rate limiting only: every event is eligible, at most maxPerSecond are written.
+     */
+    public static LogSampler rateLimited(int maxPerSecond) {
+        return new LogSampler(1.0, maxPerSecond);
+    }
+
+    public boolean sample() {
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        long second = System.currentTimeMillis() / 1000;
+        while (true) {
+            long current = window.get();
+            int written = (current >>> 32) == second ? (int) current : 0;
+            if (written >= maxPerSecond) {
+                suppressed.incrementAndGet();
+                return false;
+            }
+            if (window.compareAndSet(current, (second << 32) | (written + 1))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Number of events dropped since the previous call; include it in the event that was written.
+     */
+    public long drainSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+}
@@ -0,0 +1,227 @@
+package com.webstats.metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per-command MongoDB metrics, tagged with the repository method that issued them:
+ * latency, documents and bytes returned by reads, documents affected by writes, and
+ * collection scans found by explaining a sample of queries in the background.
+ *
+ * This runs on every command, so meters are built once per tag combination and cached, and
+ * response sizes are read off the raw bytes the driver already holds rather than re-encoded.
+ */
+public class MongoCommandMetricsListener implements CommandListener {
+
+    private static final Set<String> READ_COMMANDS = Set.of("find", "getMore", "aggregate");
+    private static final Set<String> WRITE_COMMANDS = Set.of("insert", "update", "delete", "findAndModify");
+    private static final Set<String> EXPLAINABLE_COMMANDS = Set.of("find", "aggregate", "count", "distinct", "update", "delete");
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+    private final double explainSampleRate;
+    private final Map<Integer, StartedCommand> inFlight = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<MeterKey, Counter> counters = new ConcurrentHashMap<>();
+
+    // One background thread; samples are dropped rather than queued when it falls behind
+    private final ThreadPoolExecutor explainExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(100), runnable -> {
+                Thread thread = new Thread(runnable, "mongo-explain-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    public MongoCommandMetricsListener(MeterRegistry meterRegistry, ObjectProvider<MongoTemplate> mongoTemplate,
+                                       double explainSampleRate) {
+        this.meterRegistry = meterRegistry;
+        this.mongoTemplate = mongoTemplate;
+        this.explainSampleRate = explainSampleRate;
+    }
+
+    private static final class StartedCommand {
+        final String operation;
+        final String collection;
+
+        StartedCommand(String operation, String collection) {
+            this.operation = operation;
+            this.collection = collection;
+        }
+    }
+
+    private record MeterKey(String name, String operation, String command, String collection, String outcome) {
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String commandName = event.getCommandName();
+        if ("explain".equals(commandName)) {
+            return; // Our own sampling
+        }
+
+        String operation = MongoOperationContext.current();
+        String collection = collectionName(commandName, event.getCommand());
+        inFlight.put(event.getRequestId(), new StartedCommand(operation, collection));
+
+        if (EXPLAINABLE_COMMANDS.contains(commandName) && explainSampleRate > 0
+                && ThreadLocalRandom.current().nextDouble() < explainSampleRate) {
+            // The command document is only valid during this callback
+            BsonDocument command = event.getCommand().clone();
+            explainExecutor.execute(() -> explain(operation, collection, command));
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        StartedCommand started = inFlight.remove(event.getRequestId());
+        if (started == null) {
+            return;
+        }
+
+        String commandName = event.getCommandName();
+        timer(started, commandName, "success").record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+
+        BsonDocument response = event.getResponse();
+        if (READ_COMMANDS.contains(commandName)) {
+            summary("webstats.mongo.documents.returned", "documents", started, commandName)
+                    .record(batchSize(response));
+            // The driver passes the response as received; anything else would have to be re-encoded
+            if (response instanceof RawBsonDocument raw) {
+                summary("webstats.mongo.bytes.returned", "bytes", started, commandName)
+                        .record(raw.getByteBuffer().remaining());
+            }
+        } else if (WRITE_COMMANDS.contains(commandName) && response.isNumber("n")) {
+            summary("webstats.mongo.documents.written", "documents", started, commandName)
+                    .record(response.getNumber("n").longValue());
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        StartedCommand started = inFlight.remove(event.getRequestId());
+        if (started == null) {
+            return;
+        }
+
+        timer(started, event.getCommandName(), "failure")
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(StartedCommand started, String commandName, String outcome) {
+        MeterKey key = new MeterKey("webstats.mongo.commands", started.operation, commandName, started.collection, outcome);
+        return timers.computeIfAbsent(key, k -> Timer.builder(k.name())
+                .description("MongoDB command latency by repository method")
+                .tag("operation", k.operation())
+                .tag("command", k.command())
+                .tag("collection", k.collection())
+                .tag("outcome", k.outcome())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private DistributionSummary summary(String name, String unit, StartedCommand started, String commandName) {
+        MeterKey key = new MeterKey(name, started.operation, commandName, started.collection, null);
+        return summaries.computeIfAbsent(key, k -> DistributionSummary.builder(k.name())
+                .baseUnit(unit)
+                .tag("operation", k.operation())
+                .tag("command", k.command())
+                .tag("collection", k.collection())
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private Counter counter(String name, String description, String operation, String collection) {
+        MeterKey key = new MeterKey(name, operation, null, collection, null);
+        return counters.computeIfAbsent(key, k -> Counter.builder(k.name())
+                .description(description)
+                .tag("operation", k.operation())
+                .tag("collection", k.collection())
+                .register(meterRegistry));
+    }
+
+    private void explain(String operation, String collection, BsonDocument command) {
+        try {
+            // Session, cluster time and other generic fields are not accepted inside explain
+            BsonDocument explained = new BsonDocument();
+            command.forEach((key, value) -> {
+                if (!key.startsWith("$") && !key.equals("lsid") && !key.equals("txnNumber")) {
+                    explained.put(key, value);
+                }
+            });
+
+            Document plan = mongoTemplate.getObject().getDb().runCommand(new BsonDocument("explain", explained)
+                    .append("verbosity", new BsonString("queryPlanner")));
+
+            counter("webstats.mongo.explain.sampled", null, operation, collection).increment();
+            if (hasCollectionScan(plan, false)) {
+                counter("webstats.mongo.collscans", "Sampled queries whose winning plan is a collection scan",
+                        operation, collection).increment();
+            }
+        } catch (Exception e) {
+            // Explain is best effort; the original command already ran
+        }
+    }
+
+    // Looks for a COLLSCAN stage inside any winningPlan (aggregations nest one per $cursor stage)
+    private static boolean hasCollectionScan(Object node, boolean inWinningPlan) {
+        if (node instanceof Document document) {
+            if (inWinningPlan && "COLLSCAN".equals(document.get("stage"))) {
+                return true;
+            }
+            for (Map.Entry<String, Object> entry : document.entrySet()) {
+                if ("rejectedPlans".equals(entry.getKey())) {
+                    continue;
+                }
+                boolean winning = inWinningPlan || "winningPlan".equals(entry.getKey());
+                if (hasCollectionScan(entry.getValue(), winning)) {
+                    return true;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object item : list) {
+                if (hasCollectionScan(item, inWinningPlan)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String collectionName(String commandName, BsonDocument command) {
+        BsonValue value = "getMore".equals(commandName) ? command.get("collection") : command.get(commandName);
+        return value != null && value.isString() ? value.asString().getValue() : "none";
+    }
+
+    private static int batchSize(BsonDocument response) {
+        BsonDocument cursor = response.isDocument("cursor") ? response.getDocument("cursor") : null;
+        if (cursor == null) {
+            return 0;
+        }
+        BsonValue batch = cursor.containsKey("firstBatch") ? cursor.get("firstBatch") : cursor.get("nextBatch");
+        return batch instanceof BsonArray array ? array.size() : 0;
+    }
+}
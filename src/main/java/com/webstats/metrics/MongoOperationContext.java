@@ -0,0 +1,36 @@
+package com.webstats.metrics;
+
+/**
+ * Tracks which repository method the current thread is executing, so MongoDB commands sent
+ * by the (synchronous) driver can be attributed to it.
+ */
+public final class MongoOperationContext {
+
+    public static final String UNATTRIBUTED = "template";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private MongoOperationContext() {}
+
+    public static String current() {
+        String operation = CURRENT.get();
+        return operation != null ? operation : UNATTRIBUTED;
+    }
+
+    /**
+     * Sets the current operation and returns the previous one, to be passed to {@link #restore}.
+     */
+    static String enter(String operation) {
+        String previous = CURRENT.get();
+        CURRENT.set(operation);
+        return previous;
+    }
+
+    static void restore(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
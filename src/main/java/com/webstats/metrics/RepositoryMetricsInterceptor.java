@@ -0,0 +1,44 @@
+package com.webstats.metrics;
+
+import com.webstats.tracing.SpeedTestObservations;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Observes every repository method call, which yields the webstats.repository.invocations timer
+ * and a span per call, and tags the MongoDB commands it issues with "Repository.method"
+ * (see MongoOperationContext).
+ */
+public class RepositoryMetricsInterceptor implements MethodInterceptor {
+
+    private final ObservationRegistry observationRegistry;
+    private final String repositoryName;
+
+    public RepositoryMetricsInterceptor(ObservationRegistry observationRegistry, Class<?> repositoryInterface) {
+        this.observationRegistry = observationRegistry;
+        this.repositoryName = repositoryInterface.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        String previous = MongoOperationContext.enter(repositoryName + "." + method);
+        Observation observation = SpeedTestObservations.withSessionId(
+                Observation.createNotStarted("webstats.repository.invocations", observationRegistry)
+                        .contextualName(repositoryName + "." + method)
+                        .lowCardinalityKeyValue("repository", repositoryName)
+                        .lowCardinalityKeyValue("method", method))
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+            MongoOperationContext.restore(previous);
+        }
+    }
+}
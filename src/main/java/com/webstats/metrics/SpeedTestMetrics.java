@@ -0,0 +1,148 @@
+package com.webstats.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Speed test engine metrics, scraped from /actuator/prometheus for node capacity planning:
+ *
+ * - webstats.speedtest.tests{outcome, type, phase}: tests started, completed and failed;
+ *   failures are tagged with the phase they failed in
+ * - webstats.speedtest.phase.failures{phase, type, code}: phases whose measurement failed,
+ *   by error code; the test continues with the next phase
+ * - webstats.speedtest.transfer.bytes{direction}: bytes served by the download endpoint and
+ *   received by the upload endpoint; rate() gives bytes per second
+ * - webstats.speedtest.throughput{direction, source}: distribution of measured Mbps
+ * - webstats.speedtest.sessions.active, webstats.websocket.connections
+ * - webstats.validation.rejections{type, reason}: submitted results rejected by validation
+ *
+ * Phase and run durations are the timers of the tracing observations (SpeedTestObservations).
+ * Executor queue depths are published per executor as executor.queued{name} (ExecutorConfig).
+ */
+@Component
+public class SpeedTestMetrics {
+
+    // Mbps bucket boundaries for the throughput histograms
+    private static final double[] THROUGHPUT_BUCKETS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final MeterRegistry meterRegistry;
+    private final Counter bytesServed;
+    private final Counter bytesReceived;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicInteger websocketConnections = new AtomicInteger();
+
+    // Meters with per-call tags, built once per tag combination (keyed by the tag values in order)
+    private final Map<List<String>, Counter> testCounters = new ConcurrentHashMap<>();
+    private final Map<List<String>, Counter> phaseFailureCounters = new ConcurrentHashMap<>();
+    private final Map<List<String>, DistributionSummary> throughputSummaries = new ConcurrentHashMap<>();
+    private final Map<List<String>, Counter> rejectionCounters = new ConcurrentHashMap<>();
+
+    public SpeedTestMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.bytesServed = Counter.builder("webstats.speedtest.transfer.bytes")
+                .description("Bytes transferred by the speed test endpoints")
+                .baseUnit("bytes")
+                .tag("direction", "served")
+                .register(meterRegistry);
+        this.bytesReceived = Counter.builder("webstats.speedtest.transfer.bytes")
+                .description("Bytes transferred by the speed test endpoints")
+                .baseUnit("bytes")
+                .tag("direction", "received")
+                .register(meterRegistry);
+        meterRegistry.gauge("webstats.speedtest.sessions.active", activeSessions);
+        meterRegistry.gauge("webstats.websocket.connections", websocketConnections);
+    }
+
+    public void testStarted(Object type) {
+        activeSessions.incrementAndGet();
+        tests("started", type, "none").increment();
+    }
+
+    public void testCompleted(Object type) {
+        activeSessions.decrementAndGet();
+        tests("completed", type, "none").increment();
+    }
+
+    public void testFailed(Object type, Object phase) {
+        activeSessions.decrementAndGet();
+        tests("failed", type, tag(phase)).increment();
+    }
+
+    public void phaseFailed(Object phase, Object type, Object code) {
+        phaseFailureCounters.computeIfAbsent(List.of(tag(phase), tag(type), tag(code)),
+                k -> Counter.builder("webstats.speedtest.phase.failures")
+                        .description("Phases whose measurement failed, by error code; the test continues with the next phase")
+                        .tag("phase", k.get(0))
+                        .tag("type", k.get(1))
+                        .tag("code", k.get(2))
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public void bytesServed(long bytes) {
+        bytesServed.increment(bytes);
+    }
+
+    public void bytesReceived(long bytes) {
+        bytesReceived.increment(bytes);
+    }
+
+    /**
+     * @param direction download or upload
+     * @param source server for engine-run tests, client for results submitted by the browser
+     */
+    public void recordThroughput(String direction, String source, Double mbps) {
+        if (mbps == null) {
+            return;
+        }
+        throughputSummaries.computeIfAbsent(List.of(direction, source),
+                k -> DistributionSummary.builder("webstats.speedtest.throughput")
+                        .description("Measured speed test throughput")
+                        .baseUnit("megabits.per.second")
+                        .tag("direction", k.get(0))
+                        .tag("source", k.get(1))
+                        .serviceLevelObjectives(THROUGHPUT_BUCKETS)
+                        .register(meterRegistry))
+                .record(mbps);
+    }
+
+    public void validationRejected(String type, String reason) {
+        rejectionCounters.computeIfAbsent(List.of(type, reason),
+                k -> Counter.builder("webstats.validation.rejections")
+                        .description("Submitted results rejected by validation")
+                        .tag("type", k.get(0))
+                        .tag("reason", k.get(1))
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public void websocketOpened() {
+        websocketConnections.incrementAndGet();
+    }
+
+    public void websocketClosed() {
+        websocketConnections.decrementAndGet();
+    }
+
+    private Counter tests(String outcome, Object type, String phase) {
+        return testCounters.computeIfAbsent(List.of(outcome, tag(type), phase),
+                k -> Counter.builder("webstats.speedtest.tests")
+                        .description("Speed tests by outcome")
+                        .tag("outcome", k.get(0))
+                        .tag("type", k.get(1))
+                        .tag("phase", k.get(2))
+                        .register(meterRegistry));
+    }
+
+    private static String tag(Object value) {
+        return value != null ? value.toString().toLowerCase(Locale.ROOT) : "unknown";
+    }
+}
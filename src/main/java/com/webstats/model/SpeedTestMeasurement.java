@@ -0,0 +1,80 @@
+package com.webstats.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * One raw sample of a speed test, stored in a MongoDB time-series collection.
+ * Samples of the same result and measurement type share the meta field, so MongoDB packs
+ * them into the same buckets.
+ */
+@TimeSeries(collection = "speed_test_measurements", timeField = "timestamp", metaField = "meta",
+        granularity = Granularity.SECONDS)
+public class SpeedTestMeasurement {
+
+    public static final String COLLECTION = "speed_test_measurements";
+
+    @Id
+    private String id;
+
+    @Field("timestamp")
+    private LocalDateTime timestamp;
+
+    @Field("meta")
+    private Meta meta;
+
+    @Field("run_number")
+    private Integer runNumber;
+
+    @Field("value")
+    private Double value;
+
+    @Field("metadata")
+    private Map<String, Object> metadata;
+
+    public SpeedTestMeasurement() {}
+
+    public static class Meta {
+        @Field("result_id")
+        private String resultId;
+
+        @Field("measurement_type")
+        private SpeedTestResult.RawMeasurement.MeasurementType measurementType;
+
+        public Meta() {}
+
+        public Meta(String resultId, SpeedTestResult.RawMeasurement.MeasurementType measurementType) {
+            this.resultId = resultId;
+            this.measurementType = measurementType;
+        }
+
+        public String getResultId() { return resultId; }
+        public void setResultId(String resultId) { this.resultId = resultId; }
+
+        public SpeedTestResult.RawMeasurement.MeasurementType getMeasurementType() { return measurementType; }
+        public void setMeasurementType(SpeedTestResult.RawMeasurement.MeasurementType measurementType) { this.measurementType = measurementType; }
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    public Meta getMeta() { return meta; }
+    public void setMeta(Meta meta) { this.meta = meta; }
+
+    public Integer getRunNumber() { return runNumber; }
+    public void setRunNumber(Integer runNumber) { this.runNumber = runNumber; }
+
+    public Double getValue() { return value; }
+    public void setValue(Double value) { this.value = value; }
+
+    public Map<String, Object> getMetadata() { return metadata; }
+    public void setMetadata(Map<String, Object> metadata) { this.metadata = metadata; }
+}
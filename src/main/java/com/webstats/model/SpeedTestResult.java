@@ -49,9 +49,25 @@ public class SpeedTestResult {
     @Field("statistical_summary")
     private StatisticalSummary statisticalSummary;
     
+    // Phases that failed; their metrics are absent or, when marked partial, cover only what was measured
+    @Field("phase_errors")
+    private List<PhaseError> phaseErrors;
+    
+    // Raw samples live in speed_test_measurements; only results stored before that still embed them
     @Field("raw_measurements")
     private List<RawMeasurement> rawMeasurements;
     
+    @Field("measurement_count")
+    private Integer measurementCount;
+    
+    // Raw samples packed by MeasurementSeriesCodec when webstats.measurements.storage=encoded
+    @Field("raw_series")
+    private byte[] rawSeries;
+    
+    // When RetentionService unsets raw_series; summaries are kept
+    @Field("raw_expires_at")
+    private LocalDateTime rawExpiresAt;
+    
     public SpeedTestResult() {
         this.testTimestamp = LocalDateTime.now();
     }
@@ -153,6 +169,17 @@ public class SpeedTestResult {
         @Field("stability_score")
         private Double stabilityScore;
         
+        // Ramp-up (TCP slow-start) window, excluded from speedMbps
+        @Field("warm_up_duration_seconds")
+        private Double warmUpDurationSeconds;
+        
+        @Field("warm_up_speed_mbps")
+        private Double warmUpSpeedMbps;
+        
+        // A run failed part way; the figures come from the intervals completed before it did
+        @Field("partial")
+        private Boolean partial;
+        
         public SpeedMetrics() {}
         
         public Double getSpeedMbps() { return speedMbps; }
@@ -172,6 +199,15 @@ public class SpeedTestResult {
         
         public Double getStabilityScore() { return stabilityScore; }
         public void setStabilityScore(Double stabilityScore) { this.stabilityScore = stabilityScore; }
+        
+        public Double getWarmUpDurationSeconds() { return warmUpDurationSeconds; }
+        public void setWarmUpDurationSeconds(Double warmUpDurationSeconds) { this.warmUpDurationSeconds = warmUpDurationSeconds; }
+        
+        public Double getWarmUpSpeedMbps() { return warmUpSpeedMbps; }
+        public void setWarmUpSpeedMbps(Double warmUpSpeedMbps) { this.warmUpSpeedMbps = warmUpSpeedMbps; }
+        
+        public Boolean getPartial() { return partial; }
+        public void setPartial(Boolean partial) { this.partial = partial; }
     }
     
     public static class LatencyMetrics {
@@ -369,6 +405,52 @@ public class SpeedTestResult {
         public void setMetadata(Map<String, Object> metadata) { this.metadata = metadata; }
     }
     
+    public static class PhaseError {
+        @Field("phase")
+        private SpeedTestSession.TestPhase phase;
+        
+        @Field("code")
+        private Code code;
+        
+        @Field("message")
+        private String message;
+        
+        @Field("partial")
+        private Boolean partial;
+        
+        @Field("timestamp")
+        private LocalDateTime timestamp;
+        
+        public enum Code {
+            DNS_FAILED, CONNECT_FAILED, TIMEOUT, HTTP_ERROR, TRANSFER_FAILED, NO_DATA, INTERRUPTED, OVERLOADED, INTERNAL_ERROR
+        }
+        
+        public PhaseError() {}
+        
+        public PhaseError(SpeedTestSession.TestPhase phase, Code code, String message, boolean partial) {
+            this.phase = phase;
+            this.code = code;
+            this.message = message;
+            this.partial = partial;
+            this.timestamp = LocalDateTime.now();
+        }
+        
+        public SpeedTestSession.TestPhase getPhase() { return phase; }
+        public void setPhase(SpeedTestSession.TestPhase phase) { this.phase = phase; }
+        
+        public Code getCode() { return code; }
+        public void setCode(Code code) { this.code = code; }
+        
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+        
+        public Boolean getPartial() { return partial; }
+        public void setPartial(Boolean partial) { this.partial = partial; }
+        
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    }
+    
     // Main getters and setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -408,4 +490,16 @@ public class SpeedTestResult {
     
     public List<RawMeasurement> getRawMeasurements() { return rawMeasurements; }
     public void setRawMeasurements(List<RawMeasurement> rawMeasurements) { this.rawMeasurements = rawMeasurements; }
+    
+    public Integer getMeasurementCount() { return measurementCount; }
+    public void setMeasurementCount(Integer measurementCount) { this.measurementCount = measurementCount; }
+    
+    public List<PhaseError> getPhaseErrors() { return phaseErrors; }
+    public void setPhaseErrors(List<PhaseError> phaseErrors) { this.phaseErrors = phaseErrors; }
+    
+    public byte[] getRawSeries() { return rawSeries; }
+    public void setRawSeries(byte[] rawSeries) { this.rawSeries = rawSeries; }
+    
+    public LocalDateTime getRawExpiresAt() { return rawExpiresAt; }
+    public void setRawExpiresAt(LocalDateTime rawExpiresAt) { this.rawExpiresAt = rawExpiresAt; }
 }
\ No newline at end of file
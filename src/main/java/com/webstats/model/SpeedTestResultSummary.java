@@ -0,0 +1,51 @@
+package com.webstats.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a speed_test_results document: just the timestamp and headline numbers.
+ * Nested metrics are only partially populated (see SpeedTestResultRepositoryCustomImpl).
+ */
+public class SpeedTestResultSummary {
+
+    @Id
+    private String id;
+
+    @Field("test_timestamp")
+    private LocalDateTime testTimestamp;
+
+    @Field("download_metrics")
+    private SpeedTestResult.SpeedMetrics downloadMetrics;
+
+    @Field("upload_metrics")
+    private SpeedTestResult.SpeedMetrics uploadMetrics;
+
+    @Field("latency_metrics")
+    private SpeedTestResult.LatencyMetrics latencyMetrics;
+
+    @Field("server_info")
+    private SpeedTestResult.ServerInfo serverInfo;
+
+    public SpeedTestResultSummary() {}
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public LocalDateTime getTestTimestamp() { return testTimestamp; }
+    public void setTestTimestamp(LocalDateTime testTimestamp) { this.testTimestamp = testTimestamp; }
+
+    public SpeedTestResult.SpeedMetrics getDownloadMetrics() { return downloadMetrics; }
+    public void setDownloadMetrics(SpeedTestResult.SpeedMetrics downloadMetrics) { this.downloadMetrics = downloadMetrics; }
+
+    public SpeedTestResult.SpeedMetrics getUploadMetrics() { return uploadMetrics; }
+    public void setUploadMetrics(SpeedTestResult.SpeedMetrics uploadMetrics) { this.uploadMetrics = uploadMetrics; }
+
+    public SpeedTestResult.LatencyMetrics getLatencyMetrics() { return latencyMetrics; }
+    public void setLatencyMetrics(SpeedTestResult.LatencyMetrics latencyMetrics) { this.latencyMetrics = latencyMetrics; }
+
+    public SpeedTestResult.ServerInfo getServerInfo() { return serverInfo; }
+    public void setServerInfo(SpeedTestResult.ServerInfo serverInfo) { this.serverInfo = serverInfo; }
+}
@@ -0,0 +1,140 @@
+package com.webstats.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pre-aggregated speed test metrics for one scope (user, organization or server) and one
+ * time bucket (hour or day). Documents are only ever written with $inc/$min/$max upserts.
+ */
+@Document(collection = "speed_test_rollups")
+public class SpeedTestRollup {
+
+    public static final String COLLECTION = "speed_test_rollups";
+
+    @Id
+    private String id;
+
+    @Field("scope")
+    private Scope scope;
+
+    @Field("scope_id")
+    private String scopeId;
+
+    @Field("granularity")
+    private Granularity granularity;
+
+    @Field("bucket_start")
+    private LocalDateTime bucketStart;
+
+    @Field("test_count")
+    private Long testCount;
+
+    @Field("first_test")
+    private LocalDateTime firstTest;
+
+    @Field("last_test")
+    private LocalDateTime lastTest;
+
+    @Field("download")
+    private MetricRollup download;
+
+    @Field("upload")
+    private MetricRollup upload;
+
+    @Field("latency")
+    private MetricRollup latency;
+
+    public SpeedTestRollup() {}
+
+    public enum Scope {
+        USER, ORGANIZATION, SERVER
+    }
+
+    public enum Granularity {
+        HOUR, DAY;
+
+        public LocalDateTime bucketStart(LocalDateTime timestamp) {
+            LocalDateTime hour = timestamp.withMinute(0).withSecond(0).withNano(0);
+            return this == HOUR ? hour : hour.withHour(0);
+        }
+    }
+
+    public static class MetricRollup {
+        @Field("count")
+        private Long count;
+
+        @Field("sum")
+        private Double sum;
+
+        @Field("min")
+        private Double min;
+
+        @Field("max")
+        private Double max;
+
+        // Log-scale histogram: bucket index -> count, see RollupService.sketchIndex
+        @Field("sketch")
+        private Map<String, Long> sketch = new HashMap<>();
+
+        public MetricRollup() {}
+
+        public Double getAverage() {
+            return count != null && count > 0 && sum != null ? sum / count : null;
+        }
+
+        public Long getCount() { return count; }
+        public void setCount(Long count) { this.count = count; }
+
+        public Double getSum() { return sum; }
+        public void setSum(Double sum) { this.sum = sum; }
+
+        public Double getMin() { return min; }
+        public void setMin(Double min) { this.min = min; }
+
+        public Double getMax() { return max; }
+        public void setMax(Double max) { this.max = max; }
+
+        public Map<String, Long> getSketch() { return sketch; }
+        public void setSketch(Map<String, Long> sketch) { this.sketch = sketch; }
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Scope getScope() { return scope; }
+    public void setScope(Scope scope) { this.scope = scope; }
+
+    public String getScopeId() { return scopeId; }
+    public void setScopeId(String scopeId) { this.scopeId = scopeId; }
+
+    public Granularity getGranularity() { return granularity; }
+    public void setGranularity(Granularity granularity) { this.granularity = granularity; }
+
+    public LocalDateTime getBucketStart() { return bucketStart; }
+    public void setBucketStart(LocalDateTime bucketStart) { this.bucketStart = bucketStart; }
+
+    public Long getTestCount() { return testCount; }
+    public void setTestCount(Long testCount) { this.testCount = testCount; }
+
+    public LocalDateTime getFirstTest() { return firstTest; }
+    public void setFirstTest(LocalDateTime firstTest) { this.firstTest = firstTest; }
+
+    public LocalDateTime getLastTest() { return lastTest; }
+    public void setLastTest(LocalDateTime lastTest) { this.lastTest = lastTest; }
+
+    public MetricRollup getDownload() { return download; }
+    public void setDownload(MetricRollup download) { this.download = download; }
+
+    public MetricRollup getUpload() { return upload; }
+    public void setUpload(MetricRollup upload) { this.upload = upload; }
+
+    public MetricRollup getLatency() { return latency; }
+    public void setLatency(MetricRollup latency) { this.latency = latency; }
+}
@@ -6,6 +6,7 @@ import org.springframework.data.mongodb.core.mapping.Field;
 import jakarta.validation.constraints.NotNull;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Document(collection = "speed_test_sessions")
 public class SpeedTestSession {
@@ -57,6 +58,9 @@ public class SpeedTestSession {
     @Field("latency_metrics")
     private SpeedTestResult.LatencyMetrics latencyMetrics;
 
+    @Field("phase_errors")
+    private List<SpeedTestResult.PhaseError> phaseErrors;
+
     public SpeedTestSession() {
         this.sessionStart = LocalDateTime.now();
         this.status = SessionStatus.INITIALIZING;
@@ -65,7 +69,7 @@ public class SpeedTestSession {
     }
     
     public enum SessionStatus {
-        INITIALIZING, RUNNING, COMPLETED, FAILED, CANCELLED
+        INITIALIZING, QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
     }
     
     public enum TestPhase {
@@ -117,4 +121,7 @@ public class SpeedTestSession {
 
     public SpeedTestResult.LatencyMetrics getLatencyMetrics() { return latencyMetrics; }
     public void setLatencyMetrics(SpeedTestResult.LatencyMetrics latencyMetrics) { this.latencyMetrics = latencyMetrics; }
+
+    public List<SpeedTestResult.PhaseError> getPhaseErrors() { return phaseErrors; }
+    public void setPhaseErrors(List<SpeedTestResult.PhaseError> phaseErrors) { this.phaseErrors = phaseErrors; }
 }
\ No newline at end of file
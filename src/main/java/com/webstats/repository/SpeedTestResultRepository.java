@@ -10,9 +10,10 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface SpeedTestResultRepository extends MongoRepository<SpeedTestResult, String> {
+public interface SpeedTestResultRepository extends MongoRepository<SpeedTestResult, String>, SpeedTestResultRepositoryCustom {
     
     List<SpeedTestResult> findByUserId(String userId);
     
@@ -34,6 +35,9 @@ public interface SpeedTestResultRepository extends MongoRepository<SpeedTestResu
     @Query("{ 'sessionId' : ?0 }")
     List<SpeedTestResult> findBySessionId(String sessionId);
     
+    // session_id is unique, so this is a single indexed point read
+    Optional<SpeedTestResult> findFirstBySessionId(String sessionId);
+    
     @Query("{ 'clientInfo.geolocation.country' : ?0 }")
     List<SpeedTestResult> findByCountry(String country);
     
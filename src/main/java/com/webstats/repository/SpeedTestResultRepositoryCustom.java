@@ -0,0 +1,14 @@
+package com.webstats.repository;
+
+import com.webstats.model.SpeedTestResultSummary;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SpeedTestResultRepositoryCustom {
+    
+    // Newest first, strictly older than the (beforeTimestamp, beforeId) cursor when one is given
+    List<SpeedTestResultSummary> findHistoryPage(String userId, LocalDateTime beforeTimestamp, String beforeId, int limit);
+    
+    List<SpeedTestResultSummary> findTimeSeriesPoints(String userId, LocalDateTime startDate, LocalDateTime endDate);
+}
@@ -0,0 +1,63 @@
+package com.webstats.repository;
+
+import com.webstats.model.SpeedTestResultSummary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Projection queries over speed_test_results that never load rawMeasurements, clientInfo or
+ * testConfiguration. Field names are the stored (snake_case) names.
+ */
+public class SpeedTestResultRepositoryCustomImpl implements SpeedTestResultRepositoryCustom {
+    
+    private static final String COLLECTION = "speed_test_results";
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Override
+    public List<SpeedTestResultSummary> findHistoryPage(String userId, LocalDateTime beforeTimestamp, String beforeId, int limit) {
+        Criteria criteria = Criteria.where("user_id").is(userId);
+        
+        if (beforeTimestamp != null) {
+            if (beforeId != null && ObjectId.isValid(beforeId)) {
+                // Keyset on (test_timestamp, _id) so results sharing a timestamp are never skipped
+                criteria = criteria.orOperator(
+                        Criteria.where("test_timestamp").lt(beforeTimestamp),
+                        Criteria.where("test_timestamp").is(beforeTimestamp).and("_id").lt(new ObjectId(beforeId)));
+            } else {
+                criteria = criteria.and("test_timestamp").lt(beforeTimestamp);
+            }
+        }
+        
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "test_timestamp", "_id"))
+                .limit(limit);
+        includeSummaryFields(query);
+        query.fields().include("server_info.location", "server_info.provider");
+        
+        return mongoTemplate.find(query, SpeedTestResultSummary.class, COLLECTION);
+    }
+    
+    @Override
+    public List<SpeedTestResultSummary> findTimeSeriesPoints(String userId, LocalDateTime startDate, LocalDateTime endDate) {
+        Query query = new Query(Criteria.where("user_id").is(userId)
+                .and("test_timestamp").gte(startDate).lte(endDate))
+                .with(Sort.by(Sort.Direction.ASC, "test_timestamp"));
+        includeSummaryFields(query);
+        
+        return mongoTemplate.find(query, SpeedTestResultSummary.class, COLLECTION);
+    }
+    
+    private void includeSummaryFields(Query query) {
+        query.fields().include("test_timestamp", "download_metrics.speed_mbps", "download_metrics.partial",
+                "upload_metrics.speed_mbps", "upload_metrics.partial", "latency_metrics.ping_ms");
+    }
+}
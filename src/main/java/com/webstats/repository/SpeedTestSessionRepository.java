@@ -21,13 +21,13 @@ public interface SpeedTestSessionRepository extends MongoRepository<SpeedTestSes
     @Query("{ 'userId' : ?0, 'status' : ?1 }")
     List<SpeedTestSession> findByUserIdAndStatus(String userId, SpeedTestSession.SessionStatus status);
     
-    @Query("{ 'userId' : ?0, 'status' : { $in : ['INITIALIZING', 'RUNNING'] } }")
+    @Query("{ 'userId' : ?0, 'status' : { $in : ['INITIALIZING', 'QUEUED', 'RUNNING'] } }")
     List<SpeedTestSession> findActiveSessionsByUserId(String userId);
     
-    @Query("{ 'organizationId' : ?0, 'status' : { $in : ['INITIALIZING', 'RUNNING'] } }")
+    @Query("{ 'organizationId' : ?0, 'status' : { $in : ['INITIALIZING', 'QUEUED', 'RUNNING'] } }")
     List<SpeedTestSession> findActiveSessionsByOrganizationId(String organizationId);
     
-    @Query("{ 'sessionStart' : { $lt : ?0 }, 'status' : { $in : ['INITIALIZING', 'RUNNING'] } }")
+    @Query("{ 'sessionStart' : { $lt : ?0 }, 'status' : { $in : ['INITIALIZING', 'QUEUED', 'RUNNING'] } }")
     List<SpeedTestSession> findStaleActiveSessions(LocalDateTime cutoffTime);
     
     @Query(value = "{ 'userId' : ?0 }", sort = "{ 'sessionStart' : -1 }")
@@ -0,0 +1,67 @@
+package com.webstats.service;
+
+import com.webstats.cache.LoadingTtlCache;
+import com.webstats.model.Organization;
+import com.webstats.model.User;
+import com.webstats.repository.OrganizationRepository;
+import com.webstats.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Cached user and organization lookups for the test start path. These documents rarely
+ * change, and every write through UserController/OrganizationController invalidates the
+ * entry, so the TTL only bounds staleness from writes made elsewhere (other instances,
+ * direct database edits).
+ */
+@Service
+public class AccountCacheService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    private final LoadingTtlCache<String, User> users;
+    private final LoadingTtlCache<String, Organization> organizations;
+
+    public AccountCacheService(MeterRegistry meterRegistry,
+                               @Value("${webstats.cache.accounts.max-entries:10000}") int maxEntries,
+                               @Value("${webstats.cache.accounts.ttl-seconds:300}") long ttlSeconds) {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.users = new LoadingTtlCache<>("users", maxEntries, ttl, meterRegistry);
+        this.organizations = new LoadingTtlCache<>("organizations", maxEntries, ttl, meterRegistry);
+    }
+
+    public Optional<User> findUser(String userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return users.get(userId, userRepository::findById);
+    }
+
+    public Optional<Organization> findOrganization(String organizationId) {
+        if (organizationId == null) {
+            return Optional.empty();
+        }
+        return organizations.get(organizationId, organizationRepository::findById);
+    }
+
+    public void invalidateUser(String userId) {
+        if (userId != null) {
+            users.invalidate(userId);
+        }
+    }
+
+    public void invalidateOrganization(String organizationId) {
+        if (organizationId != null) {
+            organizations.invalidate(organizationId);
+        }
+    }
+}
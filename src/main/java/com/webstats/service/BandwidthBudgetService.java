@@ -0,0 +1,228 @@
+package com.webstats.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Node-level bandwidth budget for speed tests.
+ *
+ * The download and upload endpoints report every chunk they transfer; throughput is the sum of
+ * a sliding window of short buckets. A new test starts immediately only while the node has
+ * headroom for one more test, otherwise it waits in a FIFO queue and is started by the
+ * dispatcher when running tests finish or throughput drops. Tests that have just started have
+ * not ramped up yet, so each running test is assumed to use at least the configured per-test
+ * bandwidth. When the queue is full the start is rejected and the client should retry later.
+ */
+@Service
+public class BandwidthBudgetService {
+
+    private static final Logger log = LoggerFactory.getLogger(BandwidthBudgetService.class);
+
+    private static final long BUCKET_MILLIS = 250;
+
+    private final long budgetBytesPerSecond;
+    private final long perTestBytesPerSecond;
+    private final int maxQueueLength;
+    private final int windowBuckets;
+
+    // Bucket i holds the bytes of the 250 ms slot whose index is stored in bucketSlots[i]
+    private final AtomicLongArray bucketBytes;
+    private final AtomicLongArray bucketSlots;
+
+    private final LinkedHashMap<String, Runnable> queue = new LinkedHashMap<>();
+    private int runningTests = 0;
+    private double averageTestSeconds;
+
+    private final Counter startedImmediately;
+    private final Counter queuedCounter;
+    private final Counter rejectedCounter;
+
+    public BandwidthBudgetService(MeterRegistry meterRegistry,
+                                  @Value("${webstats.bandwidth.budget-mbps:1000}") long budgetMbps,
+                                  @Value("${webstats.bandwidth.per-test-mbps:100}") long perTestMbps,
+                                  @Value("${webstats.bandwidth.window-seconds:5}") int windowSeconds,
+                                  @Value("${webstats.bandwidth.max-queue-length:200}") int maxQueueLength,
+                                  @Value("${webstats.bandwidth.expected-test-seconds:30}") double expectedTestSeconds) {
+        this.budgetBytesPerSecond = budgetMbps * 1_000_000 / 8;
+        this.perTestBytesPerSecond = perTestMbps * 1_000_000 / 8;
+        this.maxQueueLength = maxQueueLength;
+        this.windowBuckets = (int) Math.max(1, windowSeconds * 1000L / BUCKET_MILLIS);
+        this.bucketBytes = new AtomicLongArray(windowBuckets);
+        this.bucketSlots = new AtomicLongArray(windowBuckets);
+        this.averageTestSeconds = expectedTestSeconds;
+
+        this.startedImmediately = Counter.builder("webstats.bandwidth.admissions")
+                .tag("outcome", "started").register(meterRegistry);
+        this.queuedCounter = Counter.builder("webstats.bandwidth.admissions")
+                .tag("outcome", "queued").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("webstats.bandwidth.admissions")
+                .tag("outcome", "rejected").register(meterRegistry);
+        meterRegistry.gauge("webstats.bandwidth.throughput.bytes", this, BandwidthBudgetService::currentBytesPerSecond);
+        meterRegistry.gauge("webstats.bandwidth.queue.length", this, BandwidthBudgetService::queueLength);
+        meterRegistry.gauge("webstats.bandwidth.running.tests", this, BandwidthBudgetService::runningTests);
+    }
+
+    public static class Admission {
+        private final boolean started;
+        private final int queuePosition;
+        private final long estimatedWaitSeconds;
+
+        public Admission(boolean started, int queuePosition, long estimatedWaitSeconds) {
+            this.started = started;
+            this.queuePosition = queuePosition;
+            this.estimatedWaitSeconds = estimatedWaitSeconds;
+        }
+
+        public boolean isStarted() { return started; }
+        public int getQueuePosition() { return queuePosition; }
+        public long getEstimatedWaitSeconds() { return estimatedWaitSeconds; }
+    }
+
+    public static class BandwidthExhaustedException extends RuntimeException {
+        private final long retryAfterSeconds;
+
+        public BandwidthExhaustedException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() { return retryAfterSeconds; }
+    }
+
+    /**
+     * Called by the transfer endpoints for every chunk sent or received.
+     */
+    public void recordBytes(long bytes) {
+        long slot = System.currentTimeMillis() / BUCKET_MILLIS;
+        int index = (int) (slot % windowBuckets);
+        long bucketSlot = bucketSlots.get(index);
+        if (bucketSlot != slot && bucketSlots.compareAndSet(index, bucketSlot, slot)) {
+            // First write into a recycled bucket; a racing add may be lost, which only undercounts one chunk
+            bucketBytes.set(index, 0);
+        }
+        bucketBytes.addAndGet(index, bytes);
+    }
+
+    public long currentBytesPerSecond() {
+        long slot = System.currentTimeMillis() / BUCKET_MILLIS;
+        long total = 0;
+        for (int i = 0; i < windowBuckets; i++) {
+            if (slot - bucketSlots.get(i) < windowBuckets) {
+                total += bucketBytes.get(i);
+            }
+        }
+        return total * 1000 / (windowBuckets * BUCKET_MILLIS);
+    }
+
+    /**
+     * Reserves a test slot: starts the test now if there is headroom, otherwise queues it
+     * (startTask runs when it reaches the front), or throws BandwidthExhaustedException when
+     * the queue is full. The caller must call {@link #release} when a started test ends.
+     */
+    public synchronized Admission admit(String sessionId, Runnable startTask) {
+        if (queue.isEmpty() && hasHeadroom()) {
+            runningTests++;
+            startedImmediately.increment();
+            return new Admission(true, 0, 0);
+        }
+        if (queue.size() >= maxQueueLength) {
+            rejectedCounter.increment();
+            throw new BandwidthExhaustedException("Server is at capacity, please retry shortly",
+                    estimateWaitSeconds(queue.size() + 1));
+        }
+        queue.put(sessionId, startTask);
+        queuedCounter.increment();
+        return new Admission(false, queue.size(), estimateWaitSeconds(queue.size()));
+    }
+
+    /**
+     * Queue position (1-based) of a waiting session, or 0 if it is not queued on this node.
+     */
+    public synchronized int queuePosition(String sessionId) {
+        int position = 1;
+        for (String queued : queue.keySet()) {
+            if (queued.equals(sessionId)) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    public synchronized long estimateWaitSeconds(int queuePosition) {
+        if (queuePosition <= 0) {
+            return 0;
+        }
+        // Running tests finish at roughly the average test duration, freeing their slots in turn
+        int slots = Math.max(1, runningTests);
+        return (long) Math.ceil((double) queuePosition / slots * averageTestSeconds);
+    }
+
+    /**
+     * Frees the slot of a finished test and starts queued tests that now fit.
+     */
+    public void release(double testSeconds) {
+        synchronized (this) {
+            runningTests = Math.max(0, runningTests - 1);
+            if (testSeconds > 0) {
+                averageTestSeconds = averageTestSeconds * 0.9 + testSeconds * 0.1;
+            }
+        }
+        dispatch();
+    }
+
+    public synchronized boolean cancel(String sessionId) {
+        return queue.remove(sessionId) != null;
+    }
+
+    // Also runs on a timer, since headroom returns as transfers wind down, not only when tests end
+    @Scheduled(fixedDelayString = "${webstats.bandwidth.dispatch-interval-ms:500}")
+    public void dispatch() {
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if (queue.isEmpty() || !hasHeadroom()) {
+                    return;
+                }
+                Iterator<Map.Entry<String, Runnable>> head = queue.entrySet().iterator();
+                next = head.next().getValue();
+                head.remove();
+                runningTests++;
+            }
+            try {
+                next.run();
+            } catch (RuntimeException e) {
+                log.warn("Failed to start queued speed test: {}", e.getMessage());
+                synchronized (this) {
+                    runningTests = Math.max(0, runningTests - 1);
+                }
+            }
+        }
+    }
+
+    private boolean hasHeadroom() {
+        if (runningTests == 0) {
+            return true;
+        }
+        long projected = Math.max(currentBytesPerSecond(), runningTests * perTestBytesPerSecond);
+        return projected + perTestBytesPerSecond <= budgetBytesPerSecond;
+    }
+
+    private synchronized int queueLength() {
+        return queue.size();
+    }
+
+    private synchronized int runningTests() {
+        return runningTests;
+    }
+}
@@ -1,9 +1,16 @@
 package com.webstats.service;
 
+import com.webstats.config.ExecutorConfig;
+import com.webstats.logging.LogSampler;
 import com.webstats.model.SpeedTestResult;
+import com.webstats.tracing.SpeedTestObservations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
@@ -11,187 +18,230 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 @Service
 public class DownloadTestService {
     
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private static final Logger log = LoggerFactory.getLogger(DownloadTestService.class);
+    private static final LogSampler LOG_SAMPLER = LogSampler.rateLimited(10);
     
-    // Local test file URLs - using our own server endpoints
-    private static final String BASE_URL = "http://localhost:8080/api/speedtest/download/";
+    @Autowired
+    private StatisticalAnalysisService statisticalAnalysisService;
+    
+    @Autowired
+    private SpeedTestObservations speedTestObservations;
+    
+    @Autowired
+    @Qualifier(ExecutorConfig.TRANSFER)
+    private Executor transferExecutor;
+    
+    // Download endpoint, normally this node's own (webstats.speedtest.engine.base-url)
+    @Value("${webstats.speedtest.engine.base-url:http://localhost:8080}")
+    private String engineBaseUrl;
+    
+    private static final String DOWNLOAD_PATH = "/api/speedtest/download/";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    // Throughput is sampled per interval so the ramp-up can be separated from steady state
+    private static final long SAMPLE_INTERVAL_NANOS = 250_000_000L;
     
     private String getTestUrl(int sizeMB) {
-        return BASE_URL + sizeMB;
+        return engineBaseUrl + DOWNLOAD_PATH + sizeMB;
     }
     
-    public CompletableFuture<SpeedTestResult.SpeedMetrics> performDownloadTest(
+    /**
+     * Measures the configured runs once, returning the combined metrics with one raw sample per run.
+     */
+    public CompletableFuture<PhaseMeasurement> performDownloadTest(
             SpeedTestResult.TestConfiguration config) {
         
         return CompletableFuture.supplyAsync(() -> {
-            try {
-                int numberOfRuns = config.getNumberOfRuns();
-                int testDurationSeconds = config.getTestDurationSeconds();
-                List<Double> speeds = new ArrayList<>();
-                
-                long totalBytesTransferred = 0;
-                long totalDurationMs = 0;
-                double peakSpeed = 0.0;
-                
-                for (int run = 0; run < numberOfRuns; run++) {
-                    DownloadResult result = performSingleDownloadTest(testDurationSeconds);
-                    if (result != null) {
-                        speeds.add(result.speedMbps);
-                        totalBytesTransferred += result.bytesTransferred;
-                        totalDurationMs += result.durationMs;
-                        peakSpeed = Math.max(peakSpeed, result.speedMbps);
-                    }
+            int numberOfRuns = config.getNumberOfRuns();
+            int testDurationSeconds = config.getTestDurationSeconds();
+            List<Double> speeds = new ArrayList<>();
+            List<SpeedTestResult.RawMeasurement> runMeasurements = new ArrayList<>();
+            
+            long totalBytesTransferred = 0;
+            long totalDurationMs = 0;
+            long totalWarmUpMs = 0;
+            double totalWarmUpSpeed = 0.0;
+            double peakSpeed = 0.0;
+            StatisticalAnalysisService.RunningStats intervalStats = new StatisticalAnalysisService.RunningStats();
+            MeasurementException failure = null;
+            
+            for (int run = 0; run < numberOfRuns; run++) {
+                DownloadResult result;
+                try {
+                    result = speedTestObservations.run("download", run + 1)
+                            .observe(() -> performSingleDownloadTest(testDurationSeconds));
+                } catch (MeasurementException e) {
+                    failure = e;
+                    break;
                 }
-                
-                if (speeds.isEmpty()) {
-                    throw new RuntimeException("All download tests failed");
+                speeds.add(result.speedMbps);
+                runMeasurements.add(runMeasurement(run + 1, result.speedMbps));
+                totalBytesTransferred += result.bytesTransferred;
+                totalDurationMs += result.durationMs;
+                totalWarmUpMs += result.warmUpMs;
+                totalWarmUpSpeed += result.warmUpSpeedMbps;
+                intervalStats.merge(result.intervalStats);
+                peakSpeed = Math.max(peakSpeed, result.speedMbps);
+                // The remaining runs would most likely hit the same fault; stop rather than wait for it again
+                if (result.failure != null) {
+                    failure = result.failure;
+                    break;
                 }
-                
-                SpeedTestResult.SpeedMetrics metrics = new SpeedTestResult.SpeedMetrics();
-                metrics.setSpeedMbps(speeds.stream().mapToDouble(Double::doubleValue).average().orElse(0.0));
-                metrics.setAverageSpeedMbps(metrics.getSpeedMbps());
-                metrics.setPeakSpeedMbps(peakSpeed);
-                metrics.setBytesTransferred(totalBytesTransferred);
-                metrics.setDurationSeconds((double) totalDurationMs / 1000.0);
-                
-                // Calculate stability score (lower variation = higher stability)
-                double variance = speeds.stream()
-                    .mapToDouble(speed -> Math.pow(speed - metrics.getSpeedMbps(), 2))
-                    .average().orElse(0.0);
-                double stabilityScore = Math.max(0, 100 - (Math.sqrt(variance) / metrics.getSpeedMbps() * 100));
-                metrics.setStabilityScore(stabilityScore);
-                
-                return metrics;
-                
-            } catch (Exception e) {
-                SpeedTestResult.SpeedMetrics errorMetrics = new SpeedTestResult.SpeedMetrics();
-                errorMetrics.setSpeedMbps(0.0);
-                return errorMetrics;
             }
-        }, executorService);
-    }
-    
-    public CompletableFuture<List<SpeedTestResult.RawMeasurement>> performMultipleDownloadRuns(
-            SpeedTestResult.TestConfiguration config) {
-        
-        return CompletableFuture.supplyAsync(() -> {
-            List<SpeedTestResult.RawMeasurement> measurements = new ArrayList<>();
             
-            for (int run = 0; run < config.getNumberOfRuns(); run++) {
-                try {
-                    DownloadResult result = performSingleDownloadTest(config.getTestDurationSeconds());
-                    if (result != null) {
-                        SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
-                        measurement.setRunNumber(run + 1);
-                        measurement.setTimestamp(LocalDateTime.now());
-                        measurement.setMeasurementType(SpeedTestResult.RawMeasurement.MeasurementType.DOWNLOAD_SPEED);
-                        measurement.setValue(result.speedMbps);
-                        measurements.add(measurement);
-                    }
-                } catch (Exception e) {
-                    // Skip failed measurement
-                }
+            if (speeds.isEmpty()) {
+                throw failure != null ? failure
+                        : new MeasurementException(SpeedTestResult.PhaseError.Code.NO_DATA, "No download runs configured");
             }
             
-            return measurements;
-        }, executorService);
+            SpeedTestResult.SpeedMetrics metrics = new SpeedTestResult.SpeedMetrics();
+            metrics.setSpeedMbps(speeds.stream().mapToDouble(Double::doubleValue).average().orElse(0.0));
+            metrics.setAverageSpeedMbps(metrics.getSpeedMbps());
+            metrics.setPeakSpeedMbps(peakSpeed);
+            metrics.setBytesTransferred(totalBytesTransferred);
+            metrics.setDurationSeconds((double) totalDurationMs / 1000.0);
+            
+            // Warm-up is excluded from speedMbps but still reported (averaged per run)
+            metrics.setWarmUpDurationSeconds(totalWarmUpMs / 1000.0 / speeds.size());
+            metrics.setWarmUpSpeedMbps(totalWarmUpSpeed / speeds.size());
+            
+            // Stability over the steady-state interval throughputs of every run
+            metrics.setStabilityScore(statisticalAnalysisService.calculateStabilityScore(intervalStats));
+            
+            if (failure != null) {
+                metrics.setPartial(true);
+                // The completed runs' raw samples travel with the partial metrics
+                throw new MeasurementException(failure.getCode(), failure.getMessage(), metrics, runMeasurements, failure);
+            }
+            return new PhaseMeasurement(metrics, runMeasurements);
+        }, transferExecutor);
+    }
+    
+    private static SpeedTestResult.RawMeasurement runMeasurement(int runNumber, double speedMbps) {
+        SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
+        measurement.setRunNumber(runNumber);
+        measurement.setTimestamp(LocalDateTime.now());
+        measurement.setMeasurementType(SpeedTestResult.RawMeasurement.MeasurementType.DOWNLOAD_SPEED);
+        measurement.setValue(speedMbps);
+        return measurement;
     }
     
+    /**
+     * Runs one timed download. A failure before any sample interval completed throws; a later one
+     * returns the completed intervals with the failure attached.
+     */
     private DownloadResult performSingleDownloadTest(int durationSeconds) {
+        // Use a test file appropriate for the duration
+        String testUrl = selectTestUrl(durationSeconds);
+        long deadline = System.nanoTime() + durationSeconds * 1_000_000_000L;
+
+        // Only time spent receiving bodies counts, not the request round trips in between
+        long streamingNanos = 0;
+        long totalBytesReceived = 0;
+        RampUpDetector rampUpDetector = new RampUpDetector(durationSeconds * 1_000_000_000L / 2);
+        byte[] buffer = new byte[BUFFER_SIZE];
+
         try {
-            // Use a test file appropriate for the duration
-            String testUrl = selectTestUrl(durationSeconds);
-            URL url = new URL(testUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout((durationSeconds + 5) * 1000); // Add buffer time
-            connection.setRequestProperty("User-Agent", "WebStats-SpeedTest/1.0");
-            connection.setRequestProperty("Cache-Control", "no-cache");
-
-            // Track actual streaming time
-            long actualStartTime = 0;
-            long actualEndTime = 0;
-            long totalBytesReceived = 0;
-
-            try (InputStream inputStream = connection.getInputStream();
-                 ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                long testStartTime = System.currentTimeMillis();
-                actualStartTime = testStartTime;
-
-                // Target speed for throttling: 100 Mbps (realistic broadband speed)
-                // This is 12.5 MB/s
-                double targetMBps = 12.5; // 100 Mbps
-                long targetBytesPerChunk = buffer.length;
-                long targetMsPerChunk = (long) ((targetBytesPerChunk / (targetMBps * 1024 * 1024)) * 1000);
-
-                long lastChunkTime = testStartTime;
-
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    long currentTime = System.currentTimeMillis();
-                    long elapsedMs = currentTime - testStartTime;
-
-                    // Stop if we've exceeded the test duration
-                    if (elapsedMs >= (durationSeconds * 1000)) {
-                        break;
-                    }
+            // A fast link finishes a test file early; it is fetched again until the duration is used up
+            while (System.nanoTime() < deadline) {
+                HttpURLConnection connection = (HttpURLConnection) new URL(testUrl).openConnection();
+                connection.setRequestMethod("GET");
+                connection.setConnectTimeout(5000);
+                connection.setReadTimeout((durationSeconds + 5) * 1000); // Add buffer time
+                connection.setRequestProperty("User-Agent", "WebStats-SpeedTest/1.0");
+                connection.setRequestProperty("Cache-Control", "no-cache");
 
-                    outputStream.write(buffer, 0, bytesRead);
-                    totalBytesReceived += bytesRead;
+                int responseCode = connection.getResponseCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    connection.disconnect();
+                    throw new MeasurementException(SpeedTestResult.PhaseError.Code.HTTP_ERROR,
+                            "Download endpoint answered HTTP " + responseCode);
+                }
+
+                try (InputStream inputStream = connection.getInputStream()) {
+                    long streamStart = System.nanoTime();
+                    long intervalStart = streamStart;
+                    long intervalBytes = 0;
+                    int bytesRead;
 
-                    // Throttle to simulate realistic network speed
-                    long timeSinceLastChunk = System.currentTimeMillis() - lastChunkTime;
-                    if (timeSinceLastChunk < targetMsPerChunk) {
-                        try {
-                            Thread.sleep(targetMsPerChunk - timeSinceLastChunk);
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
+                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                        totalBytesReceived += bytesRead;
+                        intervalBytes += bytesRead;
+                        long now = System.nanoTime();
+                        if (now - intervalStart >= SAMPLE_INTERVAL_NANOS) {
+                            rampUpDetector.addSample(intervalBytes, now - intervalStart);
+                            intervalBytes = 0;
+                            intervalStart = now;
+                        }
+
+                        // Stop if we've exceeded the test duration
+                        if (now >= deadline) {
                             break;
                         }
                     }
 
-                    lastChunkTime = System.currentTimeMillis();
+                    long streamEnd = System.nanoTime();
+                    streamingNanos += streamEnd - streamStart;
+                    if (intervalBytes > 0) {
+                        rampUpDetector.addSample(intervalBytes, streamEnd - intervalStart);
+                    }
                 }
-
-                actualEndTime = System.currentTimeMillis();
             }
+        } catch (Exception e) {
+            MeasurementException failure = MeasurementException.from(e);
+            if (LOG_SAMPLER.sample()) {
+                log.warn("speedtest.download.failed code={} error=\"{}\" suppressed={}",
+                        failure.getCode(), failure.getMessage(), LOG_SAMPLER.drainSuppressed());
+            }
+            if (rampUpDetector.getSampleCount() == 0) {
+                throw failure;
+            }
+            // The interval cut short by the failure is dropped, as are the bytes it carried
+            DownloadResult result = toResult(rampUpDetector, rampUpDetector.getTotalBytes(),
+                    rampUpDetector.getTotalNanos() / 1_000_000L);
+            result.failure = failure;
+            return result;
+        }
+
+        if (totalBytesReceived == 0) {
+            throw new MeasurementException(SpeedTestResult.PhaseError.Code.NO_DATA, "Download endpoint sent no data");
+        }
 
-            // Calculate actual streaming duration
-            long streamingDurationMs = actualEndTime - actualStartTime;
+        long streamingDurationMs = streamingNanos / 1_000_000L;
 
-            // Ensure we have valid measurements
-            if (streamingDurationMs < 100) {
-                // If streaming took less than 100ms, the test is invalid
-                System.err.println("Download test completed too quickly (" + streamingDurationMs + "ms), likely localhost without throttling");
-                streamingDurationMs = Math.max(100, streamingDurationMs);
+        // Ensure we have valid measurements
+        if (streamingDurationMs < 100) {
+            // If streaming took less than 100ms, the test is invalid
+            if (LOG_SAMPLER.sample()) {
+                log.warn("speedtest.download.too_fast durationMs={} bytes={} suppressed={}",
+                        streamingDurationMs, totalBytesReceived, LOG_SAMPLER.drainSuppressed());
             }
+            streamingDurationMs = Math.max(100, streamingDurationMs);
+        }
 
-            if (streamingDurationMs > 0 && totalBytesReceived > 0) {
-                // Convert to Mbps: (bytes * 8) / (1024 * 1024) / (milliseconds / 1000)
-                double speedMbps = (totalBytesReceived * 8.0) / (1024.0 * 1024.0) / (streamingDurationMs / 1000.0);
+        return toResult(rampUpDetector, totalBytesReceived, streamingDurationMs);
+    }
 
-                DownloadResult result = new DownloadResult();
-                result.speedMbps = speedMbps;
-                result.bytesTransferred = totalBytesReceived;
-                result.durationMs = streamingDurationMs;
-                return result;
-            }
+    private DownloadResult toResult(RampUpDetector rampUpDetector, long bytes, long durationMs) {
+        DownloadResult result = new DownloadResult();
+        // Convert to Mbps: (bytes * 8) / (1024 * 1024) / (milliseconds / 1000)
+        result.speedMbps = (bytes * 8.0) / (1024.0 * 1024.0) / (durationMs / 1000.0);
+        result.bytesTransferred = bytes;
+        result.durationMs = durationMs;
+        result.intervalStats = rampUpDetector.getSteadyStateStats();
 
-        } catch (Exception e) {
-            System.err.println("Download test failed: " + e.getMessage());
+        // Prefer the steady-state rate once the ramp-up has been trimmed off
+        if (rampUpDetector.isRampComplete()) {
+            result.speedMbps = rampUpDetector.getSteadyStateSpeedMbps();
+            result.warmUpMs = rampUpDetector.getWarmUpNanos() / 1_000_000L;
+            result.warmUpSpeedMbps = rampUpDetector.getWarmUpSpeedMbps();
         }
-
-        return null;
+        return result;
     }
 
     private String selectTestUrl(int durationSeconds) {
@@ -213,9 +263,10 @@ public class DownloadTestService {
         double speedMbps;
         long bytesTransferred;
         long durationMs;
-    }
-    
-    public void shutdown() {
-        executorService.shutdown();
+        long warmUpMs;
+        double warmUpSpeedMbps;
+        StatisticalAnalysisService.RunningStats intervalStats;
+        // Set when the run ended early; the figures above cover the completed intervals only
+        MeasurementException failure;
     }
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.webstats.service;
 
+import com.webstats.config.ExecutorConfig;
 import com.webstats.model.SpeedTestResult;
+import com.webstats.tracing.SpeedTestObservations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -11,17 +15,27 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.stream.IntStream;
 
 @Service
 public class LatencyMeasurementService {
     
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    @Autowired
+    @Qualifier(ExecutorConfig.PROBE)
+    private Executor probeExecutor;
+    
+    @Autowired
+    private SpeedTestObservations speedTestObservations;
+    
     private static final int DEFAULT_PING_COUNT = 10;
     private static final int DEFAULT_TIMEOUT_MS = 5000;
+    // Give up once this many probes in a row failed before any reply, instead of waiting out every timeout
+    private static final int MAX_PROBES_WITHOUT_REPLY = 3;
     
+    /**
+     * Fails with a MeasurementException when the host does not resolve or no probe connects.
+     */
     public CompletableFuture<SpeedTestResult.LatencyMetrics> measureLatency(String host, int port) {
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -35,10 +49,15 @@ public class LatencyMeasurementService {
                 
                 // Multiple ping measurements
                 List<Double> pingTimes = new ArrayList<>();
+                IOException lastFailure = null;
                 for (int i = 0; i < DEFAULT_PING_COUNT; i++) {
-                    Double pingTime = measureSinglePing(address.getHostAddress(), port);
-                    if (pingTime != null) {
-                        pingTimes.add(pingTime);
+                    try {
+                        pingTimes.add(connectTime(address.getHostAddress(), port));
+                    } catch (IOException e) {
+                        lastFailure = e;
+                        if (pingTimes.isEmpty() && i + 1 >= MAX_PROBES_WITHOUT_REPLY) {
+                            break;
+                        }
                     }
                     
                     if (i < DEFAULT_PING_COUNT - 1) {
@@ -51,38 +70,48 @@ public class LatencyMeasurementService {
                     }
                 }
                 
-                if (!pingTimes.isEmpty()) {
-                    metrics.setPingMs(pingTimes.stream().mapToDouble(Double::doubleValue).average().orElse(0.0));
-                    metrics.setJitterMs(calculateJitter(pingTimes));
-                    
-                    // Calculate packet loss
-                    double packetLoss = ((double) (DEFAULT_PING_COUNT - pingTimes.size()) / DEFAULT_PING_COUNT) * 100;
-                    metrics.setPacketLossPercent(packetLoss);
+                if (pingTimes.isEmpty()) {
+                    if (lastFailure == null) {
+                        throw new MeasurementException(SpeedTestResult.PhaseError.Code.INTERRUPTED,
+                                "Interrupted before the first probe");
+                    }
+                    throw new MeasurementException(MeasurementException.codeOf(lastFailure),
+                            "No probe to " + host + ":" + port + " connected: " + lastFailure.getMessage(), null, lastFailure);
                 }
                 
+                metrics.setPingMs(pingTimes.stream().mapToDouble(Double::doubleValue).average().orElse(0.0));
+                metrics.setJitterMs(calculateJitter(pingTimes));
+                
+                // Calculate packet loss
+                double packetLoss = ((double) (DEFAULT_PING_COUNT - pingTimes.size()) / DEFAULT_PING_COUNT) * 100;
+                metrics.setPacketLossPercent(packetLoss);
+                
                 // Detailed connection timing
                 measureDetailedTiming(host, port, metrics);
                 
                 return metrics;
                 
             } catch (Exception e) {
-                SpeedTestResult.LatencyMetrics errorMetrics = new SpeedTestResult.LatencyMetrics();
-                errorMetrics.setPingMs(-1.0); // Indicate error
-                return errorMetrics;
+                throw MeasurementException.from(e);
             }
-        }, executorService);
+        }, probeExecutor);
     }
     
     private Double measureSinglePing(String host, int port) {
+        try {
+            return connectTime(host, port);
+        } catch (IOException e) {
+            return null; // Failed ping
+        }
+    }
+    
+    private double connectTime(String host, int port) throws IOException {
         try (Socket socket = new Socket()) {
             long startTime = System.nanoTime();
             socket.connect(new InetSocketAddress(host, port), DEFAULT_TIMEOUT_MS);
             long endTime = System.nanoTime();
             
             return (endTime - startTime) / 1_000_000.0; // Convert to milliseconds
-            
-        } catch (IOException e) {
-            return null; // Failed ping
         }
     }
     
@@ -114,10 +143,7 @@ public class LatencyMeasurementService {
             }
             
         } catch (IOException e) {
-            // Set default values for failed measurements
-            metrics.setTcpConnectMs(-1.0);
-            metrics.setSslHandshakeMs(-1.0);
-            metrics.setFirstByteMs(-1.0);
+            // Left unset: the ping figures stand on their own, these were just not measured
         }
     }
     
@@ -143,7 +169,8 @@ public class LatencyMeasurementService {
             
             IntStream.range(0, numberOfRuns).forEach(runNumber -> {
                 try {
-                    Double pingTime = measureSinglePing(host, port);
+                    Double pingTime = speedTestObservations.run("latency", runNumber + 1)
+                            .observe(() -> measureSinglePing(host, port));
                     if (pingTime != null) {
                         SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
                         measurement.setRunNumber(runNumber + 1);
@@ -167,10 +194,6 @@ public class LatencyMeasurementService {
             });
             
             return measurements;
-        }, executorService);
-    }
-    
-    public void shutdown() {
-        executorService.shutdown();
+        }, probeExecutor);
     }
 }
\ No newline at end of file
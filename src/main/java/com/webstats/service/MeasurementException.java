@@ -0,0 +1,86 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestResult;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown by the measurement engines when a phase could not be measured. Carries the error code
+ * recorded on the result and, when some runs or intervals completed before the failure, the
+ * metrics measured from them along with one raw sample per completed run.
+ */
+public class MeasurementException extends RuntimeException {
+
+    private final SpeedTestResult.PhaseError.Code code;
+    private final SpeedTestResult.SpeedMetrics partialMetrics;
+    private final List<SpeedTestResult.RawMeasurement> partialMeasurements;
+
+    public MeasurementException(SpeedTestResult.PhaseError.Code code, String message) {
+        this(code, message, null, null);
+    }
+
+    public MeasurementException(SpeedTestResult.PhaseError.Code code, String message,
+                                SpeedTestResult.SpeedMetrics partialMetrics, Throwable cause) {
+        this(code, message, partialMetrics, List.of(), cause);
+    }
+
+    public MeasurementException(SpeedTestResult.PhaseError.Code code, String message,
+                                SpeedTestResult.SpeedMetrics partialMetrics,
+                                List<SpeedTestResult.RawMeasurement> partialMeasurements, Throwable cause) {
+        super(message, cause);
+        this.code = code;
+        this.partialMetrics = partialMetrics;
+        this.partialMeasurements = partialMeasurements;
+    }
+
+    /**
+     * Wraps any failure of a measurement, classifying it by its cause.
+     */
+    public static MeasurementException from(Throwable e) {
+        while ((e instanceof ExecutionException || e instanceof CompletionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof MeasurementException measurementException) {
+            return measurementException;
+        }
+        return new MeasurementException(codeOf(e), e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(),
+                null, e);
+    }
+
+    public static SpeedTestResult.PhaseError.Code codeOf(Throwable e) {
+        if (e instanceof UnknownHostException) {
+            return SpeedTestResult.PhaseError.Code.DNS_FAILED;
+        }
+        if (e instanceof ConnectException || e instanceof NoRouteToHostException) {
+            return SpeedTestResult.PhaseError.Code.CONNECT_FAILED;
+        }
+        if (e instanceof SocketTimeoutException) {
+            return SpeedTestResult.PhaseError.Code.TIMEOUT;
+        }
+        if (e instanceof InterruptedException || e instanceof InterruptedIOException) {
+            return SpeedTestResult.PhaseError.Code.INTERRUPTED;
+        }
+        if (e instanceof RejectedExecutionException) {
+            return SpeedTestResult.PhaseError.Code.OVERLOADED;
+        }
+        if (e instanceof IOException) {
+            return SpeedTestResult.PhaseError.Code.TRANSFER_FAILED;
+        }
+        return SpeedTestResult.PhaseError.Code.INTERNAL_ERROR;
+    }
+
+    public SpeedTestResult.PhaseError.Code getCode() { return code; }
+
+    public SpeedTestResult.SpeedMetrics getPartialMetrics() { return partialMetrics; }
+
+    public List<SpeedTestResult.RawMeasurement> getPartialMeasurements() { return partialMeasurements; }
+}
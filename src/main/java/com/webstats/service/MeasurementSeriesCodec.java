@@ -0,0 +1,360 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestResult;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs a series of raw measurements into a compact columnar byte array.
+ *
+ * Layout (version 2), columns stored one after another:
+ * <ul>
+ *   <li>header: version byte, sample count (varint), flags byte (bit 0: some run numbers are
+ *       null, bit 1: some values are null)</li>
+ *   <li>presence bitmaps, one bit per sample, only for the columns flagged as having nulls</li>
+ *   <li>measurement types: run-length encoded (run length varint, ordinal byte; 0xFF = none)</li>
+ *   <li>run numbers of the present samples: zig-zag varint deltas</li>
+ *   <li>timestamps: epoch millis, then delta, then zig-zag varint delta-of-deltas, which are
+ *       a single zero byte for evenly spaced samples</li>
+ *   <li>values of the present samples: Gorilla-style XOR bit stream of the raw bits, so NaN
+ *       round-trips as NaN</li>
+ * </ul>
+ *
+ * Version 1 had no bitmaps and wrote a null run number as 0 and a null value as NaN; it is
+ * still decoded, with run 0 and NaN read back as null as they were written.
+ *
+ * Timestamps keep millisecond precision, the same as a BSON date. Per-sample metadata is not
+ * encoded; callers must keep series with metadata in another form.
+ */
+public final class MeasurementSeriesCodec {
+
+    private static final byte VERSION = 2;
+    private static final byte VERSION_SENTINEL_NULLS = 1;
+    private static final int NO_TYPE = 0xFF;
+    private static final int RUN_NULLS = 1;
+    private static final int VALUE_NULLS = 2;
+
+    private static final SpeedTestResult.RawMeasurement.MeasurementType[] TYPES =
+            SpeedTestResult.RawMeasurement.MeasurementType.values();
+
+    private MeasurementSeriesCodec() {}
+
+    public static boolean canEncode(List<SpeedTestResult.RawMeasurement> measurements) {
+        return measurements.stream().allMatch(m -> m.getTimestamp() != null
+                && (m.getMetadata() == null || m.getMetadata().isEmpty()));
+    }
+
+    public static byte[] encode(List<SpeedTestResult.RawMeasurement> measurements) {
+        if (!canEncode(measurements)) {
+            throw new IllegalArgumentException("Series contains samples without a timestamp or with metadata");
+        }
+
+        int count = measurements.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + count * 4);
+        out.write(VERSION);
+        writeVarint(out, count);
+
+        boolean[] runPresent = new boolean[count];
+        boolean[] valuePresent = new boolean[count];
+        int flags = 0;
+        for (int n = 0; n < count; n++) {
+            runPresent[n] = measurements.get(n).getRunNumber() != null;
+            valuePresent[n] = measurements.get(n).getValue() != null;
+            flags |= (runPresent[n] ? 0 : RUN_NULLS) | (valuePresent[n] ? 0 : VALUE_NULLS);
+        }
+        out.write(flags);
+        if ((flags & RUN_NULLS) != 0) {
+            writeBitmap(out, runPresent);
+        }
+        if ((flags & VALUE_NULLS) != 0) {
+            writeBitmap(out, valuePresent);
+        }
+
+        // Types: samples of one phase are contiguous, so this is usually one run per phase
+        int i = 0;
+        while (i < count) {
+            int ordinal = typeOrdinal(measurements.get(i));
+            int runLength = 1;
+            while (i + runLength < count && typeOrdinal(measurements.get(i + runLength)) == ordinal) {
+                runLength++;
+            }
+            writeVarint(out, runLength);
+            out.write(ordinal);
+            i += runLength;
+        }
+
+        long previousRun = 0;
+        for (SpeedTestResult.RawMeasurement measurement : measurements) {
+            if (measurement.getRunNumber() != null) {
+                long run = measurement.getRunNumber();
+                writeVarint(out, zigZag(run - previousRun));
+                previousRun = run;
+            }
+        }
+
+        long previousTime = 0;
+        long previousDelta = 0;
+        for (int n = 0; n < count; n++) {
+            long time = toEpochMillis(measurements.get(n).getTimestamp());
+            if (n == 0) {
+                writeVarint(out, zigZag(time));
+            } else {
+                long delta = time - previousTime;
+                writeVarint(out, zigZag(n == 1 ? delta : delta - previousDelta));
+                previousDelta = delta;
+            }
+            previousTime = time;
+        }
+
+        BitWriter bits = new BitWriter(out);
+        long previousBits = 0;
+        int previousLeading = Integer.MAX_VALUE;
+        int previousTrailing = 0;
+        boolean first = true;
+        for (int n = 0; n < count; n++) {
+            Double value = measurements.get(n).getValue();
+            if (value == null) {
+                continue;
+            }
+            long valueBits = Double.doubleToRawLongBits(value);
+            if (first) {
+                bits.write(valueBits, 64);
+                previousBits = valueBits;
+                first = false;
+                continue;
+            }
+
+            long xor = valueBits ^ previousBits;
+            previousBits = valueBits;
+            if (xor == 0) {
+                bits.write(0, 1);
+                continue;
+            }
+
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= previousLeading && trailing >= previousTrailing) {
+                // Meaningful bits fit in the previous window
+                bits.write(0b10, 2);
+                bits.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int significant = 64 - leading - trailing;
+                bits.write(0b11, 2);
+                bits.write(leading, 5);
+                bits.write(significant - 1, 6);
+                bits.write(xor >>> trailing, significant);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+        bits.flush();
+
+        return out.toByteArray();
+    }
+
+    public static List<SpeedTestResult.RawMeasurement> decode(byte[] data) {
+        Reader in = new Reader(data);
+        int version = in.readByte();
+        if (version != VERSION && version != VERSION_SENTINEL_NULLS) {
+            throw new IllegalArgumentException("Unsupported measurement series version");
+        }
+        boolean sentinelNulls = version == VERSION_SENTINEL_NULLS;
+
+        int count = (int) in.readVarint();
+        List<SpeedTestResult.RawMeasurement> measurements = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            measurements.add(new SpeedTestResult.RawMeasurement());
+        }
+
+        boolean[] runPresent = null;
+        boolean[] valuePresent = null;
+        if (!sentinelNulls) {
+            int flags = in.readByte();
+            runPresent = (flags & RUN_NULLS) != 0 ? in.readBitmap(count) : null;
+            valuePresent = (flags & VALUE_NULLS) != 0 ? in.readBitmap(count) : null;
+        }
+
+        int i = 0;
+        while (i < count) {
+            int runLength = (int) in.readVarint();
+            int ordinal = in.readByte();
+            for (int end = i + runLength; i < end; i++) {
+                measurements.get(i).setMeasurementType(ordinal == NO_TYPE ? null : TYPES[ordinal]);
+            }
+        }
+
+        long run = 0;
+        for (int n = 0; n < count; n++) {
+            if (runPresent != null && !runPresent[n]) {
+                continue;
+            }
+            run += unZigZag(in.readVarint());
+            measurements.get(n).setRunNumber(sentinelNulls && run == 0 ? null : (int) run);
+        }
+
+        long time = 0;
+        long delta = 0;
+        for (int n = 0; n < count; n++) {
+            long encoded = unZigZag(in.readVarint());
+            if (n == 0) {
+                time = encoded;
+            } else {
+                delta = n == 1 ? encoded : delta + encoded;
+                time += delta;
+            }
+            measurements.get(n).setTimestamp(fromEpochMillis(time));
+        }
+
+        long valueBits = 0;
+        int leading = 0;
+        int trailing = 0;
+        boolean first = true;
+        for (int n = 0; n < count; n++) {
+            if (valuePresent != null && !valuePresent[n]) {
+                continue;
+            }
+            if (first) {
+                valueBits = in.readBits(64);
+                first = false;
+            } else if (in.readBits(1) == 1) {
+                if (in.readBits(1) == 1) {
+                    leading = (int) in.readBits(5);
+                    trailing = 64 - leading - ((int) in.readBits(6) + 1);
+                }
+                valueBits ^= in.readBits(64 - leading - trailing) << trailing;
+            }
+            double value = Double.longBitsToDouble(valueBits);
+            measurements.get(n).setValue(sentinelNulls && Double.isNaN(value) ? null : value);
+        }
+
+        return measurements;
+    }
+
+    private static int typeOrdinal(SpeedTestResult.RawMeasurement measurement) {
+        return measurement.getMeasurementType() != null ? measurement.getMeasurementType().ordinal() : NO_TYPE;
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeBitmap(ByteArrayOutputStream out, boolean[] present) {
+        for (int start = 0; start < present.length; start += 8) {
+            int b = 0;
+            for (int bit = 0; bit < 8 && start + bit < present.length; bit++) {
+                if (present[start + bit]) {
+                    b |= 1 << bit;
+                }
+            }
+            out.write(b);
+        }
+    }
+
+    private static class BitWriter {
+        private final ByteArrayOutputStream out;
+        private int current = 0;
+        private int used = 0;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        // Writes the low 'count' bits of value, most significant first
+        void write(long value, int count) {
+            for (int bit = count - 1; bit >= 0; bit--) {
+                current = (current << 1) | (int) ((value >>> bit) & 1);
+                if (++used == 8) {
+                    out.write(current);
+                    current = 0;
+                    used = 0;
+                }
+            }
+        }
+
+        void flush() {
+            if (used > 0) {
+                out.write(current << (8 - used));
+                current = 0;
+                used = 0;
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int position = 0;
+        private int bitPosition = 0; // bits already consumed from data[position]
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            return data[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        boolean[] readBitmap(int count) {
+            boolean[] present = new boolean[count];
+            for (int n = 0; n < count; n++) {
+                if ((n & 7) == 0 && n > 0) {
+                    position++;
+                }
+                present[n] = (data[position] & (1 << (n & 7))) != 0;
+            }
+            if (count > 0) {
+                position++;
+            }
+            return present;
+        }
+
+        long readBits(int count) {
+            long value = 0;
+            for (int n = 0; n < count; n++) {
+                int bit = (data[position] >>> (7 - bitPosition)) & 1;
+                value = (value << 1) | bit;
+                if (++bitPosition == 8) {
+                    bitPosition = 0;
+                    position++;
+                }
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestMeasurement;
+import com.webstats.model.SpeedTestResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores raw measurement samples outside the result's summaries. By default they go to the
+ * speed_test_measurements time-series collection in a single insert when a test finishes; with
+ * webstats.measurements.storage=encoded they are packed into one binary field on the result
+ * (see MeasurementSeriesCodec) and only decoded when the samples are requested.
+ */
+@Service
+public class MeasurementStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(MeasurementStorageService.class);
+
+    public static final String STORAGE_ENCODED = "encoded";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${webstats.measurements.storage:timeseries}")
+    private String storageMode;
+
+    @Value("${webstats.retention.raw-sample-days:7}")
+    private int rawSampleRetentionDays;
+
+    private final Counter failedCounter;
+
+    public MeasurementStorageService(MeterRegistry meterRegistry) {
+        this.failedCounter = Counter.builder("webstats.measurements.write.failed")
+                .description("Raw samples lost because their insert into the time-series collection failed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Called before the result is saved, so encoded samples are written with the result itself.
+     */
+    public void attachMeasurements(SpeedTestResult result, List<SpeedTestResult.RawMeasurement> measurements) {
+        result.setMeasurementCount(measurements.size());
+        // Series the codec can't represent (metadata, missing timestamps) go to the time-series collection
+        if (STORAGE_ENCODED.equals(storageMode) && !measurements.isEmpty()
+                && MeasurementSeriesCodec.canEncode(measurements)) {
+            result.setRawSeries(MeasurementSeriesCodec.encode(measurements));
+            result.setRawExpiresAt(LocalDateTime.now().plusDays(rawSampleRetentionDays));
+        }
+    }
+
+    /**
+     * Called after the result is saved (it needs the result id). No-op if the samples were encoded.
+     * Best effort, like the rollups: the result is already stored, so a failed insert is logged and
+     * counted rather than failing the test.
+     */
+    public void saveMeasurements(SpeedTestResult result, List<SpeedTestResult.RawMeasurement> measurements) {
+        if (result.getId() == null || result.getRawSeries() != null || measurements == null || measurements.isEmpty()) {
+            return;
+        }
+
+        List<SpeedTestMeasurement> samples = new ArrayList<>(measurements.size());
+        for (SpeedTestResult.RawMeasurement measurement : measurements) {
+            SpeedTestMeasurement sample = new SpeedTestMeasurement();
+            // The time field is mandatory in a time-series collection
+            sample.setTimestamp(measurement.getTimestamp() != null ? measurement.getTimestamp() : LocalDateTime.now());
+            sample.setMeta(new SpeedTestMeasurement.Meta(result.getId(), measurement.getMeasurementType()));
+            sample.setRunNumber(measurement.getRunNumber());
+            sample.setValue(measurement.getValue());
+            sample.setMetadata(measurement.getMetadata());
+            samples.add(sample);
+        }
+
+        try {
+            mongoTemplate.insert(samples, SpeedTestMeasurement.COLLECTION);
+        } catch (Exception e) {
+            failedCounter.increment(samples.size());
+            log.warn("Failed to store {} raw samples for result {}: {}", samples.size(), result.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Raw samples of a result in time order, optionally of one type. Looks at the result document
+     * first (encoded series, or raw_measurements embedded by older versions), then the time-series collection.
+     */
+    public List<SpeedTestResult.RawMeasurement> findMeasurements(String resultId,
+                                                                 SpeedTestResult.RawMeasurement.MeasurementType type) {
+        Query resultQuery = new Query(Criteria.where("_id").is(resultId));
+        resultQuery.fields().include("raw_series", "raw_measurements");
+        SpeedTestResult result = mongoTemplate.findOne(resultQuery, SpeedTestResult.class);
+
+        if (result != null && result.getRawSeries() != null) {
+            return filterByType(MeasurementSeriesCodec.decode(result.getRawSeries()), type);
+        }
+        if (result != null && result.getRawMeasurements() != null) {
+            return filterByType(result.getRawMeasurements(), type);
+        }
+
+        Criteria criteria = Criteria.where("meta.result_id").is(resultId);
+        if (type != null) {
+            criteria = criteria.and("meta.measurement_type").is(type.name());
+        }
+
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "timestamp"));
+        List<SpeedTestMeasurement> samples = mongoTemplate.find(query, SpeedTestMeasurement.class, SpeedTestMeasurement.COLLECTION);
+
+        List<SpeedTestResult.RawMeasurement> measurements = new ArrayList<>(samples.size());
+        for (SpeedTestMeasurement sample : samples) {
+            SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
+            measurement.setTimestamp(sample.getTimestamp());
+            measurement.setMeasurementType(sample.getMeta().getMeasurementType());
+            measurement.setRunNumber(sample.getRunNumber());
+            measurement.setValue(sample.getValue());
+            measurement.setMetadata(sample.getMetadata());
+            measurements.add(measurement);
+        }
+        return measurements;
+    }
+
+    private List<SpeedTestResult.RawMeasurement> filterByType(List<SpeedTestResult.RawMeasurement> measurements,
+                                                              SpeedTestResult.RawMeasurement.MeasurementType type) {
+        if (type == null) {
+            return measurements;
+        }
+        return measurements.stream()
+                .filter(m -> m.getMeasurementType() == type)
+                .toList();
+    }
+}
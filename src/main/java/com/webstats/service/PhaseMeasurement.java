@@ -0,0 +1,24 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestResult;
+
+import java.util.List;
+
+/**
+ * What the download and upload engines return for a phase: the metrics over all runs and one raw
+ * sample per run, both from the same measurement.
+ */
+public class PhaseMeasurement {
+
+    private final SpeedTestResult.SpeedMetrics metrics;
+    private final List<SpeedTestResult.RawMeasurement> measurements;
+
+    public PhaseMeasurement(SpeedTestResult.SpeedMetrics metrics, List<SpeedTestResult.RawMeasurement> measurements) {
+        this.metrics = metrics;
+        this.measurements = measurements;
+    }
+
+    public SpeedTestResult.SpeedMetrics getMetrics() { return metrics; }
+
+    public List<SpeedTestResult.RawMeasurement> getMeasurements() { return measurements; }
+}
@@ -0,0 +1,189 @@
+package com.webstats.service;
+
+/**
+ * Detects the end of the TCP slow-start / ramp-up phase from per-interval throughput samples.
+ *
+ * Keeps a fixed-size moving window of interval throughputs and a least-squares slope over it.
+ * Each sample is O(1): the window sums are updated incrementally as the oldest sample falls out.
+ * The ramp is considered over once the window's slope, rising or falling, relative to its mean
+ * drops below a threshold (the throughput has plateaued), or once the maximum warm-up time has elapsed.
+ *
+ * Everything before the plateau window is reported as warm-up; the plateau window and every
+ * sample after it count towards the steady-state throughput, and are fed into a running
+ * (Welford) accumulator so stability can be scored without keeping the samples around.
+ */
+public class RampUpDetector {
+
+    public static final int DEFAULT_WINDOW_SIZE = 4;
+    public static final double DEFAULT_SLOPE_THRESHOLD = 0.05; // 5% of the window mean per interval
+
+    private static final double BYTES_PER_NANO_TO_MBPS = 8.0 * 1_000_000_000.0 / (1024.0 * 1024.0);
+
+    private final int windowSize;
+    private final double slopeThreshold;
+    private final long maxWarmUpNanos;
+
+    // Ring buffer of the most recent samples
+    private final double[] windowThroughput;
+    private final long[] windowBytes;
+    private final long[] windowNanos;
+    private int windowCount = 0;
+    private int windowHead = 0; // index of the oldest sample
+
+    // Running sums over the window, x = 0 (oldest) .. windowCount - 1 (newest)
+    private double sumY = 0.0;
+    private double sumXY = 0.0;
+    private long windowBytesSum = 0;
+    private long windowNanosSum = 0;
+
+    private boolean rampComplete = false;
+    private long totalBytes = 0;
+    private long totalNanos = 0;
+    private long warmUpBytes = 0;
+    private long warmUpNanos = 0;
+    private int sampleCount = 0;
+
+    private final StatisticalAnalysisService.RunningStats allStats = new StatisticalAnalysisService.RunningStats();
+    private final StatisticalAnalysisService.RunningStats steadyStateStats = new StatisticalAnalysisService.RunningStats();
+
+    public RampUpDetector(long maxWarmUpNanos) {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_SLOPE_THRESHOLD, maxWarmUpNanos);
+    }
+
+    public RampUpDetector(int windowSize, double slopeThreshold, long maxWarmUpNanos) {
+        if (windowSize < 2) {
+            throw new IllegalArgumentException("Window size must be at least 2");
+        }
+        this.windowSize = windowSize;
+        this.slopeThreshold = slopeThreshold;
+        this.maxWarmUpNanos = maxWarmUpNanos;
+        this.windowThroughput = new double[windowSize];
+        this.windowBytes = new long[windowSize];
+        this.windowNanos = new long[windowSize];
+    }
+
+    /**
+     * Adds one interval sample. Returns true while the connection is still ramping up.
+     */
+    public boolean addSample(long bytes, long intervalNanos) {
+        if (intervalNanos <= 0) {
+            return !rampComplete;
+        }
+
+        sampleCount++;
+        totalBytes += bytes;
+        totalNanos += intervalNanos;
+
+        double throughput = (double) bytes / intervalNanos;
+        allStats.add(throughput * BYTES_PER_NANO_TO_MBPS);
+
+        if (rampComplete) {
+            steadyStateStats.add(throughput * BYTES_PER_NANO_TO_MBPS);
+            return false;
+        }
+
+        push(throughput, bytes, intervalNanos);
+
+        if (windowCount == windowSize && isPlateau()) {
+            completeRamp();
+        } else if (totalNanos - windowNanosSum >= maxWarmUpNanos) {
+            // Never treat more than the allowed warm-up as ramp, even if the link never settles
+            completeRamp();
+        }
+
+        return !rampComplete;
+    }
+
+    private void push(double throughput, long bytes, long intervalNanos) {
+        if (windowCount < windowSize) {
+            int index = (windowHead + windowCount) % windowSize;
+            windowThroughput[index] = throughput;
+            windowBytes[index] = bytes;
+            windowNanos[index] = intervalNanos;
+            sumXY += windowCount * throughput;
+            sumY += throughput;
+            windowCount++;
+        } else {
+            // Shift every x down by one: sumXY loses sumY minus the oldest (which had x = 0)
+            double oldest = windowThroughput[windowHead];
+            sumXY = sumXY - (sumY - oldest) + (windowSize - 1) * throughput;
+            sumY = sumY - oldest + throughput;
+            windowBytesSum -= windowBytes[windowHead];
+            windowNanosSum -= windowNanos[windowHead];
+
+            windowThroughput[windowHead] = throughput;
+            windowBytes[windowHead] = bytes;
+            windowNanos[windowHead] = intervalNanos;
+            windowHead = (windowHead + 1) % windowSize;
+        }
+        windowBytesSum += bytes;
+        windowNanosSum += intervalNanos;
+    }
+
+    private boolean isPlateau() {
+        double n = windowCount;
+        double sumX = n * (n - 1) / 2.0;
+        double sumXX = (n - 1) * n * (2 * n - 1) / 6.0;
+        double slope = (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+        double mean = sumY / n;
+        // A falling window (a buffer burst draining, a throttle kicking in) has not settled either
+        return mean > 0 && Math.abs(slope) / mean < slopeThreshold;
+    }
+
+    private void completeRamp() {
+        rampComplete = true;
+        warmUpBytes = totalBytes - windowBytesSum;
+        warmUpNanos = totalNanos - windowNanosSum;
+
+        // The plateau window is the first steady-state data; later samples are added as they arrive
+        for (int i = 0; i < windowCount; i++) {
+            steadyStateStats.add(windowThroughput[(windowHead + i) % windowSize] * BYTES_PER_NANO_TO_MBPS);
+        }
+    }
+
+    public boolean isRampComplete() { return rampComplete; }
+
+    public int getSampleCount() { return sampleCount; }
+
+    public long getTotalBytes() { return totalBytes; }
+
+    public long getTotalNanos() { return totalNanos; }
+
+    /**
+     * Bytes attributed to the warm-up window (zero if no plateau was ever detected).
+     */
+    public long getWarmUpBytes() { return rampComplete ? warmUpBytes : 0; }
+
+    public long getWarmUpNanos() { return rampComplete ? warmUpNanos : 0; }
+
+    public long getSteadyStateBytes() { return totalBytes - getWarmUpBytes(); }
+
+    public long getSteadyStateNanos() { return totalNanos - getWarmUpNanos(); }
+
+    /**
+     * Steady-state throughput in Mbps. If the ramp never completed the whole run is used,
+     * which matches the previous whole-run average.
+     */
+    public double getSteadyStateSpeedMbps() {
+        return toMbps(getSteadyStateBytes(), getSteadyStateNanos());
+    }
+
+    public double getWarmUpSpeedMbps() {
+        return toMbps(getWarmUpBytes(), getWarmUpNanos());
+    }
+
+    /**
+     * Interval throughputs (Mbps) over the steady state, or over the whole run if no plateau was found.
+     */
+    public StatisticalAnalysisService.RunningStats getSteadyStateStats() {
+        return rampComplete ? steadyStateStats : allStats;
+    }
+
+    public static double toMbps(long bytes, long nanos) {
+        if (nanos <= 0) {
+            return 0.0;
+        }
+        // Convert to Mbps: (bytes * 8) / (1024 * 1024) / seconds
+        return (bytes * 8.0) / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0);
+    }
+}
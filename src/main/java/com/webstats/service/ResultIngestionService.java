@@ -0,0 +1,208 @@
+package com.webstats.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.webstats.cache.TtlCache;
+import com.webstats.model.SpeedTestResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores submitted results at most once per session.
+ *
+ * A result with a session id is written as an upsert on session_id whose update only has
+ * $setOnInsert, backed by a unique (partial) index, so a retried submission matches the stored
+ * document and changes nothing. Recently stored session ids are remembered in memory, so most
+ * retries are answered without going to MongoDB at all.
+ */
+@Service
+public class ResultIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultIngestionService.class);
+
+    private static final String RESULTS = "speed_test_results";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // sessionId -> resultId of results stored recently by this instance
+    private final TtlCache<String, String> recentSessions = new TtlCache<>(100_000, Duration.ofMinutes(30));
+
+    public static class IngestResult {
+        private final String resultId;
+        private final boolean duplicate;
+
+        public IngestResult(String resultId, boolean duplicate) {
+            this.resultId = resultId;
+            this.duplicate = duplicate;
+        }
+
+        public String getResultId() { return resultId; }
+        public boolean isDuplicate() { return duplicate; }
+    }
+
+    public static class BatchResult {
+        private final List<SpeedTestResult> stored;
+        private final List<SpeedTestResult> failed;
+
+        public BatchResult(List<SpeedTestResult> stored, List<SpeedTestResult> failed) {
+            this.stored = stored;
+            this.failed = failed;
+        }
+
+        public List<SpeedTestResult> getStored() { return stored; }
+        public List<SpeedTestResult> getFailed() { return failed; }
+    }
+
+    /**
+     * Id of the result already stored for this session, if it was stored recently. No database access.
+     */
+    public String findRecentResultId(String sessionId) {
+        return sessionId != null ? recentSessions.getIfPresent(sessionId) : null;
+    }
+
+    /**
+     * Id of the result already stored for this session: from memory if it was stored recently,
+     * otherwise looked up in MongoDB. Null if the session has no stored result.
+     */
+    public String findStoredResultId(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        String resultId = recentSessions.getIfPresent(sessionId);
+        if (resultId == null) {
+            resultId = findResultId(sessionId);
+            if (resultId != null) {
+                recentSessions.put(sessionId, resultId);
+            }
+        }
+        return resultId;
+    }
+
+    private void remember(SpeedTestResult result) {
+        if (result.getSessionId() != null && result.getId() != null) {
+            recentSessions.put(result.getSessionId(), result.getId());
+        }
+    }
+
+    public IngestResult save(SpeedTestResult result) {
+        if (result.getSessionId() == null) {
+            mongoTemplate.insert(result);
+            return new IngestResult(result.getId(), false);
+        }
+
+        assignId(result);
+        IngestResult ingestResult;
+        try {
+            boolean inserted = mongoTemplate.upsert(sessionQuery(result.getSessionId()), insertOnly(result), RESULTS)
+                    .getUpsertedId() != null;
+            ingestResult = inserted
+                    ? new IngestResult(result.getId(), false)
+                    : new IngestResult(findResultId(result.getSessionId()), true);
+        } catch (DuplicateKeyException e) {
+            // A concurrent submission for the same session won the insert
+            ingestResult = new IngestResult(findResultId(result.getSessionId()), true);
+        }
+
+        if (ingestResult.getResultId() != null) {
+            recentSessions.put(result.getSessionId(), ingestResult.getResultId());
+        }
+        return ingestResult;
+    }
+
+    /**
+     * Writes a batch as one unordered bulk. Returns the results that were newly stored and the
+     * ones whose write failed; results whose session already had a stored result are in neither.
+     */
+    public BatchResult saveBatch(List<SpeedTestResult> results) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RESULTS);
+        for (SpeedTestResult result : results) {
+            assignId(result);
+            if (result.getSessionId() == null) {
+                bulkOps.insert(result);
+            } else {
+                bulkOps.upsert(sessionQuery(result.getSessionId()), insertOnly(result));
+            }
+        }
+
+        Set<Integer> failed = new HashSet<>();
+        BulkWriteResult writeResult;
+        try {
+            writeResult = bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // Unordered: everything except the failed operations was applied
+            writeResult = e.getResult();
+            e.getErrors().forEach(error -> failed.add(error.getIndex()));
+            log.warn("Result batch: {} of {} writes failed: {}", failed.size(), results.size(),
+                    e.getErrors().get(0).getMessage());
+        }
+
+        Set<Integer> upserted = new HashSet<>();
+        for (BulkWriteUpsert upsert : writeResult.getUpserts()) {
+            upserted.add(upsert.getIndex());
+        }
+
+        List<SpeedTestResult> inserted = new ArrayList<>();
+        List<SpeedTestResult> failedResults = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            SpeedTestResult result = results.get(i);
+            if (failed.contains(i)) {
+                failedResults.add(result);
+                continue;
+            }
+            // An upsert that matched an existing session is a duplicate; plain inserts count unless they failed
+            boolean stored = result.getSessionId() == null || upserted.contains(i);
+            if (stored) {
+                inserted.add(result);
+                remember(result);
+            } else {
+                // Matched a result stored earlier; later retries are answered with that one's id
+                findStoredResultId(result.getSessionId());
+            }
+        }
+        return new BatchResult(inserted, failedResults);
+    }
+
+    private void assignId(SpeedTestResult result) {
+        if (result.getId() == null) {
+            result.setId(new ObjectId().toHexString());
+        }
+    }
+
+    private Query sessionQuery(String sessionId) {
+        return new Query(Criteria.where("session_id").is(sessionId));
+    }
+
+    private Update insertOnly(SpeedTestResult result) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(result, document);
+
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
+        return update;
+    }
+
+    private String findResultId(String sessionId) {
+        Query query = sessionQuery(sessionId);
+        query.fields().include("_id");
+        Document existing = mongoTemplate.findOne(query, Document.class, RESULTS);
+        return existing != null ? existing.get("_id").toString() : null;
+    }
+}
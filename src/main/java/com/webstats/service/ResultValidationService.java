@@ -1,11 +1,22 @@
 package com.webstats.service;
 
+import com.webstats.logging.LogSampler;
+import com.webstats.metrics.SpeedTestMetrics;
 import com.webstats.model.SpeedTestResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ResultValidationService {
 
+    private static final Logger log = LoggerFactory.getLogger(ResultValidationService.class);
+    private static final LogSampler LOG_SAMPLER = LogSampler.rateLimited(5);
+
+    @Autowired
+    private SpeedTestMetrics speedTestMetrics;
+
     /**
      * Validates speed test results to detect and prevent fake or manipulated results
      */
@@ -18,57 +29,66 @@ public class ResultValidationService {
 
         // Validate download metrics
         if (downloadMetrics != null) {
-            if (!validateSpeedMetrics(downloadMetrics, "download")) {
-                result.setValid(false);
-                result.addWarning("Download metrics appear suspicious");
+            String reason = validateSpeedMetrics(downloadMetrics, "download");
+            if (reason != null) {
+                reject(result, "download", reason, "Download metrics appear suspicious");
             }
         }
 
         // Validate upload metrics
         if (uploadMetrics != null) {
-            if (!validateSpeedMetrics(uploadMetrics, "upload")) {
-                result.setValid(false);
-                result.addWarning("Upload metrics appear suspicious");
+            String reason = validateSpeedMetrics(uploadMetrics, "upload");
+            if (reason != null) {
+                reject(result, "upload", reason, "Upload metrics appear suspicious");
             }
         }
 
         // Validate latency metrics
         if (latencyMetrics != null) {
-            if (!validateLatencyMetrics(latencyMetrics)) {
-                result.setValid(false);
-                result.addWarning("Latency metrics appear suspicious");
+            String reason = validateLatencyMetrics(latencyMetrics);
+            if (reason != null) {
+                reject(result, "latency", reason, "Latency metrics appear suspicious");
             }
         }
 
         return result;
     }
 
-    private boolean validateSpeedMetrics(SpeedTestResult.SpeedMetrics metrics, String type) {
+    private void reject(ValidationResult result, String type, String reason, String warning) {
+        result.setValid(false);
+        result.addWarning(warning);
+        speedTestMetrics.validationRejected(type, reason);
+    }
+
+    /**
+     * Returns the reason the metrics were rejected, or null if they look plausible.
+     */
+    private String validateSpeedMetrics(SpeedTestResult.SpeedMetrics metrics, String type) {
         // Sanity checks to detect obvious fake results
 
         // 1. Speed cannot be negative
         if (metrics.getSpeedMbps() < 0 || metrics.getPeakSpeedMbps() < 0 || metrics.getAverageSpeedMbps() < 0) {
-            return false;
+            return "negative_speed";
         }
 
         // 2. Speed cannot exceed realistic limits (10 Gbps = 10,000 Mbps for consumer connections)
         if (metrics.getSpeedMbps() > 10000 || metrics.getPeakSpeedMbps() > 10000) {
-            return false;
+            return "speed_limit";
         }
 
         // 3. Peak speed should be >= average speed
         if (metrics.getPeakSpeedMbps() < metrics.getAverageSpeedMbps()) {
-            return false;
+            return "peak_below_average";
         }
 
         // 4. Stability score should be 0-100
         if (metrics.getStabilityScore() < 0 || metrics.getStabilityScore() > 100) {
-            return false;
+            return "stability_range";
         }
 
         // 5. Duration should be reasonable (0.1s to 120s)
         if (metrics.getDurationSeconds() < 0.1 || metrics.getDurationSeconds() > 120) {
-            return false;
+            return "duration_range";
         }
 
         // 6. Bytes transferred should be consistent with speed and duration
@@ -80,7 +100,7 @@ public class ResultValidationService {
 
         if (metrics.getBytesTransferred() < minExpectedBytes || metrics.getBytesTransferred() > maxExpectedBytes) {
             // Bytes don't match speed calculation - possible manipulation
-            return false;
+            return "bytes_mismatch";
         }
 
         // 7. For localhost testing, flag unrealistically high speeds
@@ -88,39 +108,42 @@ public class ResultValidationService {
         if (metrics.getSpeedMbps() > 1000) {
             // Speeds over 1 Gbps are uncommon for consumer connections
             // but we'll allow them with a warning
-            System.out.println("WARNING: " + type + " speed over 1 Gbps detected: " + metrics.getSpeedMbps() + " Mbps");
+            if (LOG_SAMPLER.sample()) {
+                log.info("speedtest.validation.over_1gbps type={} speedMbps={} suppressed={}",
+                        type, metrics.getSpeedMbps(), LOG_SAMPLER.drainSuppressed());
+            }
         }
 
-        return true;
+        return null;
     }
 
-    private boolean validateLatencyMetrics(SpeedTestResult.LatencyMetrics metrics) {
+    private String validateLatencyMetrics(SpeedTestResult.LatencyMetrics metrics) {
         // 1. Ping cannot be negative
         if (metrics.getPingMs() < 0) {
-            return false;
+            return "negative_ping";
         }
 
         // 2. Ping cannot be unrealistically low (< 0.1ms is suspicious for internet connections)
         if (metrics.getPingMs() < 0.1) {
-            return false;
+            return "ping_too_low";
         }
 
         // 3. Ping cannot be unrealistically high (> 10,000ms = 10 seconds)
         if (metrics.getPingMs() > 10000) {
-            return false;
+            return "ping_too_high";
         }
 
         // 4. Jitter should be non-negative and less than ping
         if (metrics.getJitterMs() < 0 || metrics.getJitterMs() > metrics.getPingMs() * 2) {
-            return false;
+            return "jitter_range";
         }
 
         // 5. Packet loss should be 0-100%
         if (metrics.getPacketLossPercent() < 0 || metrics.getPacketLossPercent() > 100) {
-            return false;
+            return "packet_loss_range";
         }
 
-        return true;
+        return null;
     }
 
     public static class ValidationResult {
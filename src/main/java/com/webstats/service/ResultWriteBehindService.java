@@ -0,0 +1,250 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional write-behind persistence for client-submitted results.
+ *
+ * Requests only assign an ObjectId and enqueue the result; a single batcher thread writes
+ * whatever has queued up as one unordered bulk every flush interval, or as soon as a
+ * full batch is available. A full queue is reported back to the caller (503) instead of
+ * blocking request threads. Anything still queued is written on shutdown.
+ */
+@Service
+public class ResultWriteBehindService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultWriteBehindService.class);
+
+    @Autowired
+    private ResultIngestionService resultIngestionService;
+
+    @Autowired
+    private SpeedTestService speedTestService;
+
+    @Value("${webstats.results.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${webstats.results.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${webstats.results.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${webstats.results.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    private final BlockingQueue<SpeedTestResult> queue;
+    private final Counter rejectedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+    private final DistributionSummary batchSizeSummary;
+
+    // sessionId -> id of the result queued for it, until its batch has been written
+    private final ConcurrentHashMap<String, String> pendingSessions = new ConcurrentHashMap<>();
+
+    // Submitters hold the read lock while they check running and enqueue, so once shutdown has
+    // cleared running under the write lock nothing can be queued behind its final drain
+    private final ReentrantReadWriteLock submitGate = new ReentrantReadWriteLock();
+
+    private volatile boolean running = false;
+    private Thread batcher;
+
+    public ResultWriteBehindService(MeterRegistry meterRegistry,
+                                    @Value("${webstats.results.write-behind.queue-capacity:10000}") int queueCapacity) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        meterRegistry.gaugeCollectionSize("webstats.results.writebehind.queue.depth", List.of(), queue);
+        this.rejectedCounter = Counter.builder("webstats.results.writebehind.rejected")
+                .description("Results rejected because the write-behind queue was full")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("webstats.results.writebehind.written")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("webstats.results.writebehind.failed")
+                .description("Queued results lost because their write failed, including one retry")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("webstats.results.writebehind.batch.duration")
+                .description("Time to write one batch, including rollups")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("webstats.results.writebehind.batch.size")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        batcher = Thread.ofPlatform().name("result-write-behind").start(this::runBatcher);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a result for the next batch and assigns its id. Returns the id the result will be
+     * stored under, which for a session that already has a queued result is that result's id,
+     * or null if the queue is full.
+     */
+    public String submit(SpeedTestResult result) {
+        if (result.getId() == null) {
+            result.setId(new ObjectId().toHexString());
+        }
+        String sessionId = result.getSessionId();
+        if (sessionId != null) {
+            String pendingId = pendingSessions.putIfAbsent(sessionId, result.getId());
+            if (pendingId != null) {
+                return pendingId;
+            }
+        }
+        boolean queued;
+        submitGate.readLock().lock();
+        try {
+            queued = running && queue.offer(result);
+        } finally {
+            submitGate.readLock().unlock();
+        }
+        if (!queued) {
+            if (sessionId != null) {
+                pendingSessions.remove(sessionId, result.getId());
+            }
+            rejectedCounter.increment();
+            return null;
+        }
+        return result.getId();
+    }
+
+    private void runBatcher() {
+        List<SpeedTestResult> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                SpeedTestResult first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Collect until the batch is full or the flush interval since the first result has passed
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    SpeedTestResult next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown: write what was collected, then stop (the queue would only interrupt again)
+                Thread.currentThread().interrupt();
+                running = false;
+                break;
+            } finally {
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void flush(List<SpeedTestResult> batch) {
+        batchSizeSummary.record(batch.size());
+        batchTimer.record(() -> {
+            List<SpeedTestResult> stored = new ArrayList<>();
+            List<SpeedTestResult> unwritten = batch;
+            try {
+                // Results for a session that already has a stored result are skipped, not rewritten
+                ResultIngestionService.BatchResult batchResult = resultIngestionService.saveBatch(batch);
+                stored.addAll(batchResult.getStored());
+                unwritten = batchResult.getFailed();
+                if (!unwritten.isEmpty()) {
+                    // Retried once, as the failures are often transient; the writes are idempotent per result id
+                    ResultIngestionService.BatchResult retry = resultIngestionService.saveBatch(unwritten);
+                    stored.addAll(retry.getStored());
+                    unwritten = retry.getFailed();
+                }
+            } catch (Exception e) {
+                log.error("Write-behind batch of {} results failed: {}", unwritten.size(), e.getMessage(), e);
+            }
+            if (!unwritten.isEmpty()) {
+                failedCounter.increment(unwritten.size());
+                log.error("Write-behind: {} of {} results could not be written", unwritten.size(), batch.size());
+            }
+
+            writtenCounter.increment(stored.size());
+            if (!stored.isEmpty()) {
+                speedTestService.recordRollups(stored);
+            }
+            // Stored or duplicate, retries are now answered by ResultIngestionService; lost ones can be resubmitted
+            for (SpeedTestResult result : batch) {
+                if (result.getSessionId() != null) {
+                    pendingSessions.remove(result.getSessionId(), result.getId());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batcher == null) {
+            return;
+        }
+        submitGate.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            submitGate.writeLock().unlock();
+        }
+        try {
+            batcher.join(shutdownTimeoutMs);
+            if (batcher.isAlive()) {
+                log.warn("Write-behind batcher did not finish within {} ms; interrupting it", shutdownTimeoutMs);
+                batcher.interrupt();
+                batcher.join(shutdownTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // A flush next to a batcher still writing would run two bulk writes and race on pendingSessions
+        if (batcher.isAlive()) {
+            log.error("Write-behind batcher is still writing at shutdown; {} queued results will not be written",
+                    queue.size());
+            return;
+        }
+
+        // The batcher exits once the queue is empty, or after its current batch when interrupted
+        List<SpeedTestResult> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.webstats.service;
+
+import com.webstats.model.Organization;
+import com.webstats.model.SpeedTestMeasurement;
+import com.webstats.repository.OrganizationRepository;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Enforces data retention.
+ *
+ * Anonymous / "public" results and sessions expire through partial TTL indexes. Organizations
+ * get their own Organization.TestLimits.dataRetentionDays, enforced by a scheduled deleter that
+ * removes old documents by _id in small batches with a pause in between, so no single delete
+ * holds up the hot collections. Raw samples are purged sooner than the summaries: the
+ * time-series collection expires them, and samples packed onto a result are unset once their
+ * raw_expires_at has passed. Rollups are never purged.
+ *
+ * A run can pause for several seconds in total, so the scheduler pool is sized to give it a
+ * thread of its own (spring.task.scheduling.pool.size).
+ */
+@Service
+public class RetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionService.class);
+
+    private static final String RESULTS = "speed_test_results";
+    private static final String SESSIONS = "speed_test_sessions";
+    private static final String PUBLIC_ORGANIZATION = "public";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrganizationRepository organizationRepository;
+
+    @Value("${webstats.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${webstats.retention.public-days:30}")
+    private int publicRetentionDays;
+
+    @Value("${webstats.retention.raw-sample-days:7}")
+    private int rawSampleRetentionDays;
+
+    @Value("${webstats.retention.batch-size:500}")
+    private int batchSize;
+
+    @Value("${webstats.retention.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    @Value("${webstats.retention.max-batches-per-run:50}")
+    private int maxBatchesPerRun;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void applyTtlSettings() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Duration publicRetention = Duration.ofDays(publicRetentionDays);
+            ensureTtlIndex(RESULTS, "test_timestamp", "public_results_ttl", publicRetention);
+            ensureTtlIndex(SESSIONS, "session_start", "public_sessions_ttl", publicRetention);
+
+            mongoTemplate.executeCommand(new Document("collMod", SpeedTestMeasurement.COLLECTION)
+                    .append("expireAfterSeconds", Duration.ofDays(rawSampleRetentionDays).toSeconds()));
+        } catch (Exception e) {
+            log.warn("Could not apply retention TTL settings: {}", e.getMessage());
+        }
+    }
+
+    private void ensureTtlIndex(String collection, String field, String name, Duration expireAfter) {
+        Index index = new Index()
+                .on(field, Sort.Direction.ASC)
+                .expire(expireAfter)
+                .partial(PartialIndexFilter.of(Criteria.where("organization_id").is(PUBLIC_ORGANIZATION)))
+                .named(name);
+        try {
+            mongoTemplate.indexOps(collection).ensureIndex(index);
+        } catch (Exception e) {
+            // The index exists with another expiry: change it in place rather than rebuilding
+            mongoTemplate.executeCommand(new Document("collMod", collection)
+                    .append("index", new Document("name", name)
+                            .append("expireAfterSeconds", expireAfter.toSeconds())));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webstats.retention.interval-ms:3600000}",
+            initialDelayString = "${webstats.retention.initial-delay-ms:60000}")
+    public void enforceRetention() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            int budget = maxBatchesPerRun;
+            budget -= purgeExpiredRawSeries(budget);
+
+            for (Organization organization : organizationRepository.findAll()) {
+                if (budget <= 0) {
+                    break; // Continue with the remaining organizations on the next run
+                }
+                Organization.TestLimits limits = organization.getTestLimits();
+                if (limits == null || limits.getDataRetentionDays() == null || limits.getDataRetentionDays() <= 0) {
+                    continue;
+                }
+
+                LocalDateTime cutoff = LocalDateTime.now().minusDays(limits.getDataRetentionDays());
+                budget -= purgeOrganizationResults(organization.getId(), cutoff, budget);
+                budget -= purgeOrganizationSessions(organization.getId(), cutoff, budget);
+            }
+        } catch (Exception e) {
+            log.error("Retention run failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private int purgeExpiredRawSeries(int maxBatches) {
+        int batches = 0;
+        while (batches < maxBatches) {
+            List<Object> ids = findIdBatch(RESULTS, Criteria.where("raw_expires_at").lt(LocalDateTime.now()));
+            if (ids.isEmpty()) {
+                break;
+            }
+            mongoTemplate.updateMulti(new Query(Criteria.where("_id").in(ids)),
+                    new Update().unset("raw_series").unset("raw_expires_at"), RESULTS);
+            batches++;
+            pause();
+        }
+        return batches;
+    }
+
+    private int purgeOrganizationResults(String organizationId, LocalDateTime cutoff, int maxBatches) {
+        int batches = 0;
+        long deleted = 0;
+        while (batches < maxBatches) {
+            List<Object> ids = findIdBatch(RESULTS, Criteria.where("organization_id").is(organizationId)
+                    .and("test_timestamp").lt(cutoff));
+            if (ids.isEmpty()) {
+                break;
+            }
+            // Samples first, so a partial run never leaves samples without their result
+            List<String> resultIds = ids.stream().map(Object::toString).toList();
+            mongoTemplate.remove(new Query(Criteria.where("meta.result_id").in(resultIds)), SpeedTestMeasurement.COLLECTION);
+            deleted += mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), RESULTS).getDeletedCount();
+            batches++;
+            pause();
+        }
+        if (deleted > 0) {
+            log.info("Retention: removed {} results of organization {}", deleted, organizationId);
+        }
+        return batches;
+    }
+
+    private int purgeOrganizationSessions(String organizationId, LocalDateTime cutoff, int maxBatches) {
+        int batches = 0;
+        while (batches < maxBatches) {
+            List<Object> ids = findIdBatch(SESSIONS, Criteria.where("organization_id").is(organizationId)
+                    .and("session_start").lt(cutoff));
+            if (ids.isEmpty()) {
+                break;
+            }
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(ids)), SESSIONS);
+            batches++;
+            pause();
+        }
+        return batches;
+    }
+
+    private List<Object> findIdBatch(String collection, Criteria criteria) {
+        Query query = new Query(criteria).limit(batchSize);
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Document.class, collection).stream()
+                .map(document -> document.get("_id"))
+                .toList();
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(batchPauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
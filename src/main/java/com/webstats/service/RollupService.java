@@ -0,0 +1,357 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestResult;
+import com.webstats.model.SpeedTestRollup;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Maintains hourly and daily rollups per user, organization and server.
+ * Every stored result is folded in with a single unordered bulk of $inc/$min/$max upserts,
+ * so dashboards never have to re-read raw results.
+ */
+@Service
+public class RollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+
+    // Relative accuracy of the sketch: bucket i covers (GAMMA^(i-1), GAMMA^i]
+    private static final double SKETCH_GAMMA = 1.05;
+    private static final double LOG_GAMMA = Math.log(SKETCH_GAMMA);
+    private static final int BACKFILL_BATCH_SIZE = 500;
+    private static final String BACKFILL_COLLECTION = "rollup_backfill";
+    private static final String BACKFILL_STATE_ID = "results";
+    private static final Duration BACKFILL_LEASE = Duration.ofMinutes(5);
+    private static final List<String> METRICS = List.of("download", "upload", "latency");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    public void recordResult(SpeedTestResult result) {
+        recordResults(List.of(result));
+    }
+
+    public void recordResults(Collection<SpeedTestResult> results) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SpeedTestRollup.COLLECTION);
+        int operations = 0;
+
+        for (SpeedTestResult result : results) {
+            LocalDateTime timestamp = result.getTestTimestamp() != null ? result.getTestTimestamp() : LocalDateTime.now();
+            for (SpeedTestRollup.Granularity granularity : SpeedTestRollup.Granularity.values()) {
+                operations += addUpsert(bulkOps, SpeedTestRollup.Scope.USER, result.getUserId(), granularity, timestamp, result);
+                operations += addUpsert(bulkOps, SpeedTestRollup.Scope.ORGANIZATION, result.getOrganizationId(), granularity, timestamp, result);
+                if (result.getServerInfo() != null) {
+                    operations += addUpsert(bulkOps, SpeedTestRollup.Scope.SERVER, result.getServerInfo().getServerId(), granularity, timestamp, result);
+                }
+            }
+        }
+
+        if (operations > 0) {
+            bulkOps.execute();
+        }
+    }
+
+    /**
+     * One-off backfill for results stored before rollups existed, started in the background once
+     * the application is ready. Its state document records the cutoff (results stored from then on
+     * are rolled up as they arrive), the last result folded in, and completion, so a restarted
+     * backfill resumes where it stopped and a finished one never runs again. A lease keeps it to
+     * one instance at a time. The checkpoint is moved past a batch before the batch is applied:
+     * a crash can lose at most one batch, but no result is ever counted twice.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfMissing() {
+        boolean rollupsExist;
+        try {
+            // Checked before results arrive and create the collection
+            rollupsExist = mongoTemplate.collectionExists(SpeedTestRollup.COLLECTION);
+        } catch (Exception e) {
+            log.error("Rollup backfill not started: {}", e.getMessage(), e);
+            return;
+        }
+        Thread.ofPlatform().name("rollup-backfill").daemon().start(() -> {
+            try {
+                backfill(rollupsExist);
+            } catch (Exception e) {
+                log.error("Rollup backfill failed: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    private void backfill(boolean rollupsExist) {
+        Document state = mongoTemplate.findById(BACKFILL_STATE_ID, Document.class, BACKFILL_COLLECTION);
+        if (state == null) {
+            // Rollups that exist without a backfill state were backfilled before it was tracked
+            Update create = new Update()
+                    .setOnInsert("cutoff", LocalDateTime.now())
+                    .setOnInsert("completed", rollupsExist);
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(BACKFILL_STATE_ID)), create, BACKFILL_COLLECTION);
+            state = mongoTemplate.findById(BACKFILL_STATE_ID, Document.class, BACKFILL_COLLECTION);
+        }
+        if (state == null || state.getBoolean("completed", false)) {
+            return;
+        }
+
+        String owner = UUID.randomUUID().toString();
+        if (!renewBackfillLease(owner)) {
+            log.info("Rollup backfill is running on another instance");
+            return;
+        }
+
+        Date cutoff = state.getDate("cutoff");
+        ObjectId lastId = state.getObjectId("last_result_id");
+        long backfilled = 0;
+        while (true) {
+            Criteria criteria = Criteria.where("testTimestamp").lt(cutoff);
+            if (lastId != null) {
+                criteria = criteria.and("id").gt(lastId);
+            }
+            Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "id")).limit(BACKFILL_BATCH_SIZE);
+            query.fields().include("userId", "organizationId", "testTimestamp", "serverInfo.serverId",
+                    "downloadMetrics.speedMbps", "downloadMetrics.partial", "uploadMetrics.speedMbps", "uploadMetrics.partial",
+                    "latencyMetrics.pingMs");
+            List<SpeedTestResult> batch = mongoTemplate.find(query, SpeedTestResult.class);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            lastId = new ObjectId(batch.get(batch.size() - 1).getId());
+            if (!advanceBackfill(owner, lastId)) {
+                log.warn("Rollup backfill lost its lease after {} results; another instance continues", backfilled);
+                return;
+            }
+            recordResults(batch);
+            backfilled += batch.size();
+        }
+
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(BACKFILL_STATE_ID).and("lease_owner").is(owner)),
+                new Update().set("completed", true).unset("lease_owner").unset("lease_until"), BACKFILL_COLLECTION);
+        log.info("Rollup backfill completed: {} results", backfilled);
+    }
+
+    // Takes the lease if it is free, expired or already ours
+    private boolean renewBackfillLease(String owner) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(Criteria.where("_id").is(BACKFILL_STATE_ID).and("completed").is(false)
+                .orOperator(Criteria.where("lease_owner").is(owner),
+                        Criteria.where("lease_owner").exists(false),
+                        Criteria.where("lease_until").lt(now)));
+        Update update = new Update().set("lease_owner", owner).set("lease_until", now.plus(BACKFILL_LEASE));
+        return mongoTemplate.updateFirst(query, update, BACKFILL_COLLECTION).getMatchedCount() > 0;
+    }
+
+    // Renews the lease and moves the checkpoint in one update, only while the lease is ours
+    private boolean advanceBackfill(String owner, ObjectId lastId) {
+        Query query = new Query(Criteria.where("_id").is(BACKFILL_STATE_ID).and("lease_owner").is(owner));
+        Update update = new Update()
+                .set("last_result_id", lastId)
+                .set("lease_until", LocalDateTime.now().plus(BACKFILL_LEASE));
+        return mongoTemplate.updateFirst(query, update, BACKFILL_COLLECTION).getMatchedCount() > 0;
+    }
+
+    private int addUpsert(BulkOperations bulkOps, SpeedTestRollup.Scope scope, String scopeId,
+                          SpeedTestRollup.Granularity granularity, LocalDateTime timestamp, SpeedTestResult result) {
+        if (scopeId == null || scopeId.isEmpty()) {
+            return 0;
+        }
+
+        LocalDateTime bucketStart = granularity.bucketStart(timestamp);
+
+        Update update = new Update()
+                .setOnInsert("scope", scope.name())
+                .setOnInsert("scope_id", scopeId)
+                .setOnInsert("granularity", granularity.name())
+                .setOnInsert("bucket_start", bucketStart)
+                .inc("test_count", 1L)
+                .min("first_test", timestamp)
+                .max("last_test", timestamp);
+
+        // A phase cut short by a failure is averaged over fewer runs; the test still counts, its speed does not
+        if (isComplete(result.getDownloadMetrics())) {
+            addMetric(update, "download", result.getDownloadMetrics().getSpeedMbps());
+        }
+        if (isComplete(result.getUploadMetrics())) {
+            addMetric(update, "upload", result.getUploadMetrics().getSpeedMbps());
+        }
+        if (result.getLatencyMetrics() != null) {
+            addMetric(update, "latency", result.getLatencyMetrics().getPingMs());
+        }
+
+        Query query = new Query(Criteria.where("_id").is(rollupId(scope, scopeId, granularity, bucketStart)));
+        bulkOps.upsert(query, update);
+        return 1;
+    }
+
+    static boolean isComplete(SpeedTestResult.SpeedMetrics metrics) {
+        return metrics != null && !Boolean.TRUE.equals(metrics.getPartial());
+    }
+
+    private void addMetric(Update update, String field, Double value) {
+        // Failed measurements are stored as 0 or -1 and must not skew the aggregates
+        if (value == null || value <= 0 || value.isNaN() || value.isInfinite()) {
+            return;
+        }
+        update.inc(field + ".count", 1L)
+                .inc(field + ".sum", value)
+                .min(field + ".min", value)
+                .max(field + ".max", value)
+                .inc(field + ".sketch." + sketchIndex(value), 1L);
+    }
+
+    public static String rollupId(SpeedTestRollup.Scope scope, String scopeId,
+                                  SpeedTestRollup.Granularity granularity, LocalDateTime bucketStart) {
+        return scope.name() + ":" + scopeId + ":" + granularity.name() + ":" + bucketStart;
+    }
+
+    public List<SpeedTestRollup> findRollups(SpeedTestRollup.Scope scope, String scopeId,
+                                             SpeedTestRollup.Granularity granularity,
+                                             LocalDateTime startDate, LocalDateTime endDate) {
+        Criteria criteria = Criteria.where("scope").is(scope.name())
+                .and("scope_id").is(scopeId)
+                .and("granularity").is(granularity.name());
+
+        if (startDate != null || endDate != null) {
+            Criteria bucketCriteria = criteria.and("bucket_start");
+            if (startDate != null) {
+                bucketCriteria.gte(granularity.bucketStart(startDate));
+            }
+            if (endDate != null) {
+                bucketCriteria.lte(endDate);
+            }
+        }
+
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "bucket_start"));
+        return mongoTemplate.find(query, SpeedTestRollup.class, SpeedTestRollup.COLLECTION);
+    }
+
+    /**
+     * Totals every bucket of a scope in a single aggregation, e.g. all daily buckets of a user
+     * into an all-time summary. Only one document comes back, however many buckets exist.
+     */
+    public SpeedTestRollup aggregateRollups(SpeedTestRollup.Scope scope, String scopeId,
+                                            SpeedTestRollup.Granularity granularity) {
+        Document totals = new Document("_id", null)
+                .append("test_count", new Document("$sum", "$test_count"))
+                .append("first_test", new Document("$min", "$first_test"))
+                .append("last_test", new Document("$max", "$last_test"));
+
+        Document facets = new Document("totals", List.of(new Document("$group", totals)));
+        for (String metric : METRICS) {
+            totals.append(metric + "_count", new Document("$sum", "$" + metric + ".count"))
+                    .append(metric + "_sum", new Document("$sum", "$" + metric + ".sum"))
+                    .append(metric + "_min", new Document("$min", "$" + metric + ".min"))
+                    .append(metric + "_max", new Document("$max", "$" + metric + ".max"));
+
+            // Sketches merge by summing counts per bucket index
+            facets.append(metric + "_sketch", List.of(
+                    new Document("$project", new Document("bucket", new Document("$objectToArray", "$" + metric + ".sketch"))),
+                    new Document("$unwind", "$bucket"),
+                    new Document("$group", new Document("_id", "$bucket.k").append("count", new Document("$sum", "$bucket.v")))));
+        }
+
+        List<Document> pipeline = List.of(
+                new Document("$match", new Document("scope", scope.name())
+                        .append("scope_id", scopeId)
+                        .append("granularity", granularity.name())),
+                new Document("$facet", facets));
+
+        Document result = mongoTemplate.getCollection(SpeedTestRollup.COLLECTION).aggregate(pipeline).first();
+
+        SpeedTestRollup summary = new SpeedTestRollup();
+        summary.setScope(scope);
+        summary.setScopeId(scopeId);
+        summary.setGranularity(granularity);
+        summary.setTestCount(0L);
+
+        List<Document> totalsList = result != null ? result.getList("totals", Document.class) : List.of();
+        if (totalsList.isEmpty()) {
+            return summary;
+        }
+
+        Document total = totalsList.get(0);
+        summary.setTestCount(toLong(total.get("test_count")));
+        summary.setFirstTest(toLocalDateTime(total.getDate("first_test")));
+        summary.setLastTest(toLocalDateTime(total.getDate("last_test")));
+        summary.setDownload(toMetricRollup(total, result, "download"));
+        summary.setUpload(toMetricRollup(total, result, "upload"));
+        summary.setLatency(toMetricRollup(total, result, "latency"));
+        return summary;
+    }
+
+    private SpeedTestRollup.MetricRollup toMetricRollup(Document total, Document result, String metric) {
+        SpeedTestRollup.MetricRollup rollup = new SpeedTestRollup.MetricRollup();
+        rollup.setCount(toLong(total.get(metric + "_count")));
+        if (rollup.getCount() == 0) {
+            return rollup;
+        }
+        rollup.setSum(((Number) total.get(metric + "_sum")).doubleValue());
+        rollup.setMin(((Number) total.get(metric + "_min")).doubleValue());
+        rollup.setMax(((Number) total.get(metric + "_max")).doubleValue());
+        for (Document bucket : result.getList(metric + "_sketch", Document.class)) {
+            rollup.getSketch().put(bucket.getString("_id"), toLong(bucket.get("count")));
+        }
+        return rollup;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date) {
+        // Same zone Spring Data uses when it stores LocalDateTime values
+        return date != null ? LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
+
+    public static int sketchIndex(double value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    /**
+     * Estimates a quantile (0-1) from a rollup sketch, within the sketch's relative accuracy.
+     */
+    public static Double estimateQuantile(Map<String, Long> sketch, double quantile) {
+        if (sketch == null || sketch.isEmpty()) {
+            return null;
+        }
+
+        TreeMap<Integer, Long> ordered = new TreeMap<>();
+        long total = 0;
+        for (Map.Entry<String, Long> entry : sketch.entrySet()) {
+            ordered.merge(Integer.parseInt(entry.getKey()), entry.getValue(), Long::sum);
+            total += entry.getValue();
+        }
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (Map.Entry<Integer, Long> entry : ordered.entrySet()) {
+            seen += entry.getValue();
+            if (seen >= rank) {
+                // Midpoint of the bucket (GAMMA^(i-1), GAMMA^i]
+                return 2.0 * Math.pow(SKETCH_GAMMA, entry.getKey()) / (1.0 + SKETCH_GAMMA);
+            }
+        }
+        return Math.pow(SKETCH_GAMMA, ordered.lastKey());
+    }
+}
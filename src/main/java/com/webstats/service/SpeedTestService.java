@@ -1,28 +1,44 @@
 package com.webstats.service;
 
+import com.webstats.cache.TtlCache;
+import com.webstats.config.ExecutorConfig;
 import com.webstats.dto.SpeedTestRequestDto;
 import com.webstats.dto.SpeedTestResponseDto;
 import com.webstats.dto.SpeedTestHistoryDto;
+import com.webstats.logging.CorrelationIdFilter;
+import com.webstats.metrics.SpeedTestMetrics;
 import com.webstats.model.SpeedTestResult;
+import com.webstats.model.SpeedTestResultSummary;
+import com.webstats.model.SpeedTestRollup;
 import com.webstats.model.SpeedTestSession;
 import com.webstats.model.User;
 import com.webstats.model.Organization;
 import com.webstats.repository.SpeedTestResultRepository;
 import com.webstats.repository.SpeedTestSessionRepository;
-import com.webstats.repository.UserRepository;
-import com.webstats.repository.OrganizationRepository;
-import jakarta.servlet.http.HttpServletRequest;
+import com.webstats.tracing.SpeedTestObservations;
+import io.micrometer.observation.Observation;
+import jakarta.annotation.PostConstruct;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Service
 public class SpeedTestService {
+
+    private static final Logger log = LoggerFactory.getLogger(SpeedTestService.class);
     
     @Autowired
     private SpeedTestResultRepository speedTestResultRepository;
@@ -31,10 +47,21 @@ public class SpeedTestService {
     private SpeedTestSessionRepository speedTestSessionRepository;
     
     @Autowired
-    private UserRepository userRepository;
+    private AccountCacheService accountCacheService;
+    
+    @Autowired
+    private TestAdmissionService testAdmissionService;
     
     @Autowired
-    private OrganizationRepository organizationRepository;
+    private BandwidthBudgetService bandwidthBudgetService;
+    
+    @Autowired
+    @Qualifier(ExecutorConfig.PERSISTENCE)
+    private Executor persistenceExecutor;
+    
+    @Autowired
+    @Qualifier(ExecutorConfig.ORCHESTRATION)
+    private Executor orchestrationExecutor;
     
     @Autowired
     private StatisticalAnalysisService statisticalAnalysisService;
@@ -48,8 +75,43 @@ public class SpeedTestService {
     @Autowired
     private UploadTestService uploadTestService;
     
+    @Autowired
+    private RollupService rollupService;
+    
+    @Autowired
+    private MeasurementStorageService measurementStorageService;
+    
+    @Autowired
+    private SpeedTestMetrics speedTestMetrics;
+    
+    @Autowired
+    private SpeedTestObservations speedTestObservations;
+    
+    @Value("${webstats.speedtest.latency.host:8.8.8.8}")
+    private String latencyHost;
+    
+    @Value("${webstats.speedtest.latency.port:53}")
+    private int latencyPort;
+    
+    // Explicit test mode: download and upload phases report generated figures instead of measuring
+    @Value("${webstats.speedtest.simulation.enabled:false}")
+    private boolean simulationEnabled;
+    
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+    
+    // Analytics summaries are cheap to rebuild from rollups but are polled by every dashboard view
+    private final TtlCache<String, Map<String, Object>> analyticsSummaryCache =
+            new TtlCache<>(10_000, Duration.ofSeconds(30));
+    
+    @PostConstruct
+    void warnIfSimulating() {
+        if (simulationEnabled) {
+            log.warn("speedtest.simulation.enabled: download and upload results are generated, not measured");
+        }
+    }
+    
     public CompletableFuture<SpeedTestResponseDto> initiateSpeedTest(
-            SpeedTestRequestDto request, String userId, HttpServletRequest httpRequest) {
+            SpeedTestRequestDto request, String userId, SpeedTestResult.ClientInfo clientInfo) {
         
         return CompletableFuture.supplyAsync(() -> {
             try {
@@ -58,25 +120,64 @@ public class SpeedTestService {
                 Organization organization = null;
                 
                 if (userId != null && !userId.isEmpty() && !userId.equals("anonymous")) {
-                    Optional<User> userOpt = userRepository.findById(userId);
+                    Optional<User> userOpt = accountCacheService.findUser(userId);
                     if (userOpt.isPresent()) {
                         user = userOpt.get();
-                        Optional<Organization> orgOpt = organizationRepository.findById(user.getOrganizationId());
+                        Optional<Organization> orgOpt = accountCacheService.findOrganization(user.getOrganizationId());
                         organization = orgOpt.orElse(null);
                     }
                 }
                 
-                // Check if user has active sessions (only for authenticated users)
-                if (user != null) {
-                    List<SpeedTestSession> activeSessions = speedTestSessionRepository.findActiveSessionsByUserId(userId);
-                    if (!activeSessions.isEmpty()) {
-                        throw new RuntimeException("User already has an active speed test session");
+                // Concurrent and daily limits are checked in memory, before any session is written
+                testAdmissionService.admit(user != null ? user.getId() : null, organization);
+                
+                // Create new session; the id is assigned up front so the test can be queued before it is written
+                SpeedTestSession session = createNewSession(request, user, organization, clientInfo);
+                session.setId(new ObjectId().toHexString());
+                String sessionId = session.getId();
+                String sessionUserId = session.getUserId();
+                String sessionOrganizationId = session.getOrganizationId();
+                
+                // The test starts (now, or when it leaves the bandwidth queue) only once the session is stored
+                CompletableFuture<Void> sessionStored = new CompletableFuture<>();
+                Runnable startTest = () -> sessionStored.whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        performSpeedTestAsync(sessionId, sessionUserId, sessionOrganizationId, request);
+                    } else {
+                        bandwidthBudgetService.release(0);
                     }
+                });
+                
+                BandwidthBudgetService.Admission admission;
+                try {
+                    admission = bandwidthBudgetService.admit(sessionId, startTest);
+                } catch (BandwidthBudgetService.BandwidthExhaustedException e) {
+                    testAdmissionService.cancel(sessionUserId, sessionOrganizationId);
+                    throw e;
+                }
+                if (!admission.isStarted()) {
+                    session.setStatus(SpeedTestSession.SessionStatus.QUEUED);
                 }
                 
-                // Create new session
-                SpeedTestSession session = createNewSession(request, user, organization, httpRequest);
-                session = speedTestSessionRepository.save(session);
+                try {
+                    // insert, not save: with the id already assigned, save would be an upsert
+                    session = speedTestSessionRepository.insert(session);
+                } catch (RuntimeException e) {
+                    testAdmissionService.cancel(sessionUserId, sessionOrganizationId);
+                    if (admission.isStarted()) {
+                        // Already holds a running slot; startTest's error branch gives it back
+                        startTest.run();
+                    } else {
+                        // Still queued, or dispatched meanwhile, in which case startTest releases the slot
+                        bandwidthBudgetService.cancel(sessionId);
+                    }
+                    sessionStored.completeExceptionally(e);
+                    throw e;
+                }
+                sessionStored.complete(null);
+                if (admission.isStarted()) {
+                    startTest.run();
+                }
                 
                 // Create response DTO
                 SpeedTestResponseDto response = new SpeedTestResponseDto();
@@ -85,19 +186,22 @@ public class SpeedTestService {
                 response.setCurrentPhase(session.getCurrentPhase());
                 response.setProgressPercentage(session.getProgressPercentage());
                 response.setTestTimestamp(session.getSessionStart());
-                
-                // Start the actual speed test asynchronously
-                performSpeedTestAsync(session.getId(), request);
+                if (!admission.isStarted()) {
+                    response.setQueuePosition(admission.getQueuePosition());
+                    response.setEstimatedWaitSeconds(admission.getEstimatedWaitSeconds());
+                }
                 
                 return response;
                 
+            } catch (TestAdmissionService.AdmissionRejectedException | BandwidthBudgetService.BandwidthExhaustedException e) {
+                throw e;
             } catch (Exception e) {
                 throw new RuntimeException("Failed to initiate speed test: " + e.getMessage());
             }
-        });
+        }, persistenceExecutor);
     }
     
-    private SpeedTestSession createNewSession(SpeedTestRequestDto request, User user, Organization organization, HttpServletRequest httpRequest) {
+    private SpeedTestSession createNewSession(SpeedTestRequestDto request, User user, Organization organization, SpeedTestResult.ClientInfo clientInfo) {
         SpeedTestSession session = new SpeedTestSession();
         
         // Handle anonymous users
@@ -116,10 +220,7 @@ public class SpeedTestService {
         config.setTestFileSizeMb(request.getTestFileSizeMb());
         session.setTestConfiguration(config);
         
-        // Set client info
-        SpeedTestResult.ClientInfo clientInfo = new SpeedTestResult.ClientInfo();
-        clientInfo.setIpAddress(getClientIpAddress(httpRequest));
-        clientInfo.setUserAgent(httpRequest.getHeader("User-Agent"));
+        // Client info is captured by the controller on the request thread
         session.setClientInfo(clientInfo);
         
         // Set server info (simplified)
@@ -132,77 +233,133 @@ public class SpeedTestService {
         return session;
     }
     
-    private void performSpeedTestAsync(String sessionId, SpeedTestRequestDto request) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                SpeedTestSession session = speedTestSessionRepository.findById(sessionId).orElse(null);
-                if (session == null) return;
-                
-                // Update session status
-                session.setStatus(SpeedTestSession.SessionStatus.RUNNING);
-                session.setCurrentPhase(SpeedTestSession.TestPhase.LATENCY_TEST);
-                session.setProgressPercentage(10);
+    private void performSpeedTestAsync(String sessionId, String userId, String organizationId, SpeedTestRequestDto request) {
+        try {
+            CompletableFuture.runAsync(() -> runSpeedTest(sessionId, userId, organizationId, request), orchestrationExecutor);
+        } catch (RejectedExecutionException e) {
+            testAdmissionService.release(userId, organizationId);
+            bandwidthBudgetService.release(0);
+            failSession(sessionId, "Server is busy, please retry the test");
+        }
+    }
+    
+    private void runSpeedTest(String sessionId, String userId, String organizationId, SpeedTestRequestDto request) {
+        long startNanos = System.nanoTime();
+        // Carried into the transfer and probe tasks by the executors' task decorator
+        MDC.put(CorrelationIdFilter.SESSION_ID, sessionId);
+        SpeedTestResult.TestConfiguration.TestType type = request.getTestType();
+        SpeedTestSession.TestPhase phase = SpeedTestSession.TestPhase.INITIALIZATION;
+        boolean started = false;
+        Observation testObservation = speedTestObservations.test(type).start();
+        try (Observation.Scope scope = testObservation.openScope()) {
+            SpeedTestSession session = speedTestSessionRepository.findById(sessionId).orElse(null);
+            // Gone, or reaped while it was waiting in the bandwidth queue
+            if (session == null || session.getStatus() == SpeedTestSession.SessionStatus.FAILED
+                    || session.getStatus() == SpeedTestSession.SessionStatus.CANCELLED) {
+                return;
+            }
+            
+            // Update session status
+            session.setStatus(SpeedTestSession.SessionStatus.RUNNING);
+            session.setCurrentPhase(SpeedTestSession.TestPhase.LATENCY_TEST);
+            session.setProgressPercentage(10);
+            speedTestSessionRepository.save(session);
+            speedTestMetrics.testStarted(type);
+            started = true;
+            
+            SpeedTestResult result = new SpeedTestResult();
+            result.setUserId(session.getUserId());
+            result.setOrganizationId(session.getOrganizationId());
+            result.setSessionId(sessionId);
+            result.setClientInfo(session.getClientInfo());
+            result.setServerInfo(session.getServerInfo());
+            result.setTestConfiguration(session.getTestConfiguration());
+            
+            List<SpeedTestResult.RawMeasurement> allMeasurements = new ArrayList<>();
+            
+            // Phase 1: Latency Test
+            if (shouldRunTest(request.getTestType(), "LATENCY")) {
+                phase = SpeedTestSession.TestPhase.LATENCY_TEST;
+                speedTestObservations.phase(phase, type)
+                        .observe(() -> performLatencyTest(session, result, allMeasurements));
+            }
+            
+            // Phase 2: Download Test
+            if (shouldRunTest(request.getTestType(), "DOWNLOAD")) {
+                phase = SpeedTestSession.TestPhase.DOWNLOAD_TEST;
+                session.setCurrentPhase(phase);
+                session.setProgressPercentage(40);
                 speedTestSessionRepository.save(session);
-                
-                SpeedTestResult result = new SpeedTestResult();
-                result.setUserId(session.getUserId());
-                result.setOrganizationId(session.getOrganizationId());
-                result.setSessionId(sessionId);
-                result.setClientInfo(session.getClientInfo());
-                result.setServerInfo(session.getServerInfo());
-                result.setTestConfiguration(session.getTestConfiguration());
-                
-                List<SpeedTestResult.RawMeasurement> allMeasurements = new ArrayList<>();
-                
-                // Phase 1: Latency Test
-                if (shouldRunTest(request.getTestType(), "LATENCY")) {
-                    performLatencyTest(session, result, allMeasurements);
-                }
-                
-                // Phase 2: Download Test
-                if (shouldRunTest(request.getTestType(), "DOWNLOAD")) {
-                    session.setCurrentPhase(SpeedTestSession.TestPhase.DOWNLOAD_TEST);
-                    session.setProgressPercentage(40);
-                    speedTestSessionRepository.save(session);
-                    performDownloadTest(session, result, allMeasurements);
-                }
-                
-                // Phase 3: Upload Test
-                if (shouldRunTest(request.getTestType(), "UPLOAD")) {
-                    session.setCurrentPhase(SpeedTestSession.TestPhase.UPLOAD_TEST);
-                    session.setProgressPercentage(70);
-                    speedTestSessionRepository.save(session);
-                    performUploadTest(session, result, allMeasurements);
-                }
-                
-                // Phase 4: Analysis
-                session.setCurrentPhase(SpeedTestSession.TestPhase.ANALYSIS);
-                session.setProgressPercentage(90);
+                speedTestObservations.phase(phase, type)
+                        .observe(() -> performDownloadTest(session, result, allMeasurements));
+            }
+            
+            // Phase 3: Upload Test
+            if (shouldRunTest(request.getTestType(), "UPLOAD")) {
+                phase = SpeedTestSession.TestPhase.UPLOAD_TEST;
+                session.setCurrentPhase(phase);
+                session.setProgressPercentage(70);
                 speedTestSessionRepository.save(session);
-                performStatisticalAnalysis(result, allMeasurements);
-                
-                // Save results
-                result.setRawMeasurements(allMeasurements);
+                speedTestObservations.phase(phase, type)
+                        .observe(() -> performUploadTest(session, result, allMeasurements));
+            }
+            
+            // Nothing was measured; an empty result would only skew history and rollups
+            if (result.getLatencyMetrics() == null && result.getDownloadMetrics() == null
+                    && result.getUploadMetrics() == null && result.getPhaseErrors() != null) {
+                SpeedTestResult.PhaseError lastError = result.getPhaseErrors().get(result.getPhaseErrors().size() - 1);
+                throw new MeasurementException(lastError.getCode(), "No phase could be measured: " + result.getPhaseErrors().stream()
+                        .map(error -> error.getPhase() + " " + error.getCode())
+                        .collect(Collectors.joining(", ")));
+            }
+            
+            // Phase 4: Analysis
+            phase = SpeedTestSession.TestPhase.ANALYSIS;
+            session.setCurrentPhase(phase);
+            session.setProgressPercentage(90);
+            speedTestSessionRepository.save(session);
+            speedTestObservations.phase(phase, type)
+                    .observe(() -> performStatisticalAnalysis(result, allMeasurements));
+            
+            // Save results; raw samples go to the time-series collection, the result keeps the summaries
+            speedTestObservations.phase("persistence", type).observe(() -> {
+                measurementStorageService.attachMeasurements(result, allMeasurements);
                 speedTestResultRepository.save(result);
-                
-                // Complete session
-                session.setStatus(SpeedTestSession.SessionStatus.COMPLETED);
-                session.setCurrentPhase(SpeedTestSession.TestPhase.COMPLETED);
-                session.setProgressPercentage(100);
-                session.setSessionEnd(LocalDateTime.now());
-                speedTestSessionRepository.save(session);
-                
-            } catch (Exception e) {
-                // Handle error
-                SpeedTestSession session = speedTestSessionRepository.findById(sessionId).orElse(null);
-                if (session != null) {
-                    session.setStatus(SpeedTestSession.SessionStatus.FAILED);
-                    session.setErrorMessage(e.getMessage());
-                    session.setSessionEnd(LocalDateTime.now());
-                    speedTestSessionRepository.save(session);
-                }
+                measurementStorageService.saveMeasurements(result, allMeasurements);
+                recordRollups(result);
+            });
+            
+            // Complete session
+            session.setStatus(SpeedTestSession.SessionStatus.COMPLETED);
+            session.setCurrentPhase(SpeedTestSession.TestPhase.COMPLETED);
+            session.setProgressPercentage(100);
+            session.setSessionEnd(LocalDateTime.now());
+            speedTestSessionRepository.save(session);
+            speedTestMetrics.testCompleted(type);
+            
+        } catch (Exception e) {
+            testObservation.error(e);
+            log.warn("speedtest.failed phase={} error=\"{}\"", phase, e.getMessage(), e);
+            if (started) {
+                speedTestMetrics.testFailed(type, phase);
             }
-        });
+            failSession(sessionId, e.getMessage());
+        } finally {
+            testObservation.stop();
+            testAdmissionService.release(userId, organizationId);
+            bandwidthBudgetService.release((System.nanoTime() - startNanos) / 1e9);
+            MDC.remove(CorrelationIdFilter.SESSION_ID);
+        }
+    }
+    
+    private void failSession(String sessionId, String errorMessage) {
+        SpeedTestSession session = speedTestSessionRepository.findById(sessionId).orElse(null);
+        if (session != null) {
+            session.setStatus(SpeedTestSession.SessionStatus.FAILED);
+            session.setErrorMessage(errorMessage);
+            session.setSessionEnd(LocalDateTime.now());
+            speedTestSessionRepository.save(session);
+        }
     }
     
     private boolean shouldRunTest(SpeedTestResult.TestConfiguration.TestType testType, String phase) {
@@ -214,11 +371,8 @@ public class SpeedTestService {
     
     private void performLatencyTest(SpeedTestSession session, SpeedTestResult result, List<SpeedTestResult.RawMeasurement> measurements) {
         try {
-            String host = "8.8.8.8"; // Google DNS for testing
-            int port = 53;
-
             SpeedTestResult.LatencyMetrics latencyMetrics = latencyMeasurementService
-                    .measureLatency(host, port).get();
+                    .measureLatency(latencyHost, latencyPort).get();
 
             result.setLatencyMetrics(latencyMetrics);
 
@@ -228,99 +382,132 @@ public class SpeedTestService {
 
             // Add raw measurements
             List<SpeedTestResult.RawMeasurement> latencyMeasurements = latencyMeasurementService
-                    .performMultipleLatencyRuns(host, port, session.getTestConfiguration().getNumberOfRuns()).get();
+                    .performMultipleLatencyRuns(latencyHost, latencyPort, session.getTestConfiguration().getNumberOfRuns()).get();
             measurements.addAll(latencyMeasurements);
 
         } catch (Exception e) {
-            // Create default latency metrics on failure
-            SpeedTestResult.LatencyMetrics defaultMetrics = new SpeedTestResult.LatencyMetrics();
-            defaultMetrics.setPingMs(-1.0);
-            result.setLatencyMetrics(defaultMetrics);
-            session.setLatencyMetrics(defaultMetrics);
-            speedTestSessionRepository.save(session);
+            recordPhaseError(session, result, SpeedTestSession.TestPhase.LATENCY_TEST, measurementFailure(e),
+                    result.getLatencyMetrics() != null);
         }
     }
     
     private void performDownloadTest(SpeedTestSession session, SpeedTestResult result, List<SpeedTestResult.RawMeasurement> measurements) {
+        if (simulationEnabled) {
+            SpeedTestResult.SpeedMetrics downloadMetrics = simulateSpeedTest("download", session.getTestConfiguration());
+            result.setDownloadMetrics(downloadMetrics);
+            session.setDownloadMetrics(downloadMetrics);
+            speedTestSessionRepository.save(session);
+            measurements.addAll(simulateMeasurements(SpeedTestResult.RawMeasurement.MeasurementType.DOWNLOAD_SPEED,
+                    downloadMetrics, 10, session.getTestConfiguration()));
+            return;
+        }
         try {
             // Use actual download test service
-            SpeedTestResult.SpeedMetrics downloadMetrics = downloadTestService
-                    .performDownloadTest(session.getTestConfiguration()).get();
+            PhaseMeasurement measurement = downloadTestService.performDownloadTest(session.getTestConfiguration()).get();
+            SpeedTestResult.SpeedMetrics downloadMetrics = measurement.getMetrics();
             result.setDownloadMetrics(downloadMetrics);
+            speedTestMetrics.recordThroughput("download", "server", downloadMetrics.getSpeedMbps());
 
             // Update session with real-time download results
             session.setDownloadMetrics(downloadMetrics);
             speedTestSessionRepository.save(session);
 
-            // Get detailed measurements
-            List<SpeedTestResult.RawMeasurement> downloadMeasurements = downloadTestService
-                    .performMultipleDownloadRuns(session.getTestConfiguration()).get();
-            measurements.addAll(downloadMeasurements);
+            // The per-run samples of the same runs the metrics were computed from
+            measurements.addAll(measurement.getMeasurements());
 
         } catch (Exception e) {
-            System.err.println("Download test failed, using fallback: " + e.getMessage());
-            // Fallback to simulated test
-            SpeedTestResult.SpeedMetrics downloadMetrics = simulateSpeedTest("download", session.getTestConfiguration());
-            result.setDownloadMetrics(downloadMetrics);
-
-            // Update session with simulated results
-            session.setDownloadMetrics(downloadMetrics);
-            speedTestSessionRepository.save(session);
-
-            // Add simulated measurements
-            for (int i = 0; i < session.getTestConfiguration().getNumberOfRuns(); i++) {
-                SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
-                measurement.setRunNumber(i + 1);
-                measurement.setTimestamp(LocalDateTime.now());
-                measurement.setMeasurementType(SpeedTestResult.RawMeasurement.MeasurementType.DOWNLOAD_SPEED);
-                measurement.setValue(downloadMetrics.getSpeedMbps() + (Math.random() - 0.5) * 10);
-                measurements.add(measurement);
+            MeasurementException failure = measurementFailure(e);
+            // Runs and intervals completed before the failure are kept, marked partial
+            if (failure.getPartialMetrics() != null) {
+                result.setDownloadMetrics(failure.getPartialMetrics());
+                session.setDownloadMetrics(failure.getPartialMetrics());
+                measurements.addAll(failure.getPartialMeasurements());
             }
+            recordPhaseError(session, result, SpeedTestSession.TestPhase.DOWNLOAD_TEST, failure,
+                    result.getDownloadMetrics() != null);
         }
     }
     
     private void performUploadTest(SpeedTestSession session, SpeedTestResult result, List<SpeedTestResult.RawMeasurement> measurements) {
+        if (simulationEnabled) {
+            SpeedTestResult.SpeedMetrics uploadMetrics = simulateSpeedTest("upload", session.getTestConfiguration());
+            result.setUploadMetrics(uploadMetrics);
+            session.setUploadMetrics(uploadMetrics);
+            speedTestSessionRepository.save(session);
+            measurements.addAll(simulateMeasurements(SpeedTestResult.RawMeasurement.MeasurementType.UPLOAD_SPEED,
+                    uploadMetrics, 5, session.getTestConfiguration()));
+            return;
+        }
         try {
             // Use actual upload test service
-            SpeedTestResult.SpeedMetrics uploadMetrics = uploadTestService
-                    .performUploadTest(session.getTestConfiguration()).get();
+            PhaseMeasurement measurement = uploadTestService.performUploadTest(session.getTestConfiguration()).get();
+            SpeedTestResult.SpeedMetrics uploadMetrics = measurement.getMetrics();
             result.setUploadMetrics(uploadMetrics);
+            speedTestMetrics.recordThroughput("upload", "server", uploadMetrics.getSpeedMbps());
 
             // Update session with real-time upload results
             session.setUploadMetrics(uploadMetrics);
             speedTestSessionRepository.save(session);
 
-            // Get detailed measurements
-            List<SpeedTestResult.RawMeasurement> uploadMeasurements = uploadTestService
-                    .performMultipleUploadRuns(session.getTestConfiguration()).get();
-            measurements.addAll(uploadMeasurements);
+            // The per-run samples of the same runs the metrics were computed from
+            measurements.addAll(measurement.getMeasurements());
 
         } catch (Exception e) {
-            System.err.println("Upload test failed, using fallback: " + e.getMessage());
-            // Fallback to simulated test
-            SpeedTestResult.SpeedMetrics uploadMetrics = simulateSpeedTest("upload", session.getTestConfiguration());
-            result.setUploadMetrics(uploadMetrics);
-
-            // Update session with simulated results
-            session.setUploadMetrics(uploadMetrics);
-            speedTestSessionRepository.save(session);
-
-            // Add simulated measurements
-            for (int i = 0; i < session.getTestConfiguration().getNumberOfRuns(); i++) {
-                SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
-                measurement.setRunNumber(i + 1);
-                measurement.setTimestamp(LocalDateTime.now());
-                measurement.setMeasurementType(SpeedTestResult.RawMeasurement.MeasurementType.UPLOAD_SPEED);
-                measurement.setValue(uploadMetrics.getSpeedMbps() + (Math.random() - 0.5) * 5);
-                measurements.add(measurement);
+            MeasurementException failure = measurementFailure(e);
+            // Runs and intervals completed before the failure are kept, marked partial
+            if (failure.getPartialMetrics() != null) {
+                result.setUploadMetrics(failure.getPartialMetrics());
+                session.setUploadMetrics(failure.getPartialMetrics());
+                measurements.addAll(failure.getPartialMeasurements());
             }
+            recordPhaseError(session, result, SpeedTestSession.TestPhase.UPLOAD_TEST, failure,
+                    result.getUploadMetrics() != null);
+        }
+    }
+    
+    private MeasurementException measurementFailure(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        return MeasurementException.from(e);
+    }
+    
+    /**
+     * Records a failed phase on the result and the live session; the test then moves straight on
+     * to the next phase.
+     */
+    private void recordPhaseError(SpeedTestSession session, SpeedTestResult result, SpeedTestSession.TestPhase phase,
+                                  MeasurementException failure, boolean partial) {
+        log.warn("speedtest.phase.failed phase={} code={} partial={} error=\"{}\"",
+                phase, failure.getCode(), partial, failure.getMessage());
+        speedTestMetrics.phaseFailed(phase, session.getTestConfiguration().getTestType(), failure.getCode());
+        if (result.getPhaseErrors() == null) {
+            result.setPhaseErrors(new ArrayList<>());
         }
+        result.getPhaseErrors().add(new SpeedTestResult.PhaseError(phase, failure.getCode(), failure.getMessage(), partial));
+        session.setPhaseErrors(result.getPhaseErrors());
+        speedTestSessionRepository.save(session);
+    }
+    
+    // Only used with webstats.speedtest.simulation.enabled
+    private List<SpeedTestResult.RawMeasurement> simulateMeasurements(SpeedTestResult.RawMeasurement.MeasurementType type,
+            SpeedTestResult.SpeedMetrics metrics, double spreadMbps, SpeedTestResult.TestConfiguration config) {
+        List<SpeedTestResult.RawMeasurement> measurements = new ArrayList<>();
+        for (int i = 0; i < config.getNumberOfRuns(); i++) {
+            SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
+            measurement.setRunNumber(i + 1);
+            measurement.setTimestamp(LocalDateTime.now());
+            measurement.setMeasurementType(type);
+            measurement.setValue(metrics.getSpeedMbps() + (Math.random() - 0.5) * spreadMbps);
+            measurements.add(measurement);
+        }
+        return measurements;
     }
     
     private SpeedTestResult.SpeedMetrics simulateSpeedTest(String type, SpeedTestResult.TestConfiguration config) {
         SpeedTestResult.SpeedMetrics metrics = new SpeedTestResult.SpeedMetrics();
         
-        // Simulated values - replace with actual speed testing logic
+        // Generated, not measured: only for exercising the pipeline without a network
         double baseSpeed = type.equals("download") ? 50.0 + Math.random() * 100 : 25.0 + Math.random() * 50;
         metrics.setSpeedMbps(baseSpeed);
         metrics.setAverageSpeedMbps(baseSpeed * 0.9);
@@ -355,6 +542,11 @@ public class SpeedTestService {
         result.setStatisticalSummary(summary);
     }
     
+    public List<SpeedTestResult.RawMeasurement> getRawMeasurements(String resultId,
+                                                                   SpeedTestResult.RawMeasurement.MeasurementType type) {
+        return measurementStorageService.findMeasurements(resultId, type);
+    }
+    
     public SpeedTestResponseDto getSessionStatus(String sessionId) {
         Optional<SpeedTestSession> sessionOpt = speedTestSessionRepository.findById(sessionId);
         if (sessionOpt.isEmpty()) {
@@ -369,6 +561,14 @@ public class SpeedTestService {
         response.setProgressPercentage(session.getProgressPercentage());
         response.setErrorMessage(session.getErrorMessage());
         response.setTestTimestamp(session.getSessionStart());
+        
+        if (session.getStatus() == SpeedTestSession.SessionStatus.QUEUED) {
+            int position = bandwidthBudgetService.queuePosition(sessionId);
+            if (position > 0) {
+                response.setQueuePosition(position);
+                response.setEstimatedWaitSeconds(bandwidthBudgetService.estimateWaitSeconds(position));
+            }
+        }
 
         // Include real-time metrics from session (available during test execution)
         if (session.getDownloadMetrics() != null) {
@@ -386,11 +586,17 @@ public class SpeedTestService {
             response.setLatencyMetrics(latencyDto);
         }
 
+        if (session.getPhaseErrors() != null) {
+            response.setPhaseErrors(session.getPhaseErrors().stream()
+                    .map(this::mapPhaseError)
+                    .collect(Collectors.toList()));
+        }
+
         // If completed, get the final result
         if (session.getStatus() == SpeedTestSession.SessionStatus.COMPLETED) {
-            List<SpeedTestResult> results = speedTestResultRepository.findBySessionId(sessionId);
-            if (!results.isEmpty()) {
-                SpeedTestResult result = results.get(0);
+            Optional<SpeedTestResult> resultOpt = speedTestResultRepository.findFirstBySessionId(sessionId);
+            if (resultOpt.isPresent()) {
+                SpeedTestResult result = resultOpt.get();
                 response.setResultId(result.getId());
                 
                 // Map metrics to DTOs
@@ -420,25 +626,82 @@ public class SpeedTestService {
     }
     
     public List<SpeedTestHistoryDto> getUserHistory(String userId, int limit) {
-        PageRequest pageRequest = PageRequest.of(0, limit);
-        return speedTestResultRepository.findTop10ByUserIdOrderByTestTimestampDesc(userId, pageRequest)
+        return getUserHistory(userId, limit, null, null);
+    }
+    
+    /**
+     * One page of history, newest first. Pass the testTimestamp and resultId of the last item
+     * of the previous page as the cursor to get the next page.
+     */
+    public List<SpeedTestHistoryDto> getUserHistory(String userId, int limit, LocalDateTime beforeTimestamp, String beforeId) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        return speedTestResultRepository.findHistoryPage(userId, beforeTimestamp, beforeId, pageSize)
                 .stream()
                 .map(this::mapToHistoryDto)
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Folds a stored result into the dashboard rollups. A rollup failure never fails the test itself.
+     */
+    public void recordRollups(SpeedTestResult result) {
+        try {
+            rollupService.recordResult(result);
+            analyticsSummaryCache.invalidate(result.getUserId());
+        } catch (Exception e) {
+            log.warn("Failed to update rollups for result {}: {}", result.getId(), e.getMessage());
+        }
+    }
+    
+    public void recordRollups(Collection<SpeedTestResult> results) {
+        try {
+            rollupService.recordResults(results);
+            results.forEach(result -> analyticsSummaryCache.invalidate(result.getUserId()));
+        } catch (Exception e) {
+            log.warn("Failed to update rollups for {} results: {}", results.size(), e.getMessage());
+        }
+    }
+    
+    public SpeedTestHistoryDto.TimeSeriesData getTimeSeriesData(String userId, LocalDateTime startDate, LocalDateTime endDate,
+                                                                SpeedTestRollup.Granularity granularity) {
+        if (granularity == null) {
+            return getTimeSeriesData(userId, startDate, endDate);
+        }
+        
+        // Bucketed series are served from the rollups: one point per hour/day with the bucket average
+        List<SpeedTestRollup> rollups = rollupService.findRollups(
+                SpeedTestRollup.Scope.USER, userId, granularity, startDate, endDate);
+        
+        SpeedTestHistoryDto.TimeSeriesData timeSeriesData = new SpeedTestHistoryDto.TimeSeriesData();
+        timeSeriesData.setDownloadSeries(toRollupSeries(rollups, SpeedTestRollup::getDownload));
+        timeSeriesData.setUploadSeries(toRollupSeries(rollups, SpeedTestRollup::getUpload));
+        timeSeriesData.setLatencySeries(toRollupSeries(rollups, SpeedTestRollup::getLatency));
+        
+        return timeSeriesData;
+    }
+    
+    private List<SpeedTestHistoryDto.DataPoint> toRollupSeries(List<SpeedTestRollup> rollups,
+            java.util.function.Function<SpeedTestRollup, SpeedTestRollup.MetricRollup> metric) {
+        return rollups.stream()
+                .filter(r -> metric.apply(r) != null && metric.apply(r).getAverage() != null)
+                .map(r -> new SpeedTestHistoryDto.DataPoint(r.getBucketStart(), metric.apply(r).getAverage(),
+                        metric.apply(r).getCount() + " tests"))
+                .collect(Collectors.toList());
+    }
+    
     public SpeedTestHistoryDto.TimeSeriesData getTimeSeriesData(String userId, LocalDateTime startDate, LocalDateTime endDate) {
-        List<SpeedTestResult> results = speedTestResultRepository.findByUserIdAndTestTimestampBetween(userId, startDate, endDate);
+        List<SpeedTestResultSummary> results = speedTestResultRepository.findTimeSeriesPoints(userId, startDate, endDate);
         
         SpeedTestHistoryDto.TimeSeriesData timeSeriesData = new SpeedTestHistoryDto.TimeSeriesData();
         
+        // Partial phases are left out, as in the rollups behind the bucketed series
         List<SpeedTestHistoryDto.DataPoint> downloadSeries = results.stream()
-                .filter(r -> r.getDownloadMetrics() != null)
+                .filter(r -> RollupService.isComplete(r.getDownloadMetrics()))
                 .map(r -> new SpeedTestHistoryDto.DataPoint(r.getTestTimestamp(), r.getDownloadMetrics().getSpeedMbps()))
                 .collect(Collectors.toList());
         
         List<SpeedTestHistoryDto.DataPoint> uploadSeries = results.stream()
-                .filter(r -> r.getUploadMetrics() != null)
+                .filter(r -> RollupService.isComplete(r.getUploadMetrics()))
                 .map(r -> new SpeedTestHistoryDto.DataPoint(r.getTestTimestamp(), r.getUploadMetrics().getSpeedMbps()))
                 .collect(Collectors.toList());
         
@@ -454,7 +717,7 @@ public class SpeedTestService {
         return timeSeriesData;
     }
     
-    private SpeedTestHistoryDto mapToHistoryDto(SpeedTestResult result) {
+    private SpeedTestHistoryDto mapToHistoryDto(SpeedTestResultSummary result) {
         SpeedTestHistoryDto dto = new SpeedTestHistoryDto();
         dto.setResultId(result.getId());
         dto.setTestTimestamp(result.getTestTimestamp());
@@ -488,6 +751,18 @@ public class SpeedTestService {
         dto.setPeakSpeedMbps(metrics.getPeakSpeedMbps());
         dto.setAverageSpeedMbps(metrics.getAverageSpeedMbps());
         dto.setStabilityScore(metrics.getStabilityScore());
+        dto.setWarmUpDurationSeconds(metrics.getWarmUpDurationSeconds());
+        dto.setWarmUpSpeedMbps(metrics.getWarmUpSpeedMbps());
+        dto.setPartial(metrics.getPartial());
+        return dto;
+    }
+    
+    private SpeedTestResponseDto.PhaseErrorDto mapPhaseError(SpeedTestResult.PhaseError error) {
+        SpeedTestResponseDto.PhaseErrorDto dto = new SpeedTestResponseDto.PhaseErrorDto();
+        dto.setPhase(error.getPhase());
+        dto.setCode(error.getCode());
+        dto.setMessage(error.getMessage());
+        dto.setPartial(error.getPartial());
         return dto;
     }
     
@@ -533,58 +808,9 @@ public class SpeedTestService {
         return dto;
     }
     
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        
-        return request.getRemoteAddr();
-    }
-    
     public Object getAnalyticsSummary(String userId) {
         try {
-            List<SpeedTestResult> allResults = speedTestResultRepository.findByUserId(userId);
-            
-            if (allResults.isEmpty()) {
-                return Map.of(
-                    "totalTests", 0,
-                    "message", "No test data available yet. Run some speed tests to see analytics."
-                );
-            }
-            
-            // Calculate summary statistics
-            List<Double> downloadSpeeds = allResults.stream()
-                .filter(r -> r.getDownloadMetrics() != null)
-                .map(r -> r.getDownloadMetrics().getSpeedMbps())
-                .collect(Collectors.toList());
-            
-            List<Double> uploadSpeeds = allResults.stream()
-                .filter(r -> r.getUploadMetrics() != null)
-                .map(r -> r.getUploadMetrics().getSpeedMbps())
-                .collect(Collectors.toList());
-            
-            List<Double> latencies = allResults.stream()
-                .filter(r -> r.getLatencyMetrics() != null)
-                .map(r -> r.getLatencyMetrics().getPingMs())
-                .collect(Collectors.toList());
-            
-            return Map.of(
-                "totalTests", allResults.size(),
-                "downloadStats", calculateBasicStats(downloadSpeeds, "Mbps"),
-                "uploadStats", calculateBasicStats(uploadSpeeds, "Mbps"),
-                "latencyStats", calculateBasicStats(latencies, "ms"),
-                "dateRange", Map.of(
-                    "firstTest", allResults.get(allResults.size() - 1).getTestTimestamp(),
-                    "lastTest", allResults.get(0).getTestTimestamp()
-                )
-            );
-            
+            return analyticsSummaryCache.get(userId, this::buildAnalyticsSummary);
         } catch (Exception e) {
             return Map.of(
                 "error", "Failed to calculate analytics: " + e.getMessage()
@@ -592,8 +818,32 @@ public class SpeedTestService {
         }
     }
     
-    private Map<String, Object> calculateBasicStats(List<Double> values, String unit) {
-        if (values.isEmpty()) {
+    private Map<String, Object> buildAnalyticsSummary(String userId) {
+        // A single aggregation over the user's daily rollups; its cost does not grow with the result count
+        SpeedTestRollup totals = rollupService.aggregateRollups(
+                SpeedTestRollup.Scope.USER, userId, SpeedTestRollup.Granularity.DAY);
+        
+        if (totals.getTestCount() == 0) {
+            return Map.of(
+                "totalTests", 0,
+                "message", "No test data available yet. Run some speed tests to see analytics."
+            );
+        }
+        
+        return Map.of(
+            "totalTests", totals.getTestCount(),
+            "downloadStats", calculateBasicStats(totals.getDownload(), "Mbps"),
+            "uploadStats", calculateBasicStats(totals.getUpload(), "Mbps"),
+            "latencyStats", calculateBasicStats(totals.getLatency(), "ms"),
+            "dateRange", Map.of(
+                "firstTest", totals.getFirstTest(),
+                "lastTest", totals.getLastTest()
+            )
+        );
+    }
+    
+    private Map<String, Object> calculateBasicStats(SpeedTestRollup.MetricRollup metric, String unit) {
+        if (metric == null || metric.getCount() == null || metric.getCount() == 0) {
             return Map.of(
                 "count", 0,
                 "average", 0.0,
@@ -603,16 +853,14 @@ public class SpeedTestService {
             );
         }
         
-        double sum = values.stream().mapToDouble(Double::doubleValue).sum();
-        double average = sum / values.size();
-        double min = values.stream().mapToDouble(Double::doubleValue).min().orElse(0.0);
-        double max = values.stream().mapToDouble(Double::doubleValue).max().orElse(0.0);
+        Double median = RollupService.estimateQuantile(metric.getSketch(), 0.5);
         
         return Map.of(
-            "count", values.size(),
-            "average", Math.round(average * 100.0) / 100.0,
-            "min", Math.round(min * 100.0) / 100.0,
-            "max", Math.round(max * 100.0) / 100.0,
+            "count", metric.getCount(),
+            "average", Math.round(metric.getAverage() * 100.0) / 100.0,
+            "min", Math.round(metric.getMin() * 100.0) / 100.0,
+            "max", Math.round(metric.getMax() * 100.0) / 100.0,
+            "median", median != null ? Math.round(median * 100.0) / 100.0 : 0.0,
             "unit", unit
         );
     }
@@ -0,0 +1,96 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fails sessions left INITIALIZING, QUEUED or RUNNING after a restart or a lost orchestration thread,
+ * so their users can start a new test. Uses the same filter as
+ * SpeedTestSessionRepository.findStaleActiveSessions, served by the (status, session_start)
+ * index, but updates all matches with one updateMulti instead of loading them.
+ */
+@Service
+public class StaleSessionReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(StaleSessionReaper.class);
+
+    private static final List<String> ACTIVE_STATUSES = List.of(
+            SpeedTestSession.SessionStatus.INITIALIZING.name(),
+            SpeedTestSession.SessionStatus.QUEUED.name(),
+            SpeedTestSession.SessionStatus.RUNNING.name());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${webstats.sessions.max-age-minutes:15}")
+    private long maxSessionAgeMinutes;
+
+    private final Counter reapedCounter;
+    private final Counter failureCounter;
+    private final Timer runTimer;
+    private final AtomicLong lastReaped = new AtomicLong();
+    private final AtomicLong lastRunEpochSeconds = new AtomicLong();
+
+    public StaleSessionReaper(MeterRegistry meterRegistry) {
+        this.reapedCounter = Counter.builder("webstats.sessions.reaped")
+                .description("Abandoned sessions marked FAILED by the reaper")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("webstats.sessions.reaper.failures")
+                .description("Reaper runs that failed")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("webstats.sessions.reaper.duration")
+                .description("Time taken by a reaper run")
+                .register(meterRegistry);
+        meterRegistry.gauge("webstats.sessions.reaper.last.reaped", lastReaped);
+        meterRegistry.gauge("webstats.sessions.reaper.last.run", lastRunEpochSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${webstats.sessions.reaper.interval-ms:60000}",
+            initialDelayString = "${webstats.sessions.reaper.initial-delay-ms:30000}")
+    public void reapStaleSessions() {
+        runTimer.record(() -> {
+            try {
+                long reaped = reap(LocalDateTime.now().minus(Duration.ofMinutes(maxSessionAgeMinutes)));
+                lastReaped.set(reaped);
+                reapedCounter.increment(reaped);
+                if (reaped > 0) {
+                    log.info("Marked {} abandoned speed test sessions as FAILED", reaped);
+                }
+            } catch (Exception e) {
+                failureCounter.increment();
+                log.error("Stale session reaper failed: {}", e.getMessage(), e);
+            } finally {
+                lastRunEpochSeconds.set(System.currentTimeMillis() / 1000);
+            }
+        });
+    }
+
+    public long reap(LocalDateTime cutoffTime) {
+        Query query = new Query(Criteria.where("status").in(ACTIVE_STATUSES)
+                .and("session_start").lt(cutoffTime));
+
+        Update update = new Update()
+                .set("status", SpeedTestSession.SessionStatus.FAILED.name())
+                .set("error_message", "Session abandoned: still active after " + maxSessionAgeMinutes + " minutes")
+                .set("session_end", LocalDateTime.now());
+
+        return mongoTemplate.updateMulti(query, update, SpeedTestSession.class).getModifiedCount();
+    }
+}
@@ -72,23 +72,39 @@ public class StatisticalAnalysisService {
         return summary;
     }
     
-    public double calculateStabilityScore(List<Double> values) {
-        if (values == null || values.size() < 2) {
+    /**
+     * Stability score used for every speed metric, server-side and client-submitted alike:
+     * 100 minus the coefficient of variation (sample standard deviation / mean, in percent)
+     * of the steady-state interval throughputs, clamped to 0-100. Fewer than two samples,
+     * or a zero mean, score 100.
+     */
+    public double calculateStabilityScore(RunningStats stats) {
+        if (stats == null || stats.getCount() < 2 || stats.getMean() == 0) {
             return 100.0;
         }
         
-        DescriptiveStatistics stats = new DescriptiveStatistics();
-        values.forEach(stats::addValue);
-        
-        double mean = stats.getMean();
-        double stdDev = stats.getStandardDeviation();
-        
-        if (mean == 0) {
-            return 100.0;
+        double coefficientOfVariation = stats.getCoefficientOfVariation() * 100;
+        return Math.max(0, Math.min(100, 100 - coefficientOfVariation));
+    }
+    
+    public double calculateStabilityScore(double[] values) {
+        RunningStats stats = new RunningStats();
+        if (values != null) {
+            for (double value : values) {
+                stats.add(value);
+            }
         }
-        
-        double coefficientOfVariation = (stdDev / mean) * 100;
-        return Math.max(0, 100 - coefficientOfVariation);
+        return calculateStabilityScore(stats);
+    }
+    
+    public double calculateStabilityScore(List<Double> values) {
+        RunningStats stats = new RunningStats();
+        if (values != null) {
+            for (int i = 0; i < values.size(); i++) {
+                stats.add(values.get(i));
+            }
+        }
+        return calculateStabilityScore(stats);
     }
     
     public double calculateJitter(List<Double> latencies) {
@@ -159,4 +175,65 @@ public class StatisticalAnalysisService {
         }
         return 2.0;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Incremental mean/variance accumulator (Welford), fed one sample at a time during a transfer.
+     * Uses sample variance (n - 1). Accumulators from separate runs can be merged.
+     */
+    public static class RunningStats {
+        private long count;
+        private double mean;
+        private double m2;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        
+        public RunningStats() {}
+        
+        public void add(double value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        
+        public void merge(RunningStats other) {
+            if (other == null || other.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                count = other.count;
+                mean = other.mean;
+                m2 = other.m2;
+                min = other.min;
+                max = other.max;
+                return;
+            }
+            
+            long combinedCount = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / combinedCount;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / combinedCount);
+            count = combinedCount;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        
+        public long getCount() { return count; }
+        
+        public double getMean() { return count > 0 ? mean : 0.0; }
+        
+        public double getVariance() { return count > 1 ? m2 / (count - 1) : 0.0; }
+        
+        public double getStandardDeviation() { return Math.sqrt(getVariance()); }
+        
+        public double getCoefficientOfVariation() {
+            return mean != 0 ? getStandardDeviation() / mean : 0.0;
+        }
+        
+        public double getMin() { return count > 0 ? min : 0.0; }
+        
+        public double getMax() { return count > 0 ? max : 0.0; }
+    }
+}
@@ -0,0 +1,310 @@
+package com.webstats.service;
+
+import com.webstats.model.Organization;
+import com.webstats.model.SpeedTestSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admits or rejects test starts against Organization.TestLimits (concurrentTests, dailyTests)
+ * and a per-user concurrency limit, using in-memory atomic counters so a decision costs a few
+ * CAS operations and no database access.
+ *
+ * Counters are taken when a test is admitted and the active count is released when its
+ * orchestration ends. A scheduled reconciliation corrects them from the sessions collection, which
+ * repairs drift from restarts, reaped sessions and tests started on other instances. Tests admitted
+ * but not yet stored, or stored as finished but not yet released, differ from the snapshot for a
+ * moment, so only drift seen by two reconciliations in a row is corrected.
+ * Anonymous tests count against the "public" organization.
+ */
+@Service
+public class TestAdmissionService {
+
+    private static final Logger log = LoggerFactory.getLogger(TestAdmissionService.class);
+
+    public static final String PUBLIC_ORGANIZATION = "public";
+    private static final String ANONYMOUS_USER = "anonymous";
+    private static final String SESSIONS = "speed_test_sessions";
+    private static final List<String> ACTIVE_STATUSES = List.of(
+            SpeedTestSession.SessionStatus.INITIALIZING.name(),
+            SpeedTestSession.SessionStatus.QUEUED.name(),
+            SpeedTestSession.SessionStatus.RUNNING.name());
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${webstats.admission.user-concurrent-tests:1}")
+    private int userConcurrentTests;
+
+    @Value("${webstats.admission.public.concurrent-tests:50}")
+    private int publicConcurrentTests;
+
+    // 0 = unlimited
+    @Value("${webstats.admission.public.daily-tests:0}")
+    private int publicDailyTests;
+
+    @Value("${webstats.admission.retry-after-seconds:10}")
+    private long retryAfterSeconds;
+
+    private final ConcurrentHashMap<String, Usage> organizations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Usage> users = new ConcurrentHashMap<>();
+    private final Counter admittedCounter;
+    private final Map<String, Counter> rejectedCounters = new HashMap<>();
+
+    public TestAdmissionService(MeterRegistry meterRegistry) {
+        this.admittedCounter = Counter.builder("webstats.admission.decisions")
+                .tag("outcome", "admitted")
+                .tag("reason", "none")
+                .register(meterRegistry);
+        for (String reason : List.of("user_concurrent", "organization_concurrent", "organization_daily")) {
+            rejectedCounters.put(reason, Counter.builder("webstats.admission.decisions")
+                    .tag("outcome", "rejected")
+                    .tag("reason", reason)
+                    .register(meterRegistry));
+        }
+    }
+
+    public static class AdmissionRejectedException extends RuntimeException {
+        private final String reason;
+        private final long retryAfterSeconds;
+
+        public AdmissionRejectedException(String reason, String message, long retryAfterSeconds) {
+            super(message);
+            this.reason = reason;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public String getReason() { return reason; }
+        public long getRetryAfterSeconds() { return retryAfterSeconds; }
+    }
+
+    /**
+     * Active and daily counts for one user or organization. The daily count is packed with the
+     * day it belongs to (epochDay << 32 | count) so it rolls over without a reset job.
+     */
+    private static final class Usage {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicLong daily = new AtomicLong();
+        // Uncorrected difference between active and the stored count at the last reconciliation
+        int lastDrift = 0;
+
+        boolean tryAcquireActive(int limit) {
+            while (true) {
+                int current = active.get();
+                if (limit > 0 && current >= limit) {
+                    return false;
+                }
+                if (active.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void releaseActive() {
+            active.getAndUpdate(current -> Math.max(0, current - 1));
+        }
+
+        /**
+         * Moves active towards the stored count by the part of the drift that the previous
+         * reconciliation saw as well; drift that has appeared since is only remembered.
+         */
+        void reconcileActive(int stored) {
+            int drift = active.get() - stored;
+            int correction = Integer.signum(drift) == Integer.signum(lastDrift)
+                    ? Integer.signum(drift) * Math.min(Math.abs(drift), Math.abs(lastDrift))
+                    : 0;
+            if (correction != 0) {
+                active.getAndUpdate(current -> Math.max(0, current - correction));
+            }
+            lastDrift = drift - correction;
+        }
+
+        boolean tryAcquireDaily(int limit, long today) {
+            while (true) {
+                long packed = daily.get();
+                int count = (packed >>> 32) == today ? (int) packed : 0;
+                if (limit > 0 && count >= limit) {
+                    return false;
+                }
+                if (daily.compareAndSet(packed, (today << 32) | (count + 1))) {
+                    return true;
+                }
+            }
+        }
+
+        void releaseDaily(long today) {
+            daily.getAndUpdate(packed -> (packed >>> 32) == today && (int) packed > 0 ? packed - 1 : packed);
+        }
+
+        void reconcileDaily(int stored, long today) {
+            // Only ever raised: admissions not yet written to MongoDB are not in the stored count
+            daily.getAndUpdate(packed -> {
+                int count = (packed >>> 32) == today ? (int) packed : 0;
+                return (today << 32) | Math.max(count, stored);
+            });
+        }
+    }
+
+    /**
+     * Takes a concurrent slot for the user and the organization and one of the organization's
+     * daily tests, or throws AdmissionRejectedException without taking anything.
+     */
+    public void admit(String userId, Organization organization) {
+        String organizationId = organization != null ? organization.getId() : PUBLIC_ORGANIZATION;
+        Organization.TestLimits limits = organization != null && organization.getTestLimits() != null
+                ? organization.getTestLimits() : null;
+        int concurrentLimit = limits != null ? valueOrZero(limits.getConcurrentTests()) : publicConcurrentTests;
+        int dailyLimit = limits != null ? valueOrZero(limits.getDailyTests()) : publicDailyTests;
+        long today = LocalDate.now().toEpochDay();
+
+        Usage user = isAuthenticated(userId) ? acquireUser(userId) : null;
+
+        Usage org = organizations.computeIfAbsent(organizationId, k -> new Usage());
+        if (!org.tryAcquireActive(concurrentLimit)) {
+            if (user != null) {
+                user.releaseActive();
+            }
+            throw reject("organization_concurrent",
+                    "Organization has reached its limit of " + concurrentLimit + " concurrent tests", retryAfterSeconds);
+        }
+
+        if (!org.tryAcquireDaily(dailyLimit, today)) {
+            org.releaseActive();
+            if (user != null) {
+                user.releaseActive();
+            }
+            long untilTomorrow = Duration.between(LocalDateTime.now(), LocalDate.now().plusDays(1).atStartOfDay()).getSeconds();
+            throw reject("organization_daily",
+                    "Organization has reached its limit of " + dailyLimit + " tests per day", Math.max(1, untilTomorrow));
+        }
+        admittedCounter.increment();
+    }
+
+    private Usage acquireUser(String userId) {
+        while (true) {
+            Usage user = users.computeIfAbsent(userId, k -> new Usage());
+            if (!user.tryAcquireActive(userConcurrentTests)) {
+                throw reject("user_concurrent", "User already has an active speed test session", retryAfterSeconds);
+            }
+            if (users.get(userId) == user) {
+                return user;
+            }
+            // Dropped by a concurrent reconciliation before the slot was taken; take it on the new entry
+            user.releaseActive();
+        }
+    }
+
+    /**
+     * Returns the concurrent slots taken by admit() once the test has finished, failed, or could not be started.
+     */
+    public void release(String userId, String organizationId) {
+        if (isAuthenticated(userId)) {
+            Usage user = users.get(userId);
+            if (user != null) {
+                user.releaseActive();
+            }
+        }
+        Usage org = organizations.get(organizationId != null ? organizationId : PUBLIC_ORGANIZATION);
+        if (org != null) {
+            org.releaseActive();
+        }
+    }
+
+    /**
+     * Returns the daily test taken by admit() when the session was never created.
+     */
+    public void cancel(String userId, String organizationId) {
+        release(userId, organizationId);
+        Usage org = organizations.get(organizationId != null ? organizationId : PUBLIC_ORGANIZATION);
+        if (org != null) {
+            org.releaseDaily(LocalDate.now().toEpochDay());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webstats.admission.reconcile-interval-ms:60000}",
+            initialDelayString = "${webstats.admission.reconcile-initial-delay-ms:5000}")
+    public void reconcile() {
+        try {
+            reconcileActive();
+            reconcileDaily();
+        } catch (Exception e) {
+            log.warn("Admission counter reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    private void reconcileActive() {
+        // Served by the (status, session_start) index
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("status").in(ACTIVE_STATUSES)),
+                Aggregation.group("organization_id", "user_id").count().as("count"));
+
+        Map<String, Integer> activeByOrganization = new HashMap<>();
+        Map<String, Integer> activeByUser = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, SESSIONS, Document.class)) {
+            Document id = row.get("_id", Document.class);
+            int count = ((Number) row.get("count")).intValue();
+            activeByOrganization.merge(String.valueOf(id.get("organization_id")), count, Integer::sum);
+            String userId = id.getString("user_id");
+            if (isAuthenticated(userId)) {
+                activeByUser.merge(userId, count, Integer::sum);
+            }
+        }
+
+        activeByOrganization.forEach((id, count) -> organizations.computeIfAbsent(id, k -> new Usage()));
+        organizations.forEach((id, usage) -> usage.reconcileActive(activeByOrganization.getOrDefault(id, 0)));
+
+        activeByUser.forEach((id, count) -> users.computeIfAbsent(id, k -> new Usage()));
+        users.forEach((id, usage) -> usage.reconcileActive(activeByUser.getOrDefault(id, 0)));
+        // Idle users are dropped so the map only holds users currently testing; admit() retries
+        // on the new entry if it took a slot on one being dropped
+        users.forEach((id, usage) -> users.computeIfPresent(id,
+                (k, current) -> current.active.get() == 0 && current.lastDrift == 0 ? null : current));
+    }
+
+    private void reconcileDaily() {
+        LocalDate today = LocalDate.now();
+        // Served by the session_start index
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("session_start").gte(today.atStartOfDay())),
+                Aggregation.group("organization_id").count().as("count"));
+
+        for (Document row : mongoTemplate.aggregate(aggregation, SESSIONS, Document.class)) {
+            String organizationId = String.valueOf(row.get("_id"));
+            int count = ((Number) row.get("count")).intValue();
+            organizations.computeIfAbsent(organizationId, k -> new Usage()).reconcileDaily(count, today.toEpochDay());
+        }
+    }
+
+    private AdmissionRejectedException reject(String reason, String message, long retryAfter) {
+        rejectedCounters.get(reason).increment();
+        return new AdmissionRejectedException(reason, message, retryAfter);
+    }
+
+    private static boolean isAuthenticated(String userId) {
+        return userId != null && !userId.isEmpty() && !userId.equals(ANONYMOUS_USER);
+    }
+
+    private static int valueOrZero(Integer value) {
+        return value != null ? value : 0;
+    }
+}
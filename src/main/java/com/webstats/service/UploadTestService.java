@@ -1,6 +1,14 @@
 package com.webstats.service;
 
+import com.webstats.config.ExecutorConfig;
+import com.webstats.logging.LogSampler;
 import com.webstats.model.SpeedTestResult;
+import com.webstats.tracing.SpeedTestObservations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.OutputStream;
@@ -11,98 +19,134 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 
 @Service
 public class UploadTestService {
     
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
-    private final Random random = new Random();
+    private static final Logger log = LoggerFactory.getLogger(UploadTestService.class);
+    private static final LogSampler LOG_SAMPLER = LogSampler.rateLimited(10);
     
-    // Upload endpoint - this should be implemented on your server to handle uploads
-    private static final String UPLOAD_URL = "http://localhost:8080/api/speedtest/upload";
+    @Autowired
+    private StatisticalAnalysisService statisticalAnalysisService;
     
-    public CompletableFuture<SpeedTestResult.SpeedMetrics> performUploadTest(
-            SpeedTestResult.TestConfiguration config) {
-        
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                int numberOfRuns = config.getNumberOfRuns();
-                int testDurationSeconds = config.getTestDurationSeconds();
-                List<Double> speeds = new ArrayList<>();
-                
-                long totalBytesTransferred = 0;
-                long totalDurationMs = 0;
-                double peakSpeed = 0.0;
-                
-                for (int run = 0; run < numberOfRuns; run++) {
-                    UploadResult result = performSingleUploadTest(testDurationSeconds);
-                    if (result != null) {
-                        speeds.add(result.speedMbps);
-                        totalBytesTransferred += result.bytesTransferred;
-                        totalDurationMs += result.durationMs;
-                        peakSpeed = Math.max(peakSpeed, result.speedMbps);
-                    }
-                }
-                
-                if (speeds.isEmpty()) {
-                    throw new RuntimeException("All upload tests failed");
-                }
-                
-                SpeedTestResult.SpeedMetrics metrics = new SpeedTestResult.SpeedMetrics();
-                metrics.setSpeedMbps(speeds.stream().mapToDouble(Double::doubleValue).average().orElse(0.0));
-                metrics.setAverageSpeedMbps(metrics.getSpeedMbps());
-                metrics.setPeakSpeedMbps(peakSpeed);
-                metrics.setBytesTransferred(totalBytesTransferred);
-                metrics.setDurationSeconds((double) totalDurationMs / 1000.0);
-                
-                // Calculate stability score
-                double variance = speeds.stream()
-                    .mapToDouble(speed -> Math.pow(speed - metrics.getSpeedMbps(), 2))
-                    .average().orElse(0.0);
-                double stabilityScore = Math.max(0, 100 - (Math.sqrt(variance) / metrics.getSpeedMbps() * 100));
-                metrics.setStabilityScore(stabilityScore);
-                
-                return metrics;
-                
-            } catch (Exception e) {
-                SpeedTestResult.SpeedMetrics errorMetrics = new SpeedTestResult.SpeedMetrics();
-                errorMetrics.setSpeedMbps(0.0);
-                return errorMetrics;
-            }
-        }, executorService);
+    @Autowired
+    private SpeedTestObservations speedTestObservations;
+    
+    @Autowired
+    @Qualifier(ExecutorConfig.TRANSFER)
+    private Executor transferExecutor;
+    
+    // Upload endpoint, normally this node's own (webstats.speedtest.engine.base-url)
+    @Value("${webstats.speedtest.engine.base-url:http://localhost:8080}")
+    private String engineBaseUrl;
+    
+    private static final String UPLOAD_PATH = "/api/speedtest/upload";
+    
+    // Incompressible payload, written repeatedly for the duration of a run
+    private static final byte[] UPLOAD_BLOCK = new byte[64 * 1024];
+    
+    static {
+        new Random().nextBytes(UPLOAD_BLOCK);
     }
     
-    public CompletableFuture<List<SpeedTestResult.RawMeasurement>> performMultipleUploadRuns(
+    // Throughput is sampled per interval so the ramp-up can be separated from steady state
+    private static final long SAMPLE_INTERVAL_NANOS = 250_000_000L;
+    
+    /**
+     * Measures the configured runs once, returning the combined metrics with one raw sample per run.
+     */
+    public CompletableFuture<PhaseMeasurement> performUploadTest(
             SpeedTestResult.TestConfiguration config) {
         
         return CompletableFuture.supplyAsync(() -> {
-            List<SpeedTestResult.RawMeasurement> measurements = new ArrayList<>();
+            int numberOfRuns = config.getNumberOfRuns();
+            int testDurationSeconds = config.getTestDurationSeconds();
+            List<Double> speeds = new ArrayList<>();
+            List<SpeedTestResult.RawMeasurement> runMeasurements = new ArrayList<>();
+            
+            long totalBytesTransferred = 0;
+            long totalDurationMs = 0;
+            long totalWarmUpMs = 0;
+            double totalWarmUpSpeed = 0.0;
+            double peakSpeed = 0.0;
+            StatisticalAnalysisService.RunningStats intervalStats = new StatisticalAnalysisService.RunningStats();
+            MeasurementException failure = null;
             
-            for (int run = 0; run < config.getNumberOfRuns(); run++) {
+            for (int run = 0; run < numberOfRuns; run++) {
+                UploadResult result;
                 try {
-                    UploadResult result = performSingleUploadTest(config.getTestDurationSeconds());
-                    if (result != null) {
-                        SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
-                        measurement.setRunNumber(run + 1);
-                        measurement.setTimestamp(LocalDateTime.now());
-                        measurement.setMeasurementType(SpeedTestResult.RawMeasurement.MeasurementType.UPLOAD_SPEED);
-                        measurement.setValue(result.speedMbps);
-                        measurements.add(measurement);
-                    }
-                } catch (Exception e) {
-                    // Skip failed measurement
+                    result = speedTestObservations.run("upload", run + 1)
+                            .observe(() -> performSingleUploadTest(testDurationSeconds));
+                } catch (MeasurementException e) {
+                    failure = e;
+                    break;
+                }
+                speeds.add(result.speedMbps);
+                runMeasurements.add(runMeasurement(run + 1, result.speedMbps));
+                totalBytesTransferred += result.bytesTransferred;
+                totalDurationMs += result.durationMs;
+                totalWarmUpMs += result.warmUpMs;
+                totalWarmUpSpeed += result.warmUpSpeedMbps;
+                intervalStats.merge(result.intervalStats);
+                peakSpeed = Math.max(peakSpeed, result.speedMbps);
+                // The remaining runs would most likely hit the same fault; stop rather than wait for it again
+                if (result.failure != null) {
+                    failure = result.failure;
+                    break;
                 }
             }
             
-            return measurements;
-        }, executorService);
+            if (speeds.isEmpty()) {
+                throw failure != null ? failure
+                        : new MeasurementException(SpeedTestResult.PhaseError.Code.NO_DATA, "No upload runs configured");
+            }
+            
+            SpeedTestResult.SpeedMetrics metrics = new SpeedTestResult.SpeedMetrics();
+            metrics.setSpeedMbps(speeds.stream().mapToDouble(Double::doubleValue).average().orElse(0.0));
+            metrics.setAverageSpeedMbps(metrics.getSpeedMbps());
+            metrics.setPeakSpeedMbps(peakSpeed);
+            metrics.setBytesTransferred(totalBytesTransferred);
+            metrics.setDurationSeconds((double) totalDurationMs / 1000.0);
+            
+            // Warm-up is excluded from speedMbps but still reported (averaged per run)
+            metrics.setWarmUpDurationSeconds(totalWarmUpMs / 1000.0 / speeds.size());
+            metrics.setWarmUpSpeedMbps(totalWarmUpSpeed / speeds.size());
+            
+            // Stability over the steady-state interval throughputs of every run
+            metrics.setStabilityScore(statisticalAnalysisService.calculateStabilityScore(intervalStats));
+            
+            if (failure != null) {
+                metrics.setPartial(true);
+                // The completed runs' raw samples travel with the partial metrics
+                throw new MeasurementException(failure.getCode(), failure.getMessage(), metrics, runMeasurements, failure);
+            }
+            return new PhaseMeasurement(metrics, runMeasurements);
+        }, transferExecutor);
+    }
+    
+    private static SpeedTestResult.RawMeasurement runMeasurement(int runNumber, double speedMbps) {
+        SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
+        measurement.setRunNumber(runNumber);
+        measurement.setTimestamp(LocalDateTime.now());
+        measurement.setMeasurementType(SpeedTestResult.RawMeasurement.MeasurementType.UPLOAD_SPEED);
+        measurement.setValue(speedMbps);
+        return measurement;
     }
     
+    /**
+     * Runs one timed upload. A failure before any sample interval completed throws; a later one
+     * returns the completed intervals with the failure attached.
+     */
     private UploadResult performSingleUploadTest(int durationSeconds) {
+        long totalBytesSent = 0;
+        long writesEnd;
+        RampUpDetector rampUpDetector = new RampUpDetector(durationSeconds * 1_000_000_000L / 2);
+        long startTime = System.nanoTime();
+        long deadline = startTime + durationSeconds * 1_000_000_000L;
+
         try {
-            URL url = new URL(UPLOAD_URL);
+            URL url = new URL(engineBaseUrl + UPLOAD_PATH);
             HttpURLConnection connection = (HttpURLConnection) url.openConnection();
 
             connection.setRequestMethod("POST");
@@ -112,141 +156,108 @@ public class UploadTestService {
             connection.setRequestProperty("Content-Type", "application/octet-stream");
             connection.setRequestProperty("User-Agent", "WebStats-SpeedTest/1.0");
             connection.setRequestProperty("Cache-Control", "no-cache");
-            connection.setChunkedStreamingMode(8192); // Enable chunked transfer encoding
-
-            // Calculate data size: aim for 10-20 MB/s target speed to fill the duration
-            // This ensures we have enough data to transfer during the test period
-            int targetBytesPerSecond = 15 * 1024 * 1024; // 15 MB/s target
-            int testDataSize = durationSeconds * targetBytesPerSecond;
-            testDataSize = Math.max(testDataSize, 5 * 1024 * 1024); // Minimum 5MB
-
-            byte[] testData = generateTestData(testDataSize);
-
-            // Track actual bytes sent and time taken
-            long actualStartTime = 0;
-            long actualEndTime = 0;
-            long totalBytesSent = 0;
+            connection.setChunkedStreamingMode(UPLOAD_BLOCK.length); // Enable chunked transfer encoding
 
+            // The same block is sent until the duration is used up, so no link speed runs out of data
             try (OutputStream outputStream = connection.getOutputStream()) {
-                int chunkSize = 8192; // 8KB chunks
-                long testStartTime = System.currentTimeMillis();
-                actualStartTime = testStartTime;
+                long intervalStart = startTime;
+                long intervalBytes = 0;
 
-                // Target speed for throttling: 100 Mbps (realistic broadband speed)
-                // This is 12.5 MB/s or 12,800 KB/s
-                double targetMBps = 12.5; // 100 Mbps
-                long targetBytesPerChunk = chunkSize;
-                long targetMsPerChunk = (long) ((targetBytesPerChunk / (targetMBps * 1024 * 1024)) * 1000);
+                while (System.nanoTime() < deadline) {
+                    outputStream.write(UPLOAD_BLOCK);
+                    totalBytesSent += UPLOAD_BLOCK.length;
 
-                long lastChunkTime = testStartTime;
-
-                for (int i = 0; i < testData.length; i += chunkSize) {
-                    long currentTime = System.currentTimeMillis();
-                    long elapsedMs = currentTime - testStartTime;
-
-                    // Stop if we've exceeded the test duration
-                    if (elapsedMs >= (durationSeconds * 1000)) {
-                        break;
+                    intervalBytes += UPLOAD_BLOCK.length;
+                    long now = System.nanoTime();
+                    if (now - intervalStart >= SAMPLE_INTERVAL_NANOS) {
+                        rampUpDetector.addSample(intervalBytes, now - intervalStart);
+                        intervalBytes = 0;
+                        intervalStart = now;
                     }
-
-                    int bytesToWrite = Math.min(chunkSize, testData.length - i);
-                    outputStream.write(testData, i, bytesToWrite);
-                    outputStream.flush();
-                    totalBytesSent += bytesToWrite;
-
-                    // Throttle to simulate realistic network speed
-                    long timeSinceLastChunk = System.currentTimeMillis() - lastChunkTime;
-                    if (timeSinceLastChunk < targetMsPerChunk) {
-                        try {
-                            Thread.sleep(targetMsPerChunk - timeSinceLastChunk);
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                    }
-
-                    lastChunkTime = System.currentTimeMillis();
                 }
 
-                actualEndTime = System.currentTimeMillis();
+                if (intervalBytes > 0) {
+                    rampUpDetector.addSample(intervalBytes, System.nanoTime() - intervalStart);
+                }
             }
+            writesEnd = System.nanoTime();
 
-            // Calculate actual streaming duration (exclude connection setup time)
-            long streamingDurationMs = actualEndTime - actualStartTime;
-
-            // Ensure we have valid measurements
-            if (streamingDurationMs < 100) {
-                // If streaming took less than 100ms, the test is invalid
-                System.err.println("Upload test completed too quickly (" + streamingDurationMs + "ms), likely localhost without throttling");
-                streamingDurationMs = Math.max(100, streamingDurationMs);
+            // Check response; the server answers once it has read everything, so data still sitting in
+            // socket buffers when the last write returned is part of the duration
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new MeasurementException(SpeedTestResult.PhaseError.Code.HTTP_ERROR,
+                        "Upload endpoint answered HTTP " + responseCode);
+            }
+        } catch (Exception e) {
+            MeasurementException failure = MeasurementException.from(e);
+            if (LOG_SAMPLER.sample()) {
+                log.warn("speedtest.upload.failed code={} error=\"{}\" suppressed={}",
+                        failure.getCode(), failure.getMessage(), LOG_SAMPLER.drainSuppressed());
             }
+            // An error response means the server did not take the body; nothing sent can be trusted
+            if (rampUpDetector.getSampleCount() == 0 || failure.getCode() == SpeedTestResult.PhaseError.Code.HTTP_ERROR) {
+                throw failure;
+            }
+            // The interval cut short by the failure is dropped, as are the bytes it carried
+            UploadResult result = toResult(rampUpDetector, rampUpDetector.getTotalBytes(),
+                    rampUpDetector.getTotalNanos() / 1_000_000L, 0);
+            result.failure = failure;
+            return result;
+        }
 
-            // Check response
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK && streamingDurationMs > 0 && totalBytesSent > 0) {
-                // Convert to Mbps using actual streaming time
-                double speedMbps = (totalBytesSent * 8.0) / (1024.0 * 1024.0) / (streamingDurationMs / 1000.0);
+        long responseTime = System.nanoTime();
+        long streamingDurationMs = (responseTime - startTime) / 1_000_000L;
 
-                UploadResult result = new UploadResult();
-                result.speedMbps = speedMbps;
-                result.bytesTransferred = totalBytesSent;
-                result.durationMs = streamingDurationMs;
-                return result;
-            }
+        if (totalBytesSent == 0) {
+            throw new MeasurementException(SpeedTestResult.PhaseError.Code.NO_DATA, "No upload data was sent");
+        }
 
-        } catch (Exception e) {
-            System.err.println("Upload test failed: " + e.getMessage());
-            // Fallback to simulated test if upload endpoint is not available
-            return performSimulatedUploadTest(durationSeconds);
+        // Ensure we have valid measurements
+        if (streamingDurationMs < 100) {
+            // If streaming took less than 100ms, the test is invalid
+            if (LOG_SAMPLER.sample()) {
+                log.warn("speedtest.upload.too_fast durationMs={} bytes={} suppressed={}",
+                        streamingDurationMs, totalBytesSent, LOG_SAMPLER.drainSuppressed());
+            }
+            streamingDurationMs = Math.max(100, streamingDurationMs);
         }
 
-        return null;
+        return toResult(rampUpDetector, totalBytesSent, streamingDurationMs, responseTime - writesEnd);
     }
     
-    private UploadResult performSimulatedUploadTest(int durationSeconds) {
-        // Simulate upload test with timing delays to approximate real network behavior
-        try {
-            long startTime = System.currentTimeMillis();
-            
-            // Simulate data preparation
-            Thread.sleep(100); // 100ms setup time
-            
-            // Simulate upload duration with variable speed
-            int simulatedDataSize = durationSeconds * 1024 * 1024; // 1MB per second base
-            double baseSpeed = 20.0 + (random.nextDouble() * 30.0); // 20-50 Mbps range
-            
-            // Simulate network variability
-            Thread.sleep(durationSeconds * 1000);
-            
-            long endTime = System.currentTimeMillis();
-            long actualDurationMs = endTime - startTime;
-            
-            UploadResult result = new UploadResult();
-            result.speedMbps = baseSpeed + (random.nextGaussian() * 5.0); // Add some variance
-            result.bytesTransferred = simulatedDataSize;
-            result.durationMs = actualDurationMs;
-            
-            return result;
-            
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return null;
+    /**
+     * drainNanos is the time from the last write returning to the server's answer: the data still
+     * buffered in sockets after the last write reached the server in that time. It is added to the
+     * steady-state time, which otherwise ends at the last write and so reads high when the buffers
+     * are large next to the link rate.
+     */
+    private UploadResult toResult(RampUpDetector rampUpDetector, long bytes, long durationMs, long drainNanos) {
+        UploadResult result = new UploadResult();
+        // Convert to Mbps using actual streaming time
+        result.speedMbps = (bytes * 8.0) / (1024.0 * 1024.0) / (durationMs / 1000.0);
+        result.bytesTransferred = bytes;
+        result.durationMs = durationMs;
+        result.intervalStats = rampUpDetector.getSteadyStateStats();
+
+        // Prefer the steady-state rate once the ramp-up has been trimmed off
+        if (rampUpDetector.isRampComplete()) {
+            result.speedMbps = RampUpDetector.toMbps(rampUpDetector.getSteadyStateBytes(),
+                    rampUpDetector.getSteadyStateNanos() + drainNanos);
+            result.warmUpMs = rampUpDetector.getWarmUpNanos() / 1_000_000L;
+            result.warmUpSpeedMbps = rampUpDetector.getWarmUpSpeedMbps();
         }
-    }
-    
-    private byte[] generateTestData(int size) {
-        byte[] data = new byte[size];
-        random.nextBytes(data);
-        return data;
+        return result;
     }
     
     private static class UploadResult {
         double speedMbps;
         long bytesTransferred;
         long durationMs;
-    }
-    
-    public void shutdown() {
-        executorService.shutdown();
+        long warmUpMs;
+        double warmUpSpeedMbps;
+        StatisticalAnalysisService.RunningStats intervalStats;
+        // Set when the run ended early; the figures above cover the completed intervals only
+        MeasurementException failure;
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.webstats.tracing;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory span exporter for tests and local profiling. Registered as a span processor rather
+ * than a SpanExporter so finished spans are visible immediately instead of after the batch
+ * export interval. Keeps the most recent maxSpans spans.
+ */
+public class InMemorySpanRecorder implements SpanProcessor {
+
+    private static final AttributeKey<String> SESSION_ID = AttributeKey.stringKey(SpeedTestObservations.SESSION_ID);
+
+    private final int maxSpans;
+    private final ConcurrentLinkedDeque<SpanData> spans = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public InMemorySpanRecorder(int maxSpans) {
+        this.maxSpans = maxSpans;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        if (!span.getSpanContext().isSampled()) {
+            return;
+        }
+        spans.addLast(span.toSpanData());
+        if (size.incrementAndGet() > maxSpans && spans.pollFirst() != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    public List<SpanData> getFinishedSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * Spans of one speed test session, in the order they finished.
+     */
+    public List<SpanData> getSessionSpans(String sessionId) {
+        List<SpanData> result = new ArrayList<>();
+        for (SpanData span : spans) {
+            if (sessionId.equals(span.getAttributes().get(SESSION_ID))) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    public void reset() {
+        spans.clear();
+        size.set(0);
+    }
+}
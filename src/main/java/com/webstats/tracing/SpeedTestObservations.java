@@ -0,0 +1,68 @@
+package com.webstats.tracing;
+
+import com.webstats.logging.CorrelationIdFilter;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Observations for the speed test engine. Each becomes a tracing span and a timer of the same
+ * name:
+ *
+ * - webstats.speedtest: one test, from orchestration start to the final session update
+ * - webstats.speedtest.phase: latency, download, upload, analysis and persistence
+ * - webstats.speedtest.run: one measurement run of a transfer or latency phase
+ *
+ * Repository calls are observed as webstats.repository.invocations (RepositoryMetricsInterceptor).
+ * Spans carry the session id from the MDC as session.id, and the named executors carry the
+ * current observation into their tasks, so a test's runs and Mongo calls form one trace.
+ */
+@Component
+public class SpeedTestObservations {
+
+    public static final String TEST = "webstats.speedtest";
+    public static final String PHASE = "webstats.speedtest.phase";
+    public static final String RUN = "webstats.speedtest.run";
+    public static final String SESSION_ID = "session.id";
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    public Observation test(Object type) {
+        return create(TEST, "speedtest")
+                .lowCardinalityKeyValue("type", tag(type));
+    }
+
+    public Observation phase(Object phase, Object type) {
+        return create(PHASE, "speedtest " + tag(phase))
+                .lowCardinalityKeyValue("phase", tag(phase))
+                .lowCardinalityKeyValue("type", tag(type));
+    }
+
+    public Observation run(String kind, int runNumber) {
+        return create(RUN, "speedtest " + kind + " run")
+                .lowCardinalityKeyValue("kind", kind)
+                .highCardinalityKeyValue("run", String.valueOf(runNumber));
+    }
+
+    private Observation create(String name, String contextualName) {
+        return withSessionId(Observation.createNotStarted(name, observationRegistry)
+                .contextualName(contextualName));
+    }
+
+    /**
+     * Tags the observation with the session of the current thread, if any.
+     */
+    public static Observation withSessionId(Observation observation) {
+        String sessionId = MDC.get(CorrelationIdFilter.SESSION_ID);
+        return sessionId != null ? observation.highCardinalityKeyValue(SESSION_ID, sessionId) : observation;
+    }
+
+    private static String tag(Object value) {
+        return value != null ? value.toString().toLowerCase(Locale.ROOT) : "unknown";
+    }
+}
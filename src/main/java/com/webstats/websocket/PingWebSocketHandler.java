@@ -1,5 +1,10 @@
 package com.webstats.websocket;
 
+import com.webstats.logging.LogSampler;
+import com.webstats.metrics.SpeedTestMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
@@ -11,9 +16,21 @@ import java.io.IOException;
 @Component
 public class PingWebSocketHandler extends TextWebSocketHandler {
 
+    private static final Logger log = LoggerFactory.getLogger(PingWebSocketHandler.class);
+    // Every latency test opens a connection, so lifecycle lines are sampled and capped
+    private static final LogSampler CONNECTION_LOG_SAMPLER = new LogSampler(0.1, 10);
+    private static final LogSampler ERROR_LOG_SAMPLER = LogSampler.rateLimited(10);
+
+    @Autowired
+    private SpeedTestMetrics speedTestMetrics;
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        System.out.println("WebSocket connection established: " + session.getId());
+        speedTestMetrics.websocketOpened();
+        if (log.isDebugEnabled() && CONNECTION_LOG_SAMPLER.sample()) {
+            log.debug("ping.websocket.opened websocketId={} remote={} suppressed={}",
+                    session.getId(), session.getRemoteAddress(), CONNECTION_LOG_SAMPLER.drainSuppressed());
+        }
     }
 
     @Override
@@ -34,11 +51,18 @@ public class PingWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        System.out.println("WebSocket connection closed: " + session.getId() + ", Status: " + status);
+        speedTestMetrics.websocketClosed();
+        if (log.isDebugEnabled() && CONNECTION_LOG_SAMPLER.sample()) {
+            log.debug("ping.websocket.closed websocketId={} code={} reason=\"{}\" suppressed={}",
+                    session.getId(), status.getCode(), status.getReason(), CONNECTION_LOG_SAMPLER.drainSuppressed());
+        }
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
-        System.err.println("WebSocket transport error: " + exception.getMessage());
+        if (ERROR_LOG_SAMPLER.sample()) {
+            log.warn("ping.websocket.error websocketId={} error=\"{}\" suppressed={}",
+                    session.getId(), exception.getMessage(), ERROR_LOG_SAMPLER.drainSuppressed());
+        }
     }
 }
@@ -0,0 +1,168 @@
+package com.webstats.service;
+
+import com.webstats.model.SpeedTestResult;
+import com.webstats.model.SpeedTestResult.RawMeasurement.MeasurementType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MeasurementSeriesCodecTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 12, 0, 0);
+
+    @Test
+    void emptySeries() {
+        assertRoundTrip(List.of());
+    }
+
+    @Test
+    void singleSample() {
+        assertRoundTrip(List.of(sample(MeasurementType.DOWNLOAD_SPEED, 1, START, 94.2)));
+    }
+
+    @Test
+    void nullValues() {
+        assertRoundTrip(List.of(
+                sample(MeasurementType.LATENCY, 1, START, null),
+                sample(MeasurementType.LATENCY, 2, START.plusNanos(500_000_000), 18.4),
+                sample(MeasurementType.LATENCY, 3, START.plusSeconds(1), null),
+                sample(MeasurementType.LATENCY, 4, START.plusNanos(1_500_000_000), 19.1)));
+    }
+
+    @Test
+    void nanIsNotNull() {
+        List<SpeedTestResult.RawMeasurement> decoded = roundTrip(List.of(
+                sample(MeasurementType.JITTER, 1, START, Double.NaN),
+                sample(MeasurementType.JITTER, 2, START.plusSeconds(1), null),
+                sample(MeasurementType.JITTER, 3, START.plusSeconds(2), Double.NaN)));
+
+        assertThat(decoded.get(0).getValue()).isNaN();
+        assertThat(decoded.get(1).getValue()).isNull();
+        assertThat(decoded.get(2).getValue()).isNaN();
+    }
+
+    @Test
+    void runZeroAndNullRuns() {
+        assertRoundTrip(List.of(
+                sample(MeasurementType.UPLOAD_SPEED, 0, START, 38.0),
+                sample(MeasurementType.UPLOAD_SPEED, null, START.plusSeconds(1), 38.5),
+                sample(MeasurementType.UPLOAD_SPEED, 0, START.plusSeconds(2), 39.0),
+                sample(MeasurementType.UPLOAD_SPEED, -3, START.plusSeconds(3), 37.5)));
+    }
+
+    @Test
+    void irregularTimestamps() {
+        List<SpeedTestResult.RawMeasurement> series = new ArrayList<>();
+        long[] offsetsMillis = {0, 1, 1, 250, 251, 10_000, 9_999, 86_400_000L, -5_000};
+        for (int i = 0; i < offsetsMillis.length; i++) {
+            series.add(sample(MeasurementType.DOWNLOAD_SPEED, i + 1,
+                    START.plusNanos(offsetsMillis[i] * 1_000_000), 90.0 + i));
+        }
+        assertRoundTrip(series);
+    }
+
+    @Test
+    void mixedTypes() {
+        assertRoundTrip(List.of(
+                sample(MeasurementType.LATENCY, 1, START, 18.4),
+                sample(MeasurementType.LATENCY, 2, START.plusSeconds(1), 18.9),
+                sample(MeasurementType.DOWNLOAD_SPEED, 1, START.plusSeconds(2), 94.2),
+                sample(null, null, START.plusSeconds(3), null),
+                sample(MeasurementType.UPLOAD_SPEED, 1, START.plusSeconds(4), 38.7),
+                sample(MeasurementType.DOWNLOAD_SPEED, 2, START.plusSeconds(5), 95.0),
+                sample(MeasurementType.PACKET_LOSS, 1, START.plusSeconds(6), 0.0)));
+    }
+
+    @Test
+    void longSeriesWithNoisyValues() {
+        Random random = new Random(42);
+        List<SpeedTestResult.RawMeasurement> series = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            Double value = i % 97 == 13 ? null : 100 + random.nextGaussian() * 8;
+            series.add(sample(MeasurementType.DOWNLOAD_SPEED, i / 200 + 1, START.plusNanos(i * 250_000_000L), value));
+        }
+        assertRoundTrip(series);
+    }
+
+    @Test
+    void specialValues() {
+        assertRoundTrip(List.of(
+                sample(MeasurementType.DOWNLOAD_SPEED, 1, START, 0.0),
+                sample(MeasurementType.DOWNLOAD_SPEED, 2, START.plusSeconds(1), -0.0),
+                sample(MeasurementType.DOWNLOAD_SPEED, 3, START.plusSeconds(2), Double.MAX_VALUE),
+                sample(MeasurementType.DOWNLOAD_SPEED, 4, START.plusSeconds(3), Double.MIN_VALUE),
+                sample(MeasurementType.DOWNLOAD_SPEED, 5, START.plusSeconds(4), Double.POSITIVE_INFINITY)));
+    }
+
+    @Test
+    void decodesVersionOneSentinels() {
+        byte[] versionOne = {
+                1,                                  // version
+                1,                                  // count
+                1, 0,                               // one DOWNLOAD_SPEED
+                0,                                  // run delta 0: no run number
+                0,                                  // epoch millis 0
+                0x7f, (byte) 0xf8, 0, 0, 0, 0, 0, 0 // NaN: no value
+        };
+
+        List<SpeedTestResult.RawMeasurement> decoded = MeasurementSeriesCodec.decode(versionOne);
+
+        assertThat(decoded).hasSize(1);
+        assertThat(decoded.get(0).getMeasurementType()).isEqualTo(MeasurementType.DOWNLOAD_SPEED);
+        assertThat(decoded.get(0).getRunNumber()).isNull();
+        assertThat(decoded.get(0).getValue()).isNull();
+        assertThat(decoded.get(0).getTimestamp()).isEqualTo(LocalDateTime.of(1970, 1, 1, 0, 0));
+    }
+
+    @Test
+    void rejectsSamplesItCannotEncode() {
+        SpeedTestResult.RawMeasurement withMetadata = sample(MeasurementType.LATENCY, 1, START, 18.4);
+        withMetadata.setMetadata(Map.of("host", "8.8.8.8"));
+        SpeedTestResult.RawMeasurement withoutTimestamp = sample(MeasurementType.LATENCY, 1, null, 18.4);
+
+        assertThat(MeasurementSeriesCodec.canEncode(List.of(withMetadata))).isFalse();
+        assertThat(MeasurementSeriesCodec.canEncode(List.of(withoutTimestamp))).isFalse();
+        assertThatThrownBy(() -> MeasurementSeriesCodec.encode(List.of(withMetadata)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<SpeedTestResult.RawMeasurement> roundTrip(List<SpeedTestResult.RawMeasurement> series) {
+        return MeasurementSeriesCodec.decode(MeasurementSeriesCodec.encode(series));
+    }
+
+    private static void assertRoundTrip(List<SpeedTestResult.RawMeasurement> series) {
+        List<SpeedTestResult.RawMeasurement> decoded = roundTrip(series);
+
+        assertThat(decoded).hasSameSizeAs(series);
+        for (int i = 0; i < series.size(); i++) {
+            SpeedTestResult.RawMeasurement expected = series.get(i);
+            SpeedTestResult.RawMeasurement actual = decoded.get(i);
+            assertThat(actual.getMeasurementType()).as("type of sample %d", i).isEqualTo(expected.getMeasurementType());
+            assertThat(actual.getRunNumber()).as("run of sample %d", i).isEqualTo(expected.getRunNumber());
+            assertThat(actual.getTimestamp()).as("timestamp of sample %d", i).isEqualTo(expected.getTimestamp());
+            if (expected.getValue() == null) {
+                assertThat(actual.getValue()).as("value of sample %d", i).isNull();
+            } else {
+                assertThat(Double.doubleToRawLongBits(actual.getValue())).as("value of sample %d", i)
+                        .isEqualTo(Double.doubleToRawLongBits(expected.getValue()));
+            }
+        }
+    }
+
+    private static SpeedTestResult.RawMeasurement sample(MeasurementType type, Integer run, LocalDateTime timestamp,
+                                                         Double value) {
+        SpeedTestResult.RawMeasurement measurement = new SpeedTestResult.RawMeasurement();
+        measurement.setMeasurementType(type);
+        measurement.setRunNumber(run);
+        measurement.setTimestamp(timestamp);
+        measurement.setValue(value);
+        return measurement;
+    }
+}
@@ -0,0 +1,68 @@
+package com.webstats.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RampUpDetectorTest {
+
+    private static final long INTERVAL_NANOS = 250_000_000L;
+    private static final long MAX_WARM_UP_NANOS = 10_000_000_000L;
+
+    @Test
+    void risingThenFlatCountsTheRiseAsWarmUp() {
+        RampUpDetector detector = new RampUpDetector(MAX_WARM_UP_NANOS);
+        addSamples(detector, 250_000, 500_000, 750_000);
+        addSamples(detector, flat(1_000_000, 12));
+
+        assertThat(detector.isRampComplete()).isTrue();
+        assertThat(detector.getWarmUpBytes()).isEqualTo(1_500_000L);
+        assertSteadyState(detector, 12 * 1_000_000L, 12 * INTERVAL_NANOS);
+    }
+
+    @Test
+    void fallingThenFlatCountsTheBurstAsWarmUp() {
+        RampUpDetector detector = new RampUpDetector(MAX_WARM_UP_NANOS);
+        // An upload's socket buffers accept the first intervals far faster than the link drains them
+        addSamples(detector, 4_000_000, 3_000_000, 2_000_000, 1_500_000);
+
+        assertThat(detector.isRampComplete()).as("ramp complete while still falling").isFalse();
+
+        addSamples(detector, flat(1_000_000, 12));
+
+        assertThat(detector.isRampComplete()).isTrue();
+        assertThat(detector.getWarmUpBytes()).isEqualTo(10_500_000L);
+        assertThat(detector.getWarmUpNanos()).isEqualTo(4 * INTERVAL_NANOS);
+        assertSteadyState(detector, 12 * 1_000_000L, 12 * INTERVAL_NANOS);
+    }
+
+    @Test
+    void neverSettlingStopsAtTheMaximumWarmUp() {
+        RampUpDetector detector = new RampUpDetector(2 * INTERVAL_NANOS);
+        addSamples(detector, 4_000_000, 3_000_000, 2_000_000, 1_500_000, 1_000_000, 700_000, 500_000);
+
+        assertThat(detector.isRampComplete()).isTrue();
+        assertThat(detector.getWarmUpNanos()).isEqualTo(2 * INTERVAL_NANOS);
+    }
+
+    private static void assertSteadyState(RampUpDetector detector, long bytes, long nanos) {
+        assertThat(detector.getSteadyStateBytes()).isEqualTo(bytes);
+        assertThat(detector.getSteadyStateNanos()).isEqualTo(nanos);
+        assertThat(detector.getSteadyStateSpeedMbps()).isCloseTo(RampUpDetector.toMbps(bytes, nanos), within(1e-9));
+    }
+
+    private static long[] flat(long bytes, int count) {
+        long[] samples = new long[count];
+        Arrays.fill(samples, bytes);
+        return samples;
+    }
+
+    private static void addSamples(RampUpDetector detector, long... bytesPerInterval) {
+        for (long bytes : bytesPerInterval) {
+            detector.addSample(bytes, INTERVAL_NANOS);
+        }
+    }
+}